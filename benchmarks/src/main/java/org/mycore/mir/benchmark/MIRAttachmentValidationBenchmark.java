@@ -0,0 +1,79 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.benchmark;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.mycore.mir.handler.MIRFormSubmissionMailHandler.AttachmentConfig;
+import org.mycore.mir.handler.MIRInboundAttachment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the attachment validation of {@link AttachmentConfig} for different numbers of attachments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MIRAttachmentValidationBenchmark {
+
+    @Param({ "1", "10", "100" })
+    public int count;
+
+    private AttachmentConfig config;
+
+    private List<MIRInboundAttachment> attachments;
+
+    @Setup
+    public void setUp() {
+        config = new AttachmentConfig(1, count, 100L * 1024 * 1024, 1024L * 1024 * 1024, null, null);
+        attachments = IntStream.range(0, count)
+            .mapToObj(i -> new SizedAttachment("file-" + i + ".pdf", 1024L * 1024 * (i % 10 + 1)))
+            .map(MIRInboundAttachment.class::cast).toList();
+    }
+
+    @Benchmark
+    public List<MIRInboundAttachment> validate() {
+        config.validate(attachments);
+        return attachments;
+    }
+
+    private record SizedAttachment(String filename, long size) implements MIRInboundAttachment {
+
+        @Override
+        public InputStream openStream() {
+            return InputStream.nullInputStream();
+        }
+    }
+}
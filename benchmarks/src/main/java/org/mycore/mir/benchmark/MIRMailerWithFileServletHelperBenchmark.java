@@ -0,0 +1,83 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.mycore.mir.MIRMailerWithFileServletHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the URL encoding and form field collection of {@link MIRMailerWithFileServletHelper} with the fields of
+ * a typical submission.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MIRMailerWithFileServletHelperBenchmark {
+
+    private static final Set<String> EXCLUDED_NAMES = Set.of("action", "captcha");
+
+    private Map<String, String> fields;
+
+    private Map<String, String[]> parameterMap;
+
+    private String title;
+
+    @Setup
+    public void setUp() {
+        fields = MIRStringTemplateBenchmark.createFields();
+        parameterMap = new LinkedHashMap<>();
+        parameterMap.put("action", new String[] { "submit_request" });
+        parameterMap.put("captcha", new String[] { "12345" });
+        fields.forEach((name, value) -> parameterMap.put(name, new String[] { value }));
+        parameterMap.put("keywords", new String[] { "repository", "publication", "submission" });
+        title = fields.get("title_de");
+    }
+
+    @Benchmark
+    public String encodeUriComponent() {
+        return MIRMailerWithFileServletHelper.encodeUriComponent(title);
+    }
+
+    @Benchmark
+    public String getUrlParams() {
+        return MIRMailerWithFileServletHelper.getUrlParams(fields);
+    }
+
+    @Benchmark
+    public Map<String, String> collectFields() {
+        return MIRMailerWithFileServletHelper.collectFields(parameterMap, EXCLUDED_NAMES);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.mycore.mir.handler.MIRFormSubmissionRequest;
+import org.mycore.mir.handler.MIRStringTemplateMailBodyRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the compiled template renderer with the former regular expression based renderer on
+ * {@code submit_request_template.txt}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MIRStringTemplateBenchmark {
+
+    private static final String TEMPLATE_PATH = "/submit_request_template.txt";
+
+    private MIRStringTemplateMailBodyRenderer compiledRenderer;
+
+    private RegexTemplateRenderer regexRenderer;
+
+    private MIRFormSubmissionRequest request;
+
+    @Setup
+    public void setUp() throws IOException {
+        final String template = readTemplate();
+        compiledRenderer = new MIRStringTemplateMailBodyRenderer(template);
+        regexRenderer = new RegexTemplateRenderer(template);
+        request = new MIRFormSubmissionRequest(createFields(), List.of());
+    }
+
+    @Benchmark
+    public String compiled() {
+        return compiledRenderer.render(request);
+    }
+
+    @Benchmark
+    public String regex() {
+        return regexRenderer.render(request.fields());
+    }
+
+    static String readTemplate() throws IOException {
+        try (InputStream in = MIRStringTemplateBenchmark.class.getResourceAsStream(TEMPLATE_PATH)) {
+            if (in == null) {
+                throw new IOException("Template not found: " + TEMPLATE_PATH);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    static Map<String, String> createFields() {
+        final Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("name", "Erika Mustermann");
+        fields.put("mail", "erika.mustermann@uni-example.de");
+        fields.put("institute", "Institut für Informatik");
+        fields.put("faculty", "Fakultät für Mathematik und Informatik");
+        fields.put("title_de", "Über die Verarbeitung großer Einreichungen in digitalen Repositorien");
+        fields.put("title_en", "On processing large submissions in digital repositories");
+        fields.put("license", "cc_by-sa_4.0");
+        fields.put("keywords_de", "Repositorium, Publikation, Einreichung, Open Access");
+        fields.put("keywords_en", "repository, publication, submission, open access");
+        fields.put("abstract_de", repeat("Diese Arbeit untersucht die Einreichung von Publikationen. ", 40));
+        fields.put("abstract_en", repeat("This thesis examines the submission of publications. ", 40));
+        fields.put("comment", "Bitte um Veröffentlichung zum 01.10.");
+        fields.put("copy", "true");
+        return fields;
+    }
+
+    private static String repeat(String s, int count) {
+        return s.repeat(count).trim();
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.benchmark;
+
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Regular expression based template rendering as used by earlier versions of
+ * {@code MIRStringTemplateMailBodyRenderer}, kept as benchmark baseline.
+ */
+final class RegexTemplateRenderer {
+
+    private static final Pattern PATTERN = Pattern.compile("\\{\\{(.+?)\\}\\}");
+
+    private final String template;
+
+    RegexTemplateRenderer(String template) {
+        this.template = template;
+    }
+
+    String render(Map<String, String> fields) {
+        final Matcher matcher = PATTERN.matcher(template);
+        final StringBuilder sb = new StringBuilder();
+        while (matcher.find()) {
+            String key = matcher.group(1);
+            String replacement = fields.getOrDefault(key, "");
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+}
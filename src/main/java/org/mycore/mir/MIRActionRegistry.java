@@ -0,0 +1,169 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.common.config.MCRConfiguration2;
+import org.mycore.mir.handler.MIRAsyncFormSubmissionHandler;
+import org.mycore.mir.handler.MIRFormSubmissionHandler;
+
+/**
+ * Immutable registry of the form submission actions of {@link MIRMailerWithFileServlet}.
+ * <p>
+ * The registry is built once from the {@code MIR.MailerWithFileServlet.*} properties. Every action with a configured
+ * form submission handler is resolved to an {@link Action} holding its handler, captcha policy and limits. Blocking
+ * handlers are adapted with {@link MIRAsyncFormSubmissionHandler#of(MIRFormSubmissionHandler)}. An action whose
+ * configuration cannot be resolved is logged and left out, so only that action is unavailable. When one
+ * of these properties changes, a new registry is built and replaces the current one atomically. If the new
+ * configuration cannot be resolved, the current registry is kept.
+ */
+public final class MIRActionRegistry {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String PROPERTY_PREFIX = "MIR.MailerWithFileServlet.";
+
+    private static final String HANDLER_SUFFIX = ".FormSubmissionHandler.Class";
+
+    private static final long DEFAULT_FORM_FIELDS_ALLOWANCE = 1024L * 1024L;
+
+    private final Map<String, Action> actions;
+
+    private final Long defaultMaxRequestSize;
+
+    private MIRActionRegistry(Map<String, Action> actions, Long defaultMaxRequestSize) {
+        this.actions = Map.copyOf(actions);
+        this.defaultMaxRequestSize = defaultMaxRequestSize;
+    }
+
+    /**
+     * Returns the current action registry.
+     *
+     * @return the registry
+     */
+    public static MIRActionRegistry getInstance() {
+        return InstanceHolder.INSTANCE.get();
+    }
+
+    /**
+     * Returns the action with the given name.
+     *
+     * @param name the action name
+     * @return the action or an empty optional if no handler is configured for the action
+     */
+    public Optional<Action> getAction(String name) {
+        return name == null ? Optional.empty() : Optional.ofNullable(actions.get(name));
+    }
+
+    /**
+     * Returns the maximum request size for the given action, falling back to the default maximum request size.
+     *
+     * @param name the action name, may be {@code null}
+     * @return the maximum request size in bytes or an empty optional if the size is not limited
+     */
+    public Optional<Long> getMaxRequestSize(String name) {
+        return getAction(name).map(Action::maxRequestSize).or(() -> Optional.ofNullable(defaultMaxRequestSize));
+    }
+
+    private static MIRActionRegistry build() {
+        final Long defaultMaxRequestSize = MCRConfiguration2.getLong(PROPERTY_PREFIX + "MaxRequestSize").orElse(null);
+        final long formFieldsAllowance = MCRConfiguration2.getLong(PROPERTY_PREFIX + "FormFieldsAllowance")
+            .orElse(DEFAULT_FORM_FIELDS_ALLOWANCE);
+        final Map<String, Action> actions = new HashMap<>();
+        MCRConfiguration2.getSubPropertiesMap(PROPERTY_PREFIX).keySet().stream()
+            .filter(key -> key.endsWith(HANDLER_SUFFIX))
+            .map(key -> key.substring(0, key.length() - HANDLER_SUFFIX.length()))
+            .filter(name -> !name.isEmpty() && name.indexOf('.') < 0)
+            .forEach(name -> {
+                try {
+                    actions.put(name, createAction(name, defaultMaxRequestSize, formFieldsAllowance));
+                } catch (RuntimeException e) {
+                    LOGGER.error("Failed to configure form submission action '{}', the action is disabled", name, e);
+                }
+            });
+        LOGGER.info("Registered form submission actions: {}", actions.keySet());
+        return new MIRActionRegistry(actions, defaultMaxRequestSize);
+    }
+
+    private static Action createAction(String name, Long defaultMaxRequestSize, long formFieldsAllowance) {
+        final String actionPrefix = PROPERTY_PREFIX + name;
+        final MIRFormSubmissionHandler handler = MCRConfiguration2
+            .getSingleInstanceOf(MIRFormSubmissionHandler.class, actionPrefix + HANDLER_SUFFIX).orElseThrow();
+        final boolean captchaRequired =
+            MCRConfiguration2.getBoolean(actionPrefix + ".CaptchaRequired").orElse(false);
+        final Long maxRequestSize = MCRConfiguration2.getLong(actionPrefix + ".MaxRequestSize")
+            .or(() -> handler.getMaxAttachmentSize().map(size -> size > Long.MAX_VALUE - formFieldsAllowance
+                ? Long.MAX_VALUE : size + formFieldsAllowance))
+            .orElse(defaultMaxRequestSize);
+        final Duration timeout = MCRConfiguration2.getLong(actionPrefix + ".Timeout").filter(seconds -> seconds > 0)
+            .map(Duration::ofSeconds).orElse(null);
+        final Duration ingestionTimeout = MCRConfiguration2.getLong(actionPrefix + ".AsyncIngestion.Timeout")
+            .filter(seconds -> seconds > 0).map(Duration::ofSeconds).orElse(null);
+        return new Action(name, MIRAsyncFormSubmissionHandler.of(handler), captchaRequired, maxRequestSize,
+            timeout, ingestionTimeout);
+    }
+
+    /**
+     * A resolved form submission action.
+     *
+     * @param name the action name
+     * @param handler the form submission handler
+     * @param captchaRequired whether a valid captcha is required
+     * @param maxRequestSize optional maximum request size in bytes
+     * @param timeout optional time after which handling a submission is cancelled
+     * @param ingestionTimeout optional time until an asynchronously read submission has to be answered
+     */
+    public record Action(String name, MIRAsyncFormSubmissionHandler handler, boolean captchaRequired,
+        Long maxRequestSize, Duration timeout, Duration ingestionTimeout) {
+    }
+
+    private static final class InstanceHolder {
+
+        private static final AtomicReference<MIRActionRegistry> INSTANCE = new AtomicReference<>(buildInitial());
+
+        static {
+            MCRConfiguration2.addPropertyChangeEventLister(key -> key.startsWith(PROPERTY_PREFIX),
+                (key, oldValue, newValue) -> reload());
+        }
+
+        private static MIRActionRegistry buildInitial() {
+            try {
+                return build();
+            } catch (RuntimeException e) {
+                LOGGER.error("Failed to build action registry, no form submission action is available", e);
+                return new MIRActionRegistry(Map.of(), null);
+            }
+        }
+
+        private static synchronized void reload() {
+            try {
+                INSTANCE.set(build());
+            } catch (RuntimeException e) {
+                LOGGER.error("Failed to rebuild action registry, keeping previous configuration", e);
+            }
+        }
+    }
+}
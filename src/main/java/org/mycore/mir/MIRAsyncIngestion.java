@@ -0,0 +1,917 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import jakarta.servlet.http.Part;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.common.config.MCRConfiguration2;
+import org.mycore.common.config.MCRConfigurationException;
+import org.mycore.common.events.MCRShutdownHandler;
+
+/**
+ * Reads {@code multipart/form-data} submissions without blocking a container thread.
+ * <p>
+ * The request is put into asynchronous mode and its body is read by a non-blocking {@link ReadListener} whenever
+ * data arrives. File parts are written straight into staged files, other fields are collected in memory. Once the
+ * body is complete, the submission is processed on a dedicated executor with a request that serves the parsed
+ * fields and staged parts. Staged files are deleted after processing.
+ * <p>
+ * Container callbacks may tear a submission down while it is read, for example on a timeout. Reading and teardown
+ * are therefore synchronized on the submission. Once processing has started, the staged files belong to the
+ * processing thread, which deletes them when it is done. If the asynchronous cycle times out while a submission is
+ * processed, the timeout is answered and the cycle is completed under the same monitor. The processing thread writes
+ * to a response that checks the state under that monitor and discards everything written after the timeout, so it
+ * never touches a response the container has already recycled. Each streamed file part is limited to
+ * {@code MIR.MailerWithFileServlet.AsyncIngestion.MaxFileSize} bytes, all file parts together to the maximum
+ * attachment size of the action.
+ */
+public final class MIRAsyncIngestion {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String CONFIG_PREFIX = "MIR.MailerWithFileServlet.AsyncIngestion.";
+
+    private static final int MAX_PARTS = 1000;
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private final ExecutorService executor;
+
+    private final Duration timeout;
+
+    private final Path stagingPath;
+
+    private final long maxFieldsSize;
+
+    private final long maxFileSize;
+
+    private MIRAsyncIngestion(ExecutorService executor, Duration timeout, Path stagingPath, long maxFieldsSize,
+        long maxFileSize) {
+        this.executor = executor;
+        this.timeout = timeout;
+        this.stagingPath = stagingPath;
+        this.maxFieldsSize = maxFieldsSize;
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * Returns whether asynchronous ingestion is enabled.
+     *
+     * @return true if {@code MIR.MailerWithFileServlet.AsyncIngestion.Enabled} is set to true
+     */
+    public static boolean isEnabled() {
+        return MCRConfiguration2.getBoolean(CONFIG_PREFIX + "Enabled").orElse(false);
+    }
+
+    /**
+     * Returns the configured asynchronous ingestion.
+     *
+     * @return the instance
+     */
+    public static MIRAsyncIngestion getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Starts reading the body of the given request asynchronously if the request supports it.
+     *
+     * @param request a {@code multipart/form-data} request
+     * @param response the response
+     * @param maxAttachmentSize maximum total size of all file parts in bytes
+     * @param timeout time until the submission has to be answered, {@code null} for the configured default
+     * @param processor processes the submission once the body is complete
+     * @return true if reading was started, false if the request has to be processed synchronously
+     * @throws IOException if the request body cannot be opened
+     */
+    public boolean start(HttpServletRequest request, HttpServletResponse response, long maxAttachmentSize,
+        Duration timeout, Processor processor) throws IOException {
+        final String boundary = MIRMultipartParser.getBoundary(request.getContentType());
+        if (boundary == null || !request.isAsyncSupported()) {
+            return false;
+        }
+        final AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout((timeout == null ? this.timeout : timeout).toMillis());
+        final Submission submission = new Submission(request, response, asyncContext, maxAttachmentSize);
+        asyncContext.addListener(submission);
+        final ServletInputStream in = request.getInputStream();
+        in.setReadListener(new BodyReader(in, new MIRMultipartParser(boundary, submission), submission, processor));
+        return true;
+    }
+
+    /**
+     * Processes a submission once its body is complete.
+     */
+    @FunctionalInterface
+    public interface Processor {
+
+        /**
+         * Processes the submission.
+         *
+         * @param request the request serving the parsed fields and staged parts
+         * @param response the response
+         * @throws IOException if an I/O error occurs
+         * @throws ServletException if processing fails
+         */
+        void process(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException;
+    }
+
+    private final class BodyReader implements ReadListener {
+
+        private final ServletInputStream in;
+
+        private final MIRMultipartParser parser;
+
+        private final Submission submission;
+
+        private final Processor processor;
+
+        private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+
+        private BodyReader(ServletInputStream in, MIRMultipartParser parser, Submission submission,
+            Processor processor) {
+            this.in = in;
+            this.parser = parser;
+            this.submission = submission;
+            this.processor = processor;
+        }
+
+        @Override
+        public void onDataAvailable() {
+            try {
+                while (in.isReady() && !in.isFinished()) {
+                    final int count = in.read(buffer);
+                    if (count < 0) {
+                        break;
+                    }
+                    synchronized (submission) {
+                        if (submission.state != State.READING) {
+                            return;
+                        }
+                        parser.feed(buffer, 0, count);
+                    }
+                }
+            } catch (FileSizeExceededException e) {
+                submission.fail(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, e);
+            } catch (IOException e) {
+                submission.fail(HttpServletResponse.SC_BAD_REQUEST, e);
+            }
+        }
+
+        @Override
+        public void onAllDataRead() {
+            synchronized (submission) {
+                if (submission.state != State.READING) {
+                    return;
+                }
+                try {
+                    parser.finish();
+                } catch (IOException e) {
+                    submission.fail(HttpServletResponse.SC_BAD_REQUEST, e);
+                    return;
+                }
+                submission.state = State.PROCESSING;
+            }
+            try {
+                executor.execute(() -> submission.process(processor));
+            } catch (RejectedExecutionException e) {
+                LOGGER.warn("Failed to schedule submission: {}", e.toString());
+                submission.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                submission.endProcessing();
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            submission.fail(HttpServletResponse.SC_BAD_REQUEST, t);
+        }
+    }
+
+    private enum State {
+        READING, PROCESSING, TIMED_OUT, DONE
+    }
+
+    /**
+     * Thrown if a streamed file part exceeds its size limit.
+     */
+    private static final class FileSizeExceededException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private FileSizeExceededException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * State of one submission, receives its parts and cleans up when the asynchronous cycle ends. The state is
+     * guarded by the submission's monitor; once processing has started, the fields and parts are owned by the
+     * processing thread.
+     */
+    private final class Submission implements MIRMultipartParser.PartHandler, AsyncListener {
+
+        private final HttpServletRequest request;
+
+        private final HttpServletResponse response;
+
+        private final AsyncContext asyncContext;
+
+        private final Map<String, List<String>> fields = new LinkedHashMap<>();
+
+        private final List<Part> parts = new ArrayList<>();
+
+        private final long maxAttachmentSize;
+
+        private State state = State.READING;
+
+        private long fieldsSize;
+
+        private long filesSize;
+
+        private String fieldName;
+
+        private ByteArrayOutputStream fieldValue;
+
+        private OutputStream partOut;
+
+        private Submission(HttpServletRequest request, HttpServletResponse response, AsyncContext asyncContext,
+            long maxAttachmentSize) {
+            this.request = request;
+            this.response = response;
+            this.asyncContext = asyncContext;
+            this.maxAttachmentSize = maxAttachmentSize;
+        }
+
+        @Override
+        public OutputStream startPart(String name, String filename, String contentType) throws IOException {
+            if (parts.size() + fields.size() >= MAX_PARTS) {
+                throw new IOException("Too many parts");
+            }
+            if (filename == null) {
+                fieldName = name;
+                fieldValue = new ByteArrayOutputStream();
+                return new FilterOutputStream(fieldValue) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        fieldsSize += len;
+                        if (fieldsSize > maxFieldsSize) {
+                            throw new IOException("Form fields exceed " + maxFieldsSize + " bytes");
+                        }
+                        out.write(b, off, len);
+                    }
+                };
+            }
+            final Path file = Files.createTempFile(stagingPath, "mir-upload-", ".part");
+            final StagedPart part = new StagedPart(name, filename, contentType, file);
+            parts.add(part);
+            partOut = new FilterOutputStream(part.inspector.tee(Files.newOutputStream(file))) {
+
+                private long size;
+
+                @Override
+                public void write(int b) throws IOException {
+                    count(1);
+                    out.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    count(len);
+                    out.write(b, off, len);
+                }
+
+                private void count(int len) throws FileSizeExceededException {
+                    size += len;
+                    filesSize += len;
+                    if (size > maxFileSize) {
+                        throw new FileSizeExceededException("File " + filename + " exceeds " + maxFileSize + " bytes");
+                    }
+                    if (filesSize > maxAttachmentSize) {
+                        throw new FileSizeExceededException("Files exceed " + maxAttachmentSize + " bytes");
+                    }
+                }
+            };
+            return partOut;
+        }
+
+        @Override
+        public void endPart() {
+            partOut = null;
+            if (fieldName != null) {
+                fields.computeIfAbsent(fieldName, key -> new ArrayList<>())
+                    .add(fieldValue.toString(StandardCharsets.UTF_8));
+                fieldName = null;
+                fieldValue = null;
+            }
+        }
+
+        private void process(Processor processor) {
+            try {
+                processor.process(new SubmissionRequest(request, fields, parts), new SubmissionResponse(this));
+            } catch (IOException | ServletException | RuntimeException e) {
+                LOGGER.error("Failed to process submission", e);
+                sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            } finally {
+                endProcessing();
+            }
+        }
+
+        private void endProcessing() {
+            final boolean timedOut;
+            synchronized (this) {
+                timedOut = state == State.TIMED_OUT;
+                state = State.DONE;
+            }
+            deleteParts();
+            if (!timedOut) {
+                complete();
+            }
+        }
+
+        /**
+         * Returns whether the processing thread may still write to the response, must be called while holding the
+         * monitor.
+         */
+        private boolean isResponseAttached() {
+            return state == State.READING || state == State.PROCESSING;
+        }
+
+        private synchronized void fail(int status, Throwable cause) {
+            if (state != State.READING) {
+                return;
+            }
+            LOGGER.warn("Failed to read submission: {}", cause.toString());
+            sendError(status);
+            abort(true);
+        }
+
+        private synchronized void sendError(int status) {
+            if (isResponseAttached() && !response.isCommitted()) {
+                try {
+                    response.sendError(status);
+                } catch (IOException e) {
+                    LOGGER.debug("Failed to send error", e);
+                }
+            }
+        }
+
+        /**
+         * Stops reading and deletes the staged parts, must be called while holding the monitor.
+         */
+        private void abort(boolean complete) {
+            state = State.DONE;
+            if (partOut != null) {
+                try {
+                    partOut.close();
+                } catch (IOException e) {
+                    LOGGER.debug("Failed to close staged part", e);
+                }
+                partOut = null;
+            }
+            deleteParts();
+            if (complete) {
+                complete();
+            }
+        }
+
+        private void complete() {
+            try {
+                asyncContext.complete();
+            } catch (IllegalStateException e) {
+                LOGGER.debug("Asynchronous cycle already completed", e);
+            }
+        }
+
+        private void deleteParts() {
+            for (Part part : parts) {
+                try {
+                    part.delete();
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to delete staged part {}", part.getSubmittedFileName(), e);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void onTimeout(AsyncEvent event) {
+            if (state == State.READING) {
+                LOGGER.warn("Timeout while reading submission");
+                sendError(HttpServletResponse.SC_REQUEST_TIMEOUT);
+                abort(true);
+            } else if (state == State.PROCESSING) {
+                LOGGER.warn("Timeout while processing submission, discarding its response");
+                sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                state = State.TIMED_OUT;
+                complete();
+            }
+        }
+
+        @Override
+        public synchronized void onError(AsyncEvent event) {
+            if (state == State.READING) {
+                abort(true);
+            }
+        }
+
+        @Override
+        public synchronized void onComplete(AsyncEvent event) {
+            if (state == State.READING) {
+                abort(false);
+            }
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // not restarted
+        }
+    }
+
+    /**
+     * A file part written to a staged file, its content is inspected while it is written.
+     */
+    private static final class StagedPart implements MIRInspectedPart {
+
+        private final String name;
+
+        private final String filename;
+
+        private final String contentType;
+
+        private final Path file;
+
+        private final MIRAttachmentInspector inspector = new MIRAttachmentInspector();
+
+        private StagedPart(String name, String filename, String contentType, Path file) {
+            this.name = name;
+            this.filename = filename;
+            this.contentType = contentType;
+            this.file = file;
+        }
+
+        @Override
+        public MIRAttachmentInspection getInspection() {
+            return inspector.getInspection();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return Files.newInputStream(file);
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getSubmittedFileName() {
+            return filename;
+        }
+
+        @Override
+        public long getSize() {
+            try {
+                return Files.size(file);
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+
+        @Override
+        public void write(String fileName) throws IOException {
+            Files.move(file, Path.of(fileName));
+        }
+
+        @Override
+        public void delete() throws IOException {
+            Files.deleteIfExists(file);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return "content-type".equalsIgnoreCase(name) ? contentType : null;
+        }
+    }
+
+    /**
+     * Request serving the parameters of the query string and the parsed body instead of reading the body.
+     */
+    private static final class SubmissionRequest extends HttpServletRequestWrapper {
+
+        private final Map<String, String[]> parameters;
+
+        private final List<Part> parts;
+
+        private SubmissionRequest(HttpServletRequest request, Map<String, List<String>> fields, List<Part> parts) {
+            super(request);
+            final Map<String, List<String>> values = new LinkedHashMap<>();
+            final String queryString = request.getQueryString();
+            if (queryString != null) {
+                for (String pair : queryString.split("&")) {
+                    final int equals = pair.indexOf('=');
+                    final String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals),
+                        StandardCharsets.UTF_8);
+                    final String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1),
+                        StandardCharsets.UTF_8);
+                    values.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
+                }
+            }
+            fields.forEach((name, fieldValues) -> values.computeIfAbsent(name, key -> new ArrayList<>())
+                .addAll(fieldValues));
+            final Map<String, String[]> parameters = new LinkedHashMap<>();
+            values.forEach((name, list) -> parameters.put(name, list.toArray(String[]::new)));
+            this.parameters = Collections.unmodifiableMap(parameters);
+            this.parts = List.copyOf(parts);
+        }
+
+        @Override
+        public String getParameter(String name) {
+            final String[] values = parameters.get(name);
+            return values == null ? null : values[0];
+        }
+
+        @Override
+        public Map<String, String[]> getParameterMap() {
+            return parameters;
+        }
+
+        @Override
+        public Enumeration<String> getParameterNames() {
+            return Collections.enumeration(parameters.keySet());
+        }
+
+        @Override
+        public String[] getParameterValues(String name) {
+            return parameters.get(name);
+        }
+
+        @Override
+        public Collection<Part> getParts() {
+            return parts;
+        }
+
+        @Override
+        public Part getPart(String name) {
+            return parts.stream().filter(part -> part.getName().equals(name)).findFirst().orElse(null);
+        }
+    }
+
+    /**
+     * Response handed to the processing thread. Everything written to it is passed on while the submission is
+     * processed and discarded once the asynchronous cycle has timed out, both under the submission's monitor.
+     */
+    private static final class SubmissionResponse extends HttpServletResponseWrapper {
+
+        private final Submission submission;
+
+        private ServletOutputStream outputStream;
+
+        private PrintWriter writer;
+
+        private SubmissionResponse(Submission submission) {
+            super(submission.response);
+            this.submission = submission;
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            synchronized (submission) {
+                if (submission.isResponseAttached()) {
+                    super.sendError(sc, msg);
+                }
+            }
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            synchronized (submission) {
+                if (submission.isResponseAttached()) {
+                    super.sendError(sc);
+                }
+            }
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            synchronized (submission) {
+                if (submission.isResponseAttached()) {
+                    super.sendRedirect(location);
+                }
+            }
+        }
+
+        @Override
+        public void setStatus(int sc) {
+            synchronized (submission) {
+                if (submission.isResponseAttached()) {
+                    super.setStatus(sc);
+                }
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            synchronized (submission) {
+                if (submission.isResponseAttached()) {
+                    super.setHeader(name, value);
+                }
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            synchronized (submission) {
+                if (submission.isResponseAttached()) {
+                    super.addHeader(name, value);
+                }
+            }
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            synchronized (submission) {
+                if (submission.isResponseAttached()) {
+                    super.setIntHeader(name, value);
+                }
+            }
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+            synchronized (submission) {
+                if (submission.isResponseAttached()) {
+                    super.addIntHeader(name, value);
+                }
+            }
+        }
+
+        @Override
+        public void setDateHeader(String name, long date) {
+            synchronized (submission) {
+                if (submission.isResponseAttached()) {
+                    super.setDateHeader(name, date);
+                }
+            }
+        }
+
+        @Override
+        public void addDateHeader(String name, long date) {
+            synchronized (submission) {
+                if (submission.isResponseAttached()) {
+                    super.addDateHeader(name, date);
+                }
+            }
+        }
+
+        @Override
+        public void addCookie(Cookie cookie) {
+            synchronized (submission) {
+                if (submission.isResponseAttached()) {
+                    super.addCookie(cookie);
+                }
+            }
+        }
+
+        @Override
+        public void setContentType(String type) {
+            synchronized (submission) {
+                if (submission.isResponseAttached()) {
+                    super.setContentType(type);
+                }
+            }
+        }
+
+        @Override
+        public void setCharacterEncoding(String charset) {
+            synchronized (submission) {
+                if (submission.isResponseAttached()) {
+                    super.setCharacterEncoding(charset);
+                }
+            }
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            synchronized (submission) {
+                if (submission.isResponseAttached()) {
+                    super.setContentLength(len);
+                }
+            }
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            synchronized (submission) {
+                if (submission.isResponseAttached()) {
+                    super.setContentLengthLong(len);
+                }
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            synchronized (submission) {
+                if (submission.isResponseAttached()) {
+                    super.flushBuffer();
+                }
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            synchronized (submission) {
+                if (submission.isResponseAttached()) {
+                    super.resetBuffer();
+                }
+            }
+        }
+
+        @Override
+        public void reset() {
+            synchronized (submission) {
+                if (submission.isResponseAttached()) {
+                    super.reset();
+                }
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            synchronized (submission) {
+                if (outputStream == null) {
+                    outputStream = new SubmissionOutputStream(submission,
+                        submission.isResponseAttached() ? super.getOutputStream() : null);
+                }
+                return outputStream;
+            }
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            synchronized (submission) {
+                if (writer == null) {
+                    final Charset charset = submission.isResponseAttached()
+                        ? Charset.forName(getCharacterEncoding(), StandardCharsets.ISO_8859_1)
+                        : StandardCharsets.ISO_8859_1;
+                    writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), charset));
+                }
+                return writer;
+            }
+        }
+    }
+
+    /**
+     * Output stream of a {@link SubmissionResponse}, discards everything written once the asynchronous cycle has
+     * timed out.
+     */
+    private static final class SubmissionOutputStream extends ServletOutputStream {
+
+        private final Submission submission;
+
+        private final ServletOutputStream out;
+
+        private SubmissionOutputStream(Submission submission, ServletOutputStream out) {
+            this.submission = submission;
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            synchronized (submission) {
+                if (out != null && submission.isResponseAttached()) {
+                    out.write(b);
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (submission) {
+                if (out != null && submission.isResponseAttached()) {
+                    out.write(b, off, len);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (submission) {
+                if (out != null && submission.isResponseAttached()) {
+                    out.flush();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (submission) {
+                if (out != null && submission.isResponseAttached()) {
+                    out.close();
+                }
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            throw new IllegalStateException("Non-blocking writes are not supported while processing a submission");
+        }
+    }
+
+    private static final class InstanceHolder {
+
+        private static final MIRAsyncIngestion INSTANCE = createInstance();
+
+        private static MIRAsyncIngestion createInstance() {
+            final int threads = MCRConfiguration2.getInt(CONFIG_PREFIX + "Threads").orElse(0);
+            final ExecutorService executor;
+            if (threads > 0) {
+                final AtomicInteger threadCount = new AtomicInteger();
+                executor = Executors.newFixedThreadPool(threads, r -> {
+                    final Thread thread = new Thread(r, "MIRAsyncIngestion-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            } else {
+                executor = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("MIRAsyncIngestion-", 1).factory());
+            }
+            MCRShutdownHandler.getInstance().addCloseable(executor::shutdownNow);
+            final Path stagingPath = MCRConfiguration2.getString(CONFIG_PREFIX + "StagingPath").map(Path::of)
+                .orElseGet(() -> Path.of(System.getProperty("java.io.tmpdir")));
+            try {
+                Files.createDirectories(stagingPath);
+            } catch (IOException e) {
+                throw new MCRConfigurationException("Could not create staging path " + stagingPath, e);
+            }
+            return new MIRAsyncIngestion(executor,
+                Duration.ofSeconds(MCRConfiguration2.getLong(CONFIG_PREFIX + "Timeout").orElse(600L)), stagingPath,
+                MCRConfiguration2.getLong("MIR.MailerWithFileServlet.FormFieldsAllowance").orElse(1024L * 1024L),
+                MCRConfiguration2.getLong(CONFIG_PREFIX + "MaxFileSize").orElse(1024L * 1024L * 1024L));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.servlet.http.Part;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.common.config.MCRConfiguration2;
+import org.mycore.common.events.MCRShutdownHandler;
+import org.mycore.mir.handler.MIRInboundAttachment;
+
+/**
+ * Collects the uploaded files of a multipart request as {@link MIRInboundAttachment} instances.
+ * <p>
+ * Collecting the parts only validates their file names, their content is not read. Parts staged by
+ * {@link MIRAsyncIngestion} were inspected while they were written. Parts spooled by the container are read once
+ * more by a {@link MIRAttachmentInspector}, which is deferred until the submission is accepted, see
+ * {@link #inspect(List)}. Parts larger than {@code MIR.MailerWithFileServlet.Ingestion.ParallelThreshold} bytes are
+ * inspected concurrently on a bounded executor, smaller parts on the calling thread.
+ */
+public final class MIRAttachmentIngestor {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String CONFIG_PREFIX = "MIR.MailerWithFileServlet.Ingestion.";
+
+    private static final int MAX_FILENAME_LENGTH = 255;
+
+    private static final long PARALLEL_THRESHOLD =
+        MCRConfiguration2.getLong(CONFIG_PREFIX + "ParallelThreshold").orElse(1024L * 1024L);
+
+    private static final ThreadPoolExecutor EXECUTOR = createExecutor();
+
+    private MIRAttachmentIngestor() {}
+
+    /**
+     * Collects the file parts of the given parts without reading their content.
+     * <p>
+     * Parts without submitted file name or without content are skipped.
+     *
+     * @param parts the parts of the request
+     * @return the attachments in the order of the parts
+     * @throws MIRAttachmentIngestionException if a file name is invalid
+     */
+    public static List<MIRInboundAttachment> ingest(Collection<Part> parts) {
+        final List<MIRInboundAttachment> attachments = new ArrayList<>();
+        for (Part part : parts) {
+            if (part.getSubmittedFileName() == null || part.getSize() <= 0) {
+                continue;
+            }
+            final String filename = part.getSubmittedFileName();
+            if (filename.isBlank() || filename.length() > MAX_FILENAME_LENGTH) {
+                throw new MIRAttachmentIngestionException("Invalid file name: " + filename);
+            }
+            attachments.add(new MIRPartInboundAttachment(part,
+                part instanceof MIRInspectedPart inspectedPart ? inspectedPart.getInspection() : null));
+        }
+        return attachments;
+    }
+
+    /**
+     * Inspects the content of the given attachments that were not inspected yet, i.e. reads each part spooled by
+     * the container once to compute its checksum and detect its content type. Call this once the submission is
+     * accepted, before the attachments are passed on.
+     *
+     * @param attachments the attachments returned by {@link #ingest(Collection)}, other attachments are skipped
+     * @throws MIRAttachmentIngestionException if a file cannot be read
+     */
+    public static void inspect(List<MIRInboundAttachment> attachments) {
+        final List<Runnable> inspections = new ArrayList<>();
+        for (MIRInboundAttachment attachment : attachments) {
+            if (!(attachment instanceof MIRPartInboundAttachment partAttachment) || partAttachment.isInspected()) {
+                continue;
+            }
+            if (partAttachment.size() >= PARALLEL_THRESHOLD) {
+                final CompletableFuture<MIRAttachmentInspection> future =
+                    CompletableFuture.supplyAsync(partAttachment::getInspection, EXECUTOR);
+                inspections.add(() -> join(future));
+            } else {
+                inspections.add(partAttachment::getInspection);
+            }
+        }
+        inspections.forEach(Runnable::run);
+        if (LOGGER.isDebugEnabled()) {
+            attachments.forEach(attachment -> LOGGER.debug("Ingested attachment {} ({} bytes, SHA-256 {}, type {})",
+                attachment.filename(), attachment.size(), attachment.checksum().orElse(null),
+                attachment.detectedContentType().orElse(null)));
+        }
+    }
+
+    private static void join(CompletableFuture<MIRAttachmentInspection> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof MIRAttachmentIngestionException ingestionException) {
+                throw ingestionException;
+            }
+            throw new MIRAttachmentIngestionException("Failed to ingest attachment", e.getCause());
+        }
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        final int threads = MCRConfiguration2.getInt(CONFIG_PREFIX + "Threads").orElse(4);
+        final int queueSize = MCRConfiguration2.getInt(CONFIG_PREFIX + "QueueSize").orElse(64);
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueSize), r -> {
+                final Thread thread = new Thread(r, "MIRAttachmentIngestor-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        MCRShutdownHandler.getInstance().addCloseable(executor::shutdownNow);
+        return executor;
+    }
+}
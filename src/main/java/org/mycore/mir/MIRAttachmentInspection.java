@@ -0,0 +1,40 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import java.util.Optional;
+
+/**
+ * Result of inspecting the content of an attachment with {@link MIRAttachmentInspector}.
+ *
+ * @param sha256 the hex encoded SHA-256 checksum
+ * @param size the number of bytes read
+ * @param contentType the content type detected from the content, null if unknown
+ */
+public record MIRAttachmentInspection(String sha256, long size, String contentType) {
+
+    /**
+     * Returns the detected content type.
+     *
+     * @return the content type or an empty optional if it is unknown
+     */
+    public Optional<String> detectedContentType() {
+        return Optional.ofNullable(contentType);
+    }
+}
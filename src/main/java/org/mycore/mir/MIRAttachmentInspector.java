@@ -0,0 +1,121 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Inspects the content of an attachment in a single pass.
+ * <p>
+ * Every byte written to the inspector updates the SHA-256 digest and the byte count, the leading bytes are kept to
+ * detect the content type with {@link MIRContentTypeSniffer}. The inspector can be fed while a file is spooled with
+ * {@link #tee(OutputStream)}, so the file does not have to be read again.
+ */
+public final class MIRAttachmentInspector extends OutputStream {
+
+    private final MessageDigest digest = createDigest();
+
+    private final byte[] head = new byte[MIRContentTypeSniffer.HEAD_SIZE];
+
+    private int headLength;
+
+    private long size;
+
+    private MIRAttachmentInspection inspection;
+
+    /**
+     * Reads the given stream to its end and inspects its content.
+     *
+     * @param in the stream, it is not closed
+     * @return the inspection result
+     * @throws IOException if reading fails
+     */
+    public static MIRAttachmentInspection inspect(InputStream in) throws IOException {
+        final MIRAttachmentInspector inspector = new MIRAttachmentInspector();
+        in.transferTo(inspector);
+        return inspector.getInspection();
+    }
+
+    /**
+     * Returns a stream writing to the given stream and to this inspector.
+     *
+     * @param out the target stream
+     * @return the stream, closing it closes the target stream
+     */
+    public OutputStream tee(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                MIRAttachmentInspector.this.write(b, off, len);
+            }
+        };
+    }
+
+    @Override
+    public void write(int b) {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        if (inspection != null) {
+            throw new IllegalStateException("Inspection is finished");
+        }
+        digest.update(b, off, len);
+        if (headLength < head.length) {
+            final int n = Math.min(len, head.length - headLength);
+            System.arraycopy(b, off, head, headLength, n);
+            headLength += n;
+        }
+        size += len;
+    }
+
+    /**
+     * Finishes the inspection. No more bytes can be written afterwards.
+     *
+     * @return the inspection result
+     */
+    public MIRAttachmentInspection getInspection() {
+        if (inspection == null) {
+            inspection = new MIRAttachmentInspection(HexFormat.of().formatHex(digest.digest()), size,
+                MIRContentTypeSniffer.sniff(head, headLength).orElse(null));
+        }
+        return inspection;
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Utility class for answering requests with support for single HTTP byte ranges (RFC 9110).
+ * <p>
+ * Requests for multiple ranges are answered with the full content.
+ */
+public final class MIRByteRangeHelper {
+
+    private static final String BYTES_UNIT = "bytes";
+
+    private static final Range UNSATISFIABLE = new Range(-1, -1);
+
+    private MIRByteRangeHelper() {}
+
+    /**
+     * Sets status and headers for the requested range and writes the content of the range.
+     *
+     * @param request the request
+     * @param response the response, the content type has to be set already
+     * @param length the length of the complete content in bytes
+     * @param entityTag the entity tag of the content used to validate {@code If-Range}, may be {@code null}
+     * @param writer writes the selected range to the response
+     * @throws IOException if writing fails
+     */
+    public static void send(HttpServletRequest request, HttpServletResponse response, long length, String entityTag,
+        ContentWriter writer) throws IOException {
+        response.setHeader("Accept-Ranges", BYTES_UNIT);
+        Range range = new Range(0, length - 1);
+        final String rangeHeader = request.getHeader("Range");
+        final String ifRange = request.getHeader("If-Range");
+        if (rangeHeader != null && (ifRange == null || ifRange.equals(entityTag))) {
+            final Range requested = parse(rangeHeader, length);
+            if (requested == UNSATISFIABLE) {
+                response.setHeader("Content-Range", BYTES_UNIT + " */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (requested != null) {
+                range = requested;
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range",
+                    BYTES_UNIT + " " + range.start() + "-" + range.end() + "/" + length);
+            }
+        }
+        final long rangeLength = range.end() - range.start() + 1;
+        response.setContentLengthLong(rangeLength);
+        if (!"HEAD".equals(request.getMethod()) && rangeLength > 0) {
+            writer.write(range.start(), rangeLength);
+        }
+    }
+
+    /**
+     * Parses a range header.
+     *
+     * @return the range, {@link #UNSATISFIABLE} or {@code null} if the header should be ignored
+     */
+    private static Range parse(String header, long length) {
+        final String value = header.trim().toLowerCase(Locale.ROOT);
+        if (!value.startsWith(BYTES_UNIT + "=") || value.indexOf(',') >= 0) {
+            return null;
+        }
+        final String spec = value.substring(BYTES_UNIT.length() + 1).trim();
+        final int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            if (dash == 0) {
+                final long suffixLength = Long.parseLong(spec.substring(1));
+                if (suffixLength <= 0 || length == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new Range(Math.max(0, length - suffixLength), length - 1);
+            }
+            final long start = Long.parseLong(spec.substring(0, dash));
+            final String endSpec = spec.substring(dash + 1);
+            final long end = endSpec.isEmpty() ? length - 1 : Long.parseLong(endSpec);
+            if (end < start) {
+                return null;
+            }
+            if (start >= length) {
+                return UNSATISFIABLE;
+            }
+            return new Range(start, Math.min(end, length - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes a part of the content to the response.
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+
+        /**
+         * Writes the given part of the content to the response.
+         *
+         * @param offset the offset of the first byte to write
+         * @param length the number of bytes to write
+         * @throws IOException if writing fails
+         */
+        void write(long offset, long length) throws IOException;
+    }
+
+    private record Range(long start, long end) {
+    }
+}
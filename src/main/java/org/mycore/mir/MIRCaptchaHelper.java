@@ -18,6 +18,14 @@
 
 package org.mycore.mir;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
 import net.logicsquad.nanocaptcha.audio.AudioCaptcha;
 import net.logicsquad.nanocaptcha.content.ContentProducer;
 import net.logicsquad.nanocaptcha.content.NumbersContentProducer;
@@ -44,6 +52,21 @@ public class MIRCaptchaHelper {
             .build();
     }
 
+    /**
+     * Encodes the image of the given ImageCaptcha as PNG.
+     *
+     * @param imageCaptcha the captcha
+     * @return the PNG encoded image
+     * @throws IOException if encoding fails
+     */
+    public static byte[] encodePng(ImageCaptcha imageCaptcha) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        if (!ImageIO.write(imageCaptcha.getImage(), "png", out)) {
+            throw new IOException("No PNG writer available");
+        }
+        return out.toByteArray();
+    }
+
     /**
      * Creates an AudioCaptcha with the specified text.
      * <p>
@@ -63,6 +86,21 @@ public class MIRCaptchaHelper {
             .build();
     }
 
+    /**
+     * Encodes the audio of the given AudioCaptcha as WAV.
+     *
+     * @param audioCaptcha the captcha
+     * @return the WAV encoded audio
+     * @throws IOException if encoding fails
+     */
+    public static byte[] encodeWav(AudioCaptcha audioCaptcha) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        try (AudioInputStream ais = audioCaptcha.getAudio().getAudioInputStream()) {
+            AudioSystem.write(ais, AudioFileFormat.Type.WAVE, out);
+        }
+        return out.toByteArray();
+    }
+
     /**
      * Generates a random CAPTCHA text string only containing numbers.
      *
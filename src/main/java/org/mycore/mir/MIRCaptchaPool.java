@@ -0,0 +1,199 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.common.config.MCRConfiguration2;
+import org.mycore.common.events.MCRShutdownHandler;
+
+/**
+ * Bounded pool of pre-rendered image captchas.
+ * <p>
+ * Refill threads keep the pool filled in the background, so a captcha request only takes a rendered captcha from
+ * the pool. If the pool is empty, the captcha is rendered on the calling thread. Every captcha is handed out once.
+ */
+public final class MIRCaptchaPool implements MIRCaptchaPoolMXBean {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String CONFIG_PREFIX = "MIR.MailerWithFileServlet.Captcha.";
+
+    private static final int WIDTH = 150;
+
+    private static final int HEIGHT = 50;
+
+    private final int poolSize;
+
+    private final BlockingQueue<RenderedCaptcha> captchas;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder refillCount = new LongAdder();
+
+    private MIRCaptchaPool(int poolSize, int refillThreads) {
+        this.poolSize = poolSize;
+        this.captchas = new ArrayBlockingQueue<>(Math.max(poolSize, 1));
+        if (poolSize > 0) {
+            startRefillThreads(refillThreads);
+        }
+    }
+
+    /**
+     * Returns the configured captcha pool.
+     *
+     * @return the pool
+     */
+    public static MIRCaptchaPool getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Takes a rendered captcha from the pool or renders one if the pool is empty.
+     *
+     * @return the captcha
+     * @throws IOException if rendering fails
+     */
+    public RenderedCaptcha take() throws IOException {
+        RenderedCaptcha captcha = captchas.poll();
+        while (captcha != null && isStale(captcha)) {
+            captcha = captchas.poll();
+        }
+        if (captcha != null) {
+            hitCount.increment();
+            return captcha;
+        }
+        missCount.increment();
+        return render();
+    }
+
+    /**
+     * Returns whether the token of the given captcha has used up more than half of its lifetime in the pool.
+     */
+    private static boolean isStale(RenderedCaptcha captcha) {
+        if (captcha.token() == null) {
+            return false;
+        }
+        final long maxAge = MIRCaptchaTokenService.getInstance().getTimeToLive().toMillis() / 2;
+        return System.currentTimeMillis() - captcha.created() > maxAge;
+    }
+
+    private static RenderedCaptcha render() throws IOException {
+        final String text;
+        final String token;
+        if (MIRCaptchaTokenService.isEnabled()) {
+            final MIRCaptchaTokenService.Challenge challenge = MIRCaptchaTokenService.getInstance().createChallenge();
+            text = challenge.text();
+            token = challenge.token();
+        } else {
+            text = MIRCaptchaHelper.generateCaptchaText();
+            token = null;
+        }
+        final byte[] image = MIRCaptchaHelper.encodePng(MIRCaptchaHelper.createImageCaptcha(text, WIDTH, HEIGHT));
+        return new RenderedCaptcha(text, image, token, System.currentTimeMillis());
+    }
+
+    private void startRefillThreads(int refillThreads) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(refillThreads, r -> {
+            final Thread thread = new Thread(r, "MIRCaptchaPool-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        for (int i = 0; i < refillThreads; i++) {
+            executor.execute(this::refill);
+        }
+        MCRShutdownHandler.getInstance().addCloseable(executor::shutdownNow);
+    }
+
+    private void refill() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                captchas.put(render());
+                refillCount.increment();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | UncheckedIOException e) {
+                LOGGER.error("Failed to render captcha, stopping refill thread", e);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    @Override
+    public int getAvailableCount() {
+        return captchas.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @Override
+    public long getRefillCount() {
+        return refillCount.sum();
+    }
+
+    /**
+     * A rendered image captcha.
+     *
+     * @param text the captcha text
+     * @param image the PNG encoded captcha image
+     * @param token the signed token of the captcha in token mode, otherwise {@code null}
+     * @param created the time the captcha was rendered in milliseconds since the epoch
+     */
+    public record RenderedCaptcha(String text, byte[] image, String token, long created) {
+    }
+
+    private static final class InstanceHolder {
+
+        private static final MIRCaptchaPool INSTANCE = createInstance();
+
+        private static MIRCaptchaPool createInstance() {
+            final MIRCaptchaPool pool =
+                new MIRCaptchaPool(MCRConfiguration2.getInt(CONFIG_PREFIX + "PoolSize").orElse(32),
+                    MCRConfiguration2.getInt(CONFIG_PREFIX + "RefillThreads").orElse(1));
+            MIRManagementHelper.register(pool, "CaptchaPool", "default");
+            return pool;
+        }
+    }
+}
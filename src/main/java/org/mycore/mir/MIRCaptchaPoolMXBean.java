@@ -0,0 +1,60 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+/**
+ * Management interface of {@link MIRCaptchaPool}.
+ */
+public interface MIRCaptchaPoolMXBean {
+
+    /**
+     * Returns the maximum number of pre-rendered captchas.
+     *
+     * @return the pool size
+     */
+    int getPoolSize();
+
+    /**
+     * Returns the number of pre-rendered captchas currently available.
+     *
+     * @return the available count
+     */
+    int getAvailableCount();
+
+    /**
+     * Returns the number of captchas served from the pool.
+     *
+     * @return the hit count
+     */
+    long getHitCount();
+
+    /**
+     * Returns the number of captchas rendered on request because the pool was empty.
+     *
+     * @return the miss count
+     */
+    long getMissCount();
+
+    /**
+     * Returns the number of captchas rendered by the refill threads.
+     *
+     * @return the refill count
+     */
+    long getRefillCount();
+}
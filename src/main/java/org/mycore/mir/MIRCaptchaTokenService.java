@@ -0,0 +1,341 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.common.config.MCRConfiguration2;
+import org.mycore.common.config.MCRConfigurationException;
+
+/**
+ * Issues and verifies stateless captcha tokens.
+ * <p>
+ * A token consists of a random nonce, an expiry time and an HMAC signature over both. The captcha text is not part
+ * of the token, it is derived from the nonce with the secret key. Every node sharing the secret can therefore render
+ * and verify the captcha of a token without a session. A bounded replay cache rejects tokens that were already used
+ * on this node; if it is full of unexpired tokens, the tokens expiring first are forgotten. The encoded audio of a
+ * captcha is kept in a bounded cache until its token expires, so that replaying the audio or requesting a range of
+ * it does not encode it again.
+ */
+public final class MIRCaptchaTokenService {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String CONFIG_PREFIX = "MIR.MailerWithFileServlet.Captcha.";
+
+    private static final String MODE_TOKEN = "token";
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final int NONCE_LENGTH = 16;
+
+    private static final char SEPARATOR = '.';
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final int EVICTION_FRACTION = 16;
+
+    private static final long EVICTION_LOG_INTERVAL = 60_000;
+
+    private final SecretKeySpec key;
+
+    private final Duration timeToLive;
+
+    private final int textLength;
+
+    private final int replayCacheSize;
+
+    private final int audioCacheSize;
+
+    private final Map<String, Long> usedNonces = new ConcurrentHashMap<>();
+
+    private final Map<String, CachedAudio> audioCache = new ConcurrentHashMap<>();
+
+    private long evictedNonces;
+
+    private long lastEvictionLog;
+
+    private MIRCaptchaTokenService(byte[] secret, Duration timeToLive, int textLength, int replayCacheSize,
+        int audioCacheSize) {
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.timeToLive = timeToLive;
+        this.textLength = textLength;
+        this.replayCacheSize = replayCacheSize;
+        this.audioCacheSize = audioCacheSize;
+    }
+
+    /**
+     * Returns whether captchas are verified with tokens instead of the HTTP session, i.e. whether
+     * {@code MIR.MailerWithFileServlet.Captcha.Mode} is set to {@code token}.
+     *
+     * @return true if token mode is enabled
+     */
+    public static boolean isEnabled() {
+        return InstanceHolder.ENABLED;
+    }
+
+    /**
+     * Returns the configured token service.
+     *
+     * @return the token service
+     */
+    public static MIRCaptchaTokenService getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Returns how long an issued token is valid.
+     *
+     * @return the time to live
+     */
+    public Duration getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Creates a new captcha challenge.
+     *
+     * @return the challenge
+     */
+    public Challenge createChallenge() {
+        final byte[] nonceBytes = new byte[NONCE_LENGTH];
+        RANDOM.nextBytes(nonceBytes);
+        final String nonce = ENCODER.encodeToString(nonceBytes);
+        final long expiry = System.currentTimeMillis() / 1000 + timeToLive.toSeconds();
+        final String payload = nonce + SEPARATOR + expiry;
+        final String token = payload + SEPARATOR + ENCODER.encodeToString(mac("sig:" + payload));
+        return new Challenge(token, deriveText(nonce));
+    }
+
+    /**
+     * Returns the captcha text of a valid, unexpired token.
+     *
+     * @param token the token
+     * @return the captcha text or empty if the token is invalid or expired
+     */
+    public Optional<String> getText(String token) {
+        return parse(token).map(parsed -> deriveText(parsed.nonce()));
+    }
+
+    /**
+     * Returns the encoded WAV audio of the captcha of a valid, unexpired token. The audio is encoded once and cached
+     * until the token expires or is used. If the cache is full, the audio is encoded without caching it.
+     *
+     * @param token the token
+     * @return the audio or empty if the token is invalid or expired
+     * @throws IOException if the audio cannot be encoded
+     */
+    public Optional<byte[]> getAudio(String token) throws IOException {
+        final Optional<ParsedToken> parsed = parse(token);
+        if (parsed.isEmpty()) {
+            return Optional.empty();
+        }
+        final String nonce = parsed.get().nonce();
+        final CachedAudio cached = audioCache.get(nonce);
+        if (cached != null) {
+            return Optional.of(cached.wav());
+        }
+        final byte[] wav = MIRCaptchaHelper.encodeWav(MIRCaptchaHelper.createAudioCaptcha(deriveText(nonce)));
+        if (audioCache.size() >= audioCacheSize) {
+            final long now = System.currentTimeMillis() / 1000;
+            audioCache.values().removeIf(audio -> audio.expiry() < now);
+        }
+        if (audioCache.size() < audioCacheSize) {
+            audioCache.putIfAbsent(nonce, new CachedAudio(wav, parsed.get().expiry()));
+        }
+        return Optional.of(wav);
+    }
+
+    /**
+     * Returns the identifier of the given token, which is unique per challenge and reveals nothing about the
+     * captcha text.
+     *
+     * @param token the token
+     * @return the identifier
+     */
+    public String getId(String token) {
+        final int end = token.indexOf(SEPARATOR);
+        return end < 0 ? token : token.substring(0, end);
+    }
+
+    /**
+     * Verifies the answer to the captcha of the given token and marks the token as used. The token is used up by
+     * every attempt, a wrong answer requires a new captcha.
+     *
+     * @param token the token
+     * @param answer the answer entered by the user
+     * @return true if the token is valid, unexpired, unused and the answer is correct
+     */
+    public boolean verify(String token, String answer) {
+        final Optional<ParsedToken> parsed = parse(token);
+        if (parsed.isEmpty()) {
+            return false;
+        }
+        audioCache.remove(parsed.get().nonce());
+        if (!markUsed(parsed.get())) {
+            return false;
+        }
+        final byte[] expected = deriveText(parsed.get().nonce()).getBytes(UTF_8);
+        return MessageDigest.isEqual(expected, answer.getBytes(UTF_8));
+    }
+
+    private boolean markUsed(ParsedToken token) {
+        if (usedNonces.size() >= replayCacheSize) {
+            evictNonces();
+        }
+        return usedNonces.putIfAbsent(token.nonce(), token.expiry()) == null;
+    }
+
+    /**
+     * Removes expired nonces from the replay cache. If it is still full, the nonces expiring first are evicted, so
+     * that a flood of verifications does not lock out other users. Evictions are logged at most once per interval.
+     */
+    private synchronized void evictNonces() {
+        if (usedNonces.size() < replayCacheSize) {
+            return;
+        }
+        final long now = System.currentTimeMillis() / 1000;
+        usedNonces.values().removeIf(expiry -> expiry < now);
+        final int excess = usedNonces.size() - replayCacheSize + Math.max(1, replayCacheSize / EVICTION_FRACTION);
+        if (usedNonces.size() < replayCacheSize) {
+            return;
+        }
+        final long[] expiries = usedNonces.values().stream().mapToLong(Long::longValue).sorted().toArray();
+        final long threshold = expiries[Math.min(excess, expiries.length) - 1];
+        final int size = usedNonces.size();
+        usedNonces.values().removeIf(expiry -> expiry <= threshold);
+        evictedNonces += size - usedNonces.size();
+        final long nowMillis = System.currentTimeMillis();
+        if (nowMillis - lastEvictionLog >= EVICTION_LOG_INTERVAL) {
+            LOGGER.warn("Captcha replay cache is full, evicted {} unexpired nonces since the last warning",
+                evictedNonces);
+            lastEvictionLog = nowMillis;
+            evictedNonces = 0;
+        }
+    }
+
+    private Optional<ParsedToken> parse(String token) {
+        if (token == null) {
+            return Optional.empty();
+        }
+        final int signatureStart = token.lastIndexOf(SEPARATOR);
+        final int expiryStart = token.indexOf(SEPARATOR);
+        if (expiryStart < 0 || expiryStart == signatureStart) {
+            return Optional.empty();
+        }
+        final String payload = token.substring(0, signatureStart);
+        final byte[] signature = ENCODER.encode(mac("sig:" + payload));
+        if (!MessageDigest.isEqual(signature, token.substring(signatureStart + 1).getBytes(UTF_8))) {
+            return Optional.empty();
+        }
+        final long expiry;
+        try {
+            expiry = Long.parseLong(token.substring(expiryStart + 1, signatureStart));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+        if (expiry < System.currentTimeMillis() / 1000) {
+            return Optional.empty();
+        }
+        return Optional.of(new ParsedToken(token.substring(0, expiryStart), expiry));
+    }
+
+    private String deriveText(String nonce) {
+        final byte[] hash = mac("text:" + nonce);
+        final StringBuilder text = new StringBuilder(textLength);
+        for (int i = 0; i < textLength; i++) {
+            final int value = ((hash[2 * i] & 0xff) << 8) | (hash[2 * i + 1] & 0xff);
+            text.append((char) ('0' + value % 10));
+        }
+        return text.toString();
+    }
+
+    private byte[] mac(String data) {
+        try {
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(data.getBytes(UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not compute " + ALGORITHM, e);
+        }
+    }
+
+    /**
+     * A captcha challenge.
+     *
+     * @param token the signed token identifying the challenge
+     * @param text the captcha text
+     */
+    public record Challenge(String token, String text) {
+    }
+
+    private record ParsedToken(String nonce, long expiry) {
+    }
+
+    private record CachedAudio(byte[] wav, long expiry) {
+    }
+
+    private static final class InstanceHolder {
+
+        private static final boolean ENABLED = MCRConfiguration2.getString(CONFIG_PREFIX + "Mode")
+            .map(mode -> mode.toLowerCase(Locale.ROOT)).filter(MODE_TOKEN::equals).isPresent();
+
+        private static final MIRCaptchaTokenService INSTANCE = createInstance();
+
+        private static MIRCaptchaTokenService createInstance() {
+            final byte[] secret = MCRConfiguration2.getString(CONFIG_PREFIX + "Token.Secret")
+                .map(s -> s.getBytes(UTF_8)).orElseGet(() -> {
+                    LOGGER.warn("{}Token.Secret is not set, captcha tokens are only valid on this node until restart",
+                        CONFIG_PREFIX);
+                    final byte[] random = new byte[32];
+                    RANDOM.nextBytes(random);
+                    return random;
+                });
+            final Duration timeToLive =
+                Duration.ofSeconds(MCRConfiguration2.getLong(CONFIG_PREFIX + "Token.TimeToLive").orElse(600L));
+            final int textLength = MCRConfiguration2.getInt(CONFIG_PREFIX + "Token.TextLength").orElse(5);
+            if (textLength < 1 || textLength > 16) {
+                throw new MCRConfigurationException(CONFIG_PREFIX + "Token.TextLength must be between 1 and 16");
+            }
+            final int replayCacheSize =
+                MCRConfiguration2.getInt(CONFIG_PREFIX + "Token.ReplayCacheSize").orElse(100_000);
+            final int audioCacheSize =
+                MCRConfiguration2.getInt(CONFIG_PREFIX + "Token.AudioCacheSize").orElse(1000);
+            return new MIRCaptchaTokenService(secret, timeToLive, textLength, replayCacheSize, audioCacheSize);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Detects the content type of a file from its first bytes.
+ * <p>
+ * Types are recognized by their magic numbers. Content without a known magic number is detected as
+ * {@code text/plain} if it is valid UTF-8 or starts with a Unicode byte order mark, otherwise it is unknown.
+ */
+public final class MIRContentTypeSniffer {
+
+    /**
+     * Number of leading bytes needed for detection.
+     */
+    public static final int HEAD_SIZE = 512;
+
+    private static final String TYPE_ZIP = "application/zip";
+
+    private static final String TYPE_OLE = "application/x-ole-storage";
+
+    private static final String TYPE_TEXT = "text/plain";
+
+    private static final String TYPE_XML = "application/xml";
+
+    private static final String TYPE_UNKNOWN = "application/octet-stream";
+
+    private static final String TYPE_WINDOWS_EXECUTABLE = "application/x-msdownload";
+
+    private static final List<Signature> SIGNATURES = List.of(
+        new Signature(0, "%PDF-", "application/pdf"),
+        new Signature(0, bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A), "image/png"),
+        new Signature(0, bytes(0xFF, 0xD8, 0xFF), "image/jpeg"),
+        new Signature(0, "GIF87a", "image/gif"),
+        new Signature(0, "GIF89a", "image/gif"),
+        new Signature(0, bytes('I', 'I', 0x2A, 0x00), "image/tiff"),
+        new Signature(0, bytes('M', 'M', 0x00, 0x2A), "image/tiff"),
+        new Signature(8, "WEBP", "image/webp"),
+        new Signature(4, "ftyp", "video/mp4"),
+        new Signature(0, "OggS", "application/ogg"),
+        new Signature(0, "ID3", "audio/mpeg"),
+        new Signature(0, "%!PS", "application/postscript"),
+        new Signature(0, "{\\rtf", "application/rtf"),
+        new Signature(0, bytes('P', 'K', 0x03, 0x04), TYPE_ZIP),
+        new Signature(0, bytes('P', 'K', 0x05, 0x06), TYPE_ZIP),
+        new Signature(0, bytes(0x1F, 0x8B), "application/gzip"),
+        new Signature(0, bytes('7', 'z', 0xBC, 0xAF, 0x27, 0x1C), "application/x-7z-compressed"),
+        new Signature(0, bytes('R', 'a', 'r', '!', 0x1A, 0x07), "application/vnd.rar"),
+        new Signature(0, bytes(0xD0, 0xCF, 0x11, 0xE0, 0xA1, 0xB1, 0x1A, 0xE1), TYPE_OLE),
+        new Signature(0, "MZ", TYPE_WINDOWS_EXECUTABLE),
+        new Signature(0, bytes(0x7F, 'E', 'L', 'F'), "application/x-executable"),
+        new Signature(0, bytes(0xFE, 0xED, 0xFA, 0xCE), "application/x-mach-binary"),
+        new Signature(0, bytes(0xFE, 0xED, 0xFA, 0xCF), "application/x-mach-binary"),
+        new Signature(0, bytes(0xCE, 0xFA, 0xED, 0xFE), "application/x-mach-binary"),
+        new Signature(0, bytes(0xCF, 0xFA, 0xED, 0xFE), "application/x-mach-binary"),
+        new Signature(0, bytes(0xCA, 0xFE, 0xBA, 0xBE), "application/java-vm"),
+        new Signature(0, "#!", "application/x-sh"));
+
+    private static final Set<String> EXECUTABLE_TYPES = Set.of(TYPE_WINDOWS_EXECUTABLE,
+        "application/x-executable", "application/x-mach-binary", "application/java-vm", "application/x-sh");
+
+    private static final int PE_OFFSET_OFFSET = 0x3C;
+
+    private static final int ZIP_NAME_LENGTH_OFFSET = 26;
+
+    private static final int ZIP_NAME_OFFSET = 30;
+
+    private static final int ZIP_COMPRESSED_SIZE_OFFSET = 18;
+
+    private static final String ODF_MIMETYPE_ENTRY = "mimetype";
+
+    private MIRContentTypeSniffer() {}
+
+    /**
+     * Detects the content type from the given leading bytes of a file.
+     *
+     * @param head the leading bytes, at least {@link #HEAD_SIZE} bytes unless the file is shorter
+     * @param length the number of valid bytes in {@code head}
+     * @return the detected content type or an empty optional if the type is unknown
+     */
+    public static Optional<String> sniff(byte[] head, int length) {
+        for (Signature signature : SIGNATURES) {
+            if (!signature.matches(head, length)) {
+                continue;
+            }
+            switch (signature.type()) {
+                case TYPE_ZIP -> {
+                    return Optional.of(sniffZip(head, length));
+                }
+                case TYPE_WINDOWS_EXECUTABLE -> {
+                    if (isWindowsExecutable(head, length)) {
+                        return Optional.of(TYPE_WINDOWS_EXECUTABLE);
+                    }
+                }
+                default -> {
+                    return Optional.of(signature.type());
+                }
+            }
+        }
+        return sniffText(head, length);
+    }
+
+    /**
+     * Returns whether the given detected content type is an executable program or script.
+     *
+     * @param type the detected content type
+     * @return true if the type is executable
+     */
+    public static boolean isExecutable(String type) {
+        return type != null && EXECUTABLE_TYPES.contains(type);
+    }
+
+    /**
+     * Returns the type of an attachment for validation. Generic container types, e.g. ZIP for office documents,
+     * are refined by the declared type if it is consistent with the detected type, otherwise the detected type is
+     * returned.
+     *
+     * @param declaredType the content type declared by the client, may be null
+     * @param detectedType the detected content type, may be null if unknown
+     * @return the effective content type, {@code application/octet-stream} if the type is unknown
+     */
+    public static String getEffectiveType(String declaredType, String detectedType) {
+        if (detectedType == null) {
+            return TYPE_UNKNOWN;
+        }
+        if (declaredType == null) {
+            return detectedType;
+        }
+        final String declared = declaredType.toLowerCase(Locale.ROOT).split(";", 2)[0].trim();
+        final boolean consistent = switch (detectedType) {
+            case TYPE_ZIP -> declared.endsWith("+zip") || declared.contains("openxmlformats")
+                || declared.contains("opendocument") || declared.equals("application/epub+zip");
+            case TYPE_OLE -> declared.equals("application/msword") || declared.startsWith("application/vnd.ms-");
+            case TYPE_TEXT -> declared.startsWith("text/") && !declared.equals("text/html")
+                || declared.equals("application/json") || declared.endsWith("+json");
+            case TYPE_XML -> declared.endsWith("/xml")
+                || declared.endsWith("+xml") && !declared.equals("image/svg+xml");
+            default -> false;
+        };
+        return consistent ? declared : detectedType;
+    }
+
+    /**
+     * Checks an {@code MZ} header for the offset of a PE header or, if the offset lies beyond the leading bytes, for
+     * binary content, so that text starting with {@code MZ} is not taken for a program.
+     */
+    private static boolean isWindowsExecutable(byte[] head, int length) {
+        if (length < PE_OFFSET_OFFSET + 4) {
+            return false;
+        }
+        final int peOffset = ByteBuffer.wrap(head, 0, length).order(ByteOrder.LITTLE_ENDIAN).getInt(PE_OFFSET_OFFSET);
+        if (peOffset > 0 && peOffset <= length - 4) {
+            return Arrays.equals(head, peOffset, peOffset + 4, bytes('P', 'E', 0, 0), 0, 4);
+        }
+        for (int i = 0; i < length; i++) {
+            if (head[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Refines ZIP archives of OpenDocument files, which store their type uncompressed in the first entry.
+     */
+    private static String sniffZip(byte[] head, int length) {
+        if (length < ZIP_NAME_OFFSET) {
+            return TYPE_ZIP;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(head, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+        final int nameLength = buffer.getShort(ZIP_NAME_LENGTH_OFFSET) & 0xFFFF;
+        final int extraLength = buffer.getShort(ZIP_NAME_LENGTH_OFFSET + 2) & 0xFFFF;
+        final int contentLength = buffer.getInt(ZIP_COMPRESSED_SIZE_OFFSET);
+        final int contentOffset = ZIP_NAME_OFFSET + nameLength + extraLength;
+        if (nameLength != ODF_MIMETYPE_ENTRY.length() || contentLength <= 0 || contentLength > 100
+            || contentOffset + contentLength > length
+            || !ODF_MIMETYPE_ENTRY.equals(new String(head, ZIP_NAME_OFFSET, nameLength, US_ASCII))) {
+            return TYPE_ZIP;
+        }
+        return new String(head, contentOffset, contentLength, US_ASCII);
+    }
+
+    private static Optional<String> sniffText(byte[] head, int length) {
+        if (length == 0) {
+            return Optional.empty();
+        }
+        if (startsWith(head, length, bytes(0xFE, 0xFF)) || startsWith(head, length, bytes(0xFF, 0xFE))) {
+            return Optional.of(TYPE_TEXT);
+        }
+        final int start = startsWith(head, length, bytes(0xEF, 0xBB, 0xBF)) ? 3 : 0;
+        for (int i = start; i < length; i++) {
+            if (head[i] == 0) {
+                return Optional.empty();
+            }
+        }
+        final CharsetDecoder decoder = UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+        final ByteBuffer in = ByteBuffer.wrap(head, start, length - start);
+        final CharBuffer out = CharBuffer.allocate(length);
+        final CoderResult result = decoder.decode(in, out, false);
+        if (result.isError()) {
+            return Optional.empty();
+        }
+        final String text = out.flip().toString().stripLeading().toLowerCase(Locale.ROOT);
+        if (text.startsWith("<!doctype html") || text.startsWith("<html")) {
+            return Optional.of("text/html");
+        }
+        if (text.startsWith("<svg") || text.startsWith("<?xml") && text.contains("<svg")) {
+            return Optional.of("image/svg+xml");
+        }
+        if (text.startsWith("<?xml")) {
+            return Optional.of(TYPE_XML);
+        }
+        return Optional.of(TYPE_TEXT);
+    }
+
+    private static boolean startsWith(byte[] head, int length, byte[] prefix) {
+        return length >= prefix.length && Arrays.equals(head, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    private static byte[] bytes(int... values) {
+        final byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    /**
+     * A magic number at a fixed offset.
+     *
+     * @param offset the offset of the magic number
+     * @param magic the magic number
+     * @param type the content type
+     */
+    private record Signature(int offset, byte[] magic, String type) {
+
+        private Signature(int offset, String magic, String type) {
+            this(offset, magic.getBytes(US_ASCII), type);
+        }
+
+        private boolean matches(byte[] head, int length) {
+            return length >= offset + magic.length
+                && Arrays.equals(head, offset, offset + magic.length, magic, 0, magic.length);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.common.config.MCRConfiguration2;
+import org.mycore.common.config.MCRConfigurationException;
+import org.mycore.common.events.MCRShutdownHandler;
+import org.mycore.frontend.MCRFrontendUtil;
+import org.mycore.mir.handler.MIRInboundAttachment;
+
+/**
+ * Managed store for attachments that are sent as download links instead of being attached to a mail.
+ * <p>
+ * Every stored file gets a random id. A download link contains the id, an expiry time and an HMAC signature over
+ * both, so that links can neither be guessed nor extended. Files are deleted once the retention time has passed,
+ * which is also the time a link is valid.
+ */
+public final class MIRDownloadStore {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String CONFIG_PREFIX = "MIR.MailerWithFileServlet.Download.";
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final String METADATA_SUFFIX = ".properties";
+
+    private static final String KEY_FILENAME = "filename";
+
+    private static final String KEY_CONTENT_TYPE = "contentType";
+
+    private static final String SERVLET_PATH = "servlets/MIRMailerWithFile";
+
+    private static final int ID_LENGTH = 16;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final Path storagePath;
+
+    private final SecretKeySpec key;
+
+    private final Duration retention;
+
+    private MIRDownloadStore(Path storagePath, byte[] secret, Duration retention) {
+        this.storagePath = storagePath;
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.retention = retention;
+    }
+
+    /**
+     * Returns whether the download store is enabled, i.e. a storage path is configured.
+     *
+     * @return true if the download store is enabled
+     */
+    public static boolean isEnabled() {
+        return MCRConfiguration2.getString(CONFIG_PREFIX + "StoragePath").isPresent();
+    }
+
+    /**
+     * Returns the configured download store.
+     *
+     * @return the store
+     * @throws MCRConfigurationException if the download store is not enabled
+     */
+    public static MIRDownloadStore getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Moves an attachment into the store and creates a signed download link for it.
+     *
+     * @param attachment the attachment, must not be used afterwards
+     * @return the download link
+     * @throws IOException if the attachment cannot be stored
+     */
+    public Link store(MIRInboundAttachment attachment) throws IOException {
+        final byte[] idBytes = new byte[ID_LENGTH];
+        RANDOM.nextBytes(idBytes);
+        final String id = ENCODER.encodeToString(idBytes);
+        final Properties metadata = new Properties();
+        metadata.setProperty(KEY_FILENAME, attachment.filename());
+        metadata.setProperty(KEY_CONTENT_TYPE, attachment.contentType());
+        try (OutputStream out = Files.newOutputStream(storagePath.resolve(id + METADATA_SUFFIX))) {
+            metadata.store(out, null);
+        }
+        final Path file = storagePath.resolve(id);
+        attachment.transferTo(file);
+        // a moved file keeps its modification time, which the cleanup uses as time of storage
+        final Instant now = Instant.now();
+        Files.setLastModifiedTime(file, FileTime.from(now));
+        final long expiry = now.plus(retention).getEpochSecond();
+        final String url = MCRFrontendUtil.getBaseURL() + SERVLET_PATH + "?action=download&file=" + id
+            + "&expires=" + expiry + "&signature=" + sign(id, expiry);
+        LOGGER.debug("Stored download {} for {}", id, attachment.filename());
+        return new Link(id, attachment.filename(), attachment.size(), url, Instant.ofEpochSecond(expiry));
+    }
+
+    /**
+     * Deletes a stored file, e.g. because the mail linking it could not be sent.
+     *
+     * @param id the id of the file
+     */
+    public void delete(String id) {
+        try {
+            Files.deleteIfExists(storagePath.resolve(id));
+            Files.deleteIfExists(storagePath.resolve(id + METADATA_SUFFIX));
+        } catch (IOException e) {
+            LOGGER.warn("Could not delete download {}", id, e);
+        }
+    }
+
+    /**
+     * Returns the stored file of a download link, if the signature is valid and the link is not expired.
+     *
+     * @param id the id of the file
+     * @param expires the expiry time of the link in epoch seconds
+     * @param signature the signature of the link
+     * @return the file or an empty optional if the link is invalid, expired or the file is gone
+     * @throws IOException if the metadata of the file cannot be read
+     */
+    public Optional<Download> get(String id, String expires, String signature) throws IOException {
+        if (id == null || expires == null || signature == null) {
+            return Optional.empty();
+        }
+        final long expiry;
+        try {
+            expiry = Long.parseLong(expires);
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+        if (!MessageDigest.isEqual(sign(id, expiry).getBytes(UTF_8), signature.getBytes(UTF_8))
+            || expiry < Instant.now().getEpochSecond()) {
+            return Optional.empty();
+        }
+        final Path file = storagePath.resolve(id);
+        final Path metadataFile = storagePath.resolve(id + METADATA_SUFFIX);
+        if (!Files.isRegularFile(file) || !Files.isRegularFile(metadataFile)) {
+            return Optional.empty();
+        }
+        final Properties metadata = new Properties();
+        try (InputStream in = Files.newInputStream(metadataFile)) {
+            metadata.load(in);
+        }
+        return Optional.of(new Download(id, file, metadata.getProperty(KEY_FILENAME),
+            metadata.getProperty(KEY_CONTENT_TYPE), Files.size(file), Files.getLastModifiedTime(file).toInstant()));
+    }
+
+    private String sign(String id, long expiry) {
+        try {
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return ENCODER.encodeToString(mac.doFinal((id + '.' + expiry).getBytes(UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not compute " + ALGORITHM, e);
+        }
+    }
+
+    private void deleteExpired() {
+        final Instant limit = Instant.now().minus(retention);
+        try (Stream<Path> files = Files.list(storagePath)) {
+            files.filter(file -> !file.getFileName().toString().endsWith(METADATA_SUFFIX)).filter(file -> {
+                try {
+                    return Files.getLastModifiedTime(file).toInstant().isBefore(limit);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).forEach(file -> {
+                LOGGER.debug("Deleting expired download {}", file);
+                delete(file.getFileName().toString());
+            });
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.warn("Could not delete expired downloads in {}", storagePath, e);
+        }
+    }
+
+    /**
+     * A signed download link for a stored file.
+     *
+     * @param id the id of the file
+     * @param filename the file name
+     * @param size the size in bytes
+     * @param url the absolute download URL
+     * @param expires the time the link expires
+     */
+    public record Link(String id, String filename, long size, String url, Instant expires) {
+    }
+
+    /**
+     * A stored file.
+     *
+     * @param id the id of the file
+     * @param file the path of the file
+     * @param filename the original file name
+     * @param contentType the MIME type
+     * @param size the size in bytes
+     * @param lastModified the time the file was stored
+     */
+    public record Download(String id, Path file, String filename, String contentType, long size,
+        Instant lastModified) {
+    }
+
+    private static final class InstanceHolder {
+
+        private static final MIRDownloadStore INSTANCE = createInstance();
+
+        private static MIRDownloadStore createInstance() {
+            final Path storagePath = MCRConfiguration2.getString(CONFIG_PREFIX + "StoragePath").map(Path::of)
+                .orElseThrow(() -> new MCRConfigurationException(CONFIG_PREFIX + "StoragePath is not configured"));
+            try {
+                Files.createDirectories(storagePath);
+            } catch (IOException e) {
+                throw new MCRConfigurationException("Could not create download storage path " + storagePath, e);
+            }
+            final byte[] secret = MCRConfiguration2.getString(CONFIG_PREFIX + "Secret")
+                .map(s -> s.getBytes(UTF_8)).orElseGet(() -> {
+                    LOGGER.warn("{}Secret is not set, download links are only valid on this node until restart",
+                        CONFIG_PREFIX);
+                    final byte[] random = new byte[32];
+                    RANDOM.nextBytes(random);
+                    return random;
+                });
+            final Duration retention =
+                Duration.ofSeconds(MCRConfiguration2.getLong(CONFIG_PREFIX + "Retention").orElse(30 * 86_400L));
+            final MIRDownloadStore store = new MIRDownloadStore(storagePath, secret, retention);
+            final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "MIRDownloadStore-Cleaner");
+                thread.setDaemon(true);
+                return thread;
+            });
+            cleaner.scheduleWithFixedDelay(store::deleteExpired, 0, 1, TimeUnit.HOURS);
+            MCRShutdownHandler.getInstance().addCloseable(cleaner::shutdownNow);
+            return store;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.common.events.MCRShutdownHandler;
+
+/**
+ * Notifies listeners when watched files are created or modified.
+ * <p>
+ * All files are watched by a single {@link WatchService} and a single daemon thread. Listeners are called on that
+ * thread and should only mark dependent data as stale instead of reloading it.
+ */
+public final class MIRFileWatcher {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final Map<Path, Map<Path, List<Runnable>>> LISTENERS = new ConcurrentHashMap<>();
+
+    private MIRFileWatcher() {}
+
+    /**
+     * Registers a listener that is called whenever the given file is created or modified.
+     *
+     * @param file the file to watch
+     * @param listener the listener
+     * @throws IOException if the parent directory of the file cannot be watched
+     */
+    public static void watch(Path file, Runnable listener) throws IOException {
+        final Path absoluteFile = file.toAbsolutePath().normalize();
+        final Path directory = absoluteFile.getParent();
+        synchronized (LISTENERS) {
+            if (!LISTENERS.containsKey(directory)) {
+                directory.register(WatchServiceHolder.WATCH_SERVICE, ENTRY_CREATE, ENTRY_MODIFY);
+                LISTENERS.put(directory, new ConcurrentHashMap<>());
+            }
+        }
+        LISTENERS.get(directory).computeIfAbsent(absoluteFile.getFileName(), name -> new CopyOnWriteArrayList<>())
+            .add(listener);
+        LOGGER.debug("Watching {}", absoluteFile);
+    }
+
+    private static void processEvents(WatchService watchService) {
+        while (true) {
+            final WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            final Map<Path, List<Runnable>> directoryListeners = LISTENERS.get((Path) key.watchable());
+            if (directoryListeners != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        directoryListeners.values().forEach(MIRFileWatcher::notify);
+                    } else {
+                        notify(directoryListeners.get((Path) event.context()));
+                    }
+                }
+            }
+            key.reset();
+        }
+    }
+
+    private static void notify(List<Runnable> listeners) {
+        if (listeners == null) {
+            return;
+        }
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                LOGGER.warn("File change listener failed", e);
+            }
+        }
+    }
+
+    private static final class WatchServiceHolder {
+
+        private static final WatchService WATCH_SERVICE = createWatchService();
+
+        private static WatchService createWatchService() {
+            final WatchService watchService;
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not create watch service", e);
+            }
+            final Thread thread = new Thread(() -> processEvents(watchService), "MIRFileWatcher");
+            thread.setDaemon(true);
+            thread.start();
+            MCRShutdownHandler.getInstance().addCloseable(() -> {
+                try {
+                    watchService.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Could not close watch service", e);
+                }
+            });
+            return watchService;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mycore.common.config.MCRConfiguration2;
+
+/**
+ * Bounded, expiring store for the fields of rejected form submissions.
+ * <p>
+ * Instead of echoing all fields in the redirect URL, the servlet stores them under a random token and only passes
+ * the token to the form, which fetches the fields again. Entries expire after the configured time to live. If the
+ * store is full, the oldest entries are evicted first.
+ */
+public final class MIRFormStateStore {
+
+    private static final String CONFIG_PREFIX = "MIR.MailerWithFileServlet.FormState.";
+
+    private static final int TOKEN_LENGTH = 16;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Queue<Ticket> tickets = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger ticketCount = new AtomicInteger();
+
+    private final long timeToLive;
+
+    private final int maxEntries;
+
+    private MIRFormStateStore(Duration timeToLive, int maxEntries) {
+        this.timeToLive = timeToLive.toMillis();
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the configured form state store.
+     *
+     * @return the store
+     */
+    public static MIRFormStateStore getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Stores the given form fields.
+     *
+     * @param fields the form fields
+     * @return the token to retrieve the fields
+     */
+    public String put(Map<String, String> fields) {
+        final byte[] tokenBytes = new byte[TOKEN_LENGTH];
+        RANDOM.nextBytes(tokenBytes);
+        final String token = ENCODER.encodeToString(tokenBytes);
+        final long now = System.currentTimeMillis();
+        final long expiry = now + timeToLive;
+        entries.put(token, new Entry(Collections.unmodifiableMap(new LinkedHashMap<>(fields)), expiry));
+        tickets.add(new Ticket(token, expiry));
+        ticketCount.incrementAndGet();
+        evict(now);
+        return token;
+    }
+
+    /**
+     * Returns the form fields stored under the given token, if they have not expired.
+     *
+     * @param token the token
+     * @return the form fields
+     */
+    public Optional<Map<String, String>> get(String token) {
+        if (token == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(entries.get(token))
+            .filter(entry -> entry.expiry() - System.currentTimeMillis() > 0)
+            .map(Entry::fields);
+    }
+
+    /**
+     * Removes expired entries and the oldest entries exceeding the maximum number of entries.
+     */
+    private void evict(long now) {
+        while (true) {
+            final Ticket oldest = tickets.peek();
+            if (oldest == null || (oldest.expiry() - now > 0 && ticketCount.get() <= maxEntries)) {
+                return;
+            }
+            final Ticket evicted = tickets.poll();
+            if (evicted != null) {
+                ticketCount.decrementAndGet();
+                entries.remove(evicted.token());
+            }
+        }
+    }
+
+    private record Entry(Map<String, String> fields, long expiry) {
+    }
+
+    private record Ticket(String token, long expiry) {
+    }
+
+    private static final class InstanceHolder {
+
+        private static final MIRFormStateStore INSTANCE = new MIRFormStateStore(
+            Duration.ofSeconds(MCRConfiguration2.getLong(CONFIG_PREFIX + "TimeToLive").orElse(600L)),
+            MCRConfiguration2.getInt(CONFIG_PREFIX + "MaxEntries").orElse(10_000));
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mycore.common.config.MCRConfiguration2;
+import org.mycore.mir.handler.MIRInboundAttachment;
+
+/**
+ * Bounded, expiring index of idempotency keys of form submissions.
+ * <p>
+ * A submission claims its key with {@link #begin(String)} before doing any work. If the key is already claimed
+ * by a submission in flight or by one that completed recently, the submission is a duplicate. Completed keys are
+ * kept for the configured time to live, keys of failed submissions are released, so the submission can be
+ * retried. If the index is full, the oldest keys are evicted first.
+ * <p>
+ * A key is the submission id embedded in the form, the answered captcha, see {@link #captchaKey}, or a fingerprint
+ * of the content, see {@link #fingerprint}. The time to live and the maximum number of keys are set with
+ * {@code MIR.MailerWithFileServlet.Idempotency.TimeToLive} and
+ * {@code MIR.MailerWithFileServlet.Idempotency.MaxEntries}.
+ */
+public final class MIRIdempotencyIndex {
+
+    private static final String CONFIG_PREFIX = "MIR.MailerWithFileServlet.Idempotency.";
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Queue<Ticket> tickets = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger ticketCount = new AtomicInteger();
+
+    private final long timeToLive;
+
+    private final int maxEntries;
+
+    private MIRIdempotencyIndex(Duration timeToLive, int maxEntries) {
+        this.timeToLive = timeToLive.toMillis();
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the configured idempotency index.
+     *
+     * @return the index
+     */
+    public static MIRIdempotencyIndex getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Computes an idempotency key from the content of a submission, for forms without an embedded submission id.
+     * Attachments are identified by name, size and checksum, so their content is not read again.
+     *
+     * @param action the action name
+     * @param fields the form fields
+     * @param attachments the attachments
+     * @return the idempotency key
+     */
+    public static String fingerprint(String action, Map<String, String> fields,
+        List<MIRInboundAttachment> attachments) {
+        final MessageDigest digest = newDigest();
+        new TreeMap<>(fields).forEach((name, value) -> update(digest, name, value));
+        for (MIRInboundAttachment attachment : attachments) {
+            update(digest, attachment.filename(), Long.toString(attachment.size()),
+                attachment.checksum().orElse(""));
+        }
+        return action + ":fingerprint:" + HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Computes an idempotency key from the captcha a submission answered. A resent submission can thus be recognised
+     * before its captcha, which was used up by the first submission, is checked. The key is hashed, so neither the
+     * challenge nor the answer can be read from it.
+     *
+     * @param action the action name
+     * @param challengeId the identifier of the captcha challenge, e.g. the id of its token
+     * @param answer the answer of the submission
+     * @return the idempotency key
+     */
+    public static String captchaKey(String action, String challengeId, String answer) {
+        final MessageDigest digest = newDigest();
+        update(digest, challengeId, answer);
+        return action + ":captcha:" + HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String... values) {
+        for (String value : values) {
+            digest.update(String.valueOf(value).getBytes(UTF_8));
+            digest.update((byte) 0);
+        }
+    }
+
+    /**
+     * Claims the given key for a new submission.
+     *
+     * @param key the idempotency key
+     * @return {@link Status#NEW} if the key was claimed, otherwise the status of the submission holding the key
+     */
+    public Status begin(String key) {
+        final long now = System.currentTimeMillis();
+        final Entry claimed = new Entry(Status.IN_FLIGHT, now + timeToLive);
+        final Entry existing = entries.compute(key,
+            (k, entry) -> entry == null || entry.expiry() - now <= 0 ? claimed : entry);
+        if (existing != claimed) {
+            return existing.status();
+        }
+        tickets.add(new Ticket(key, claimed.expiry()));
+        ticketCount.incrementAndGet();
+        evict(now);
+        return Status.NEW;
+    }
+
+    /**
+     * Returns the status of the submission holding the given key without claiming it.
+     *
+     * @param key the idempotency key
+     * @return the status of the submission holding the key or an empty optional if the key is not claimed
+     */
+    public Optional<Status> getStatus(String key) {
+        final Entry entry = entries.get(key);
+        return entry == null || entry.expiry() - System.currentTimeMillis() <= 0 ? Optional.empty()
+            : Optional.of(entry.status());
+    }
+
+    /**
+     * Marks the submission holding the given key as completed.
+     *
+     * @param key the idempotency key
+     */
+    public void complete(String key) {
+        entries.computeIfPresent(key, (k, entry) -> new Entry(Status.COMPLETED, entry.expiry()));
+    }
+
+    /**
+     * Marks the submission holding the given key as cancelled with an unknown outcome, e.g. after a timeout. The key
+     * is kept for its time to live, so that the submission is not delivered twice.
+     *
+     * @param key the idempotency key
+     */
+    public void markUnknown(String key) {
+        entries.computeIfPresent(key, (k, entry) -> new Entry(Status.UNKNOWN, entry.expiry()));
+    }
+
+    /**
+     * Releases the given key after the submission failed.
+     *
+     * @param key the idempotency key
+     */
+    public void abandon(String key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Removes expired keys and the oldest keys exceeding the maximum number of entries.
+     *
+     * @param now the current time in milliseconds
+     */
+    private void evict(long now) {
+        while (true) {
+            final Ticket oldest = tickets.peek();
+            if (oldest == null || (oldest.expiry() - now > 0 && ticketCount.get() <= maxEntries)) {
+                return;
+            }
+            final Ticket evicted = tickets.poll();
+            if (evicted != null) {
+                ticketCount.decrementAndGet();
+                entries.computeIfPresent(evicted.key(),
+                    (key, entry) -> entry.expiry() == evicted.expiry() ? null : entry);
+            }
+        }
+    }
+
+    /**
+     * Status of the submission holding an idempotency key.
+     */
+    public enum Status {
+        /** The key was not known and is now claimed. */
+        NEW,
+        /** A submission with the key is being processed. */
+        IN_FLIGHT,
+        /** A submission with the key was completed recently. */
+        COMPLETED,
+        /** A submission with the key was cancelled recently, it may have been delivered. */
+        UNKNOWN
+    }
+
+    /**
+     * Claimed key.
+     *
+     * @param status the status of the submission holding the key
+     * @param expiry the time in milliseconds at which the key is released
+     */
+    private record Entry(Status status, long expiry) {
+    }
+
+    /**
+     * Claimed key in the order of claiming, used to evict the oldest keys.
+     *
+     * @param key the idempotency key
+     * @param expiry the expiry of the entry claimed with this ticket, identifies the entry if the key is claimed again
+     */
+    private record Ticket(String key, long expiry) {
+    }
+
+    private static final class InstanceHolder {
+
+        private static final MIRIdempotencyIndex INSTANCE = new MIRIdempotencyIndex(
+            Duration.ofSeconds(MCRConfiguration2.getLong(CONFIG_PREFIX + "TimeToLive").orElse(600L)),
+            MCRConfiguration2.getInt(CONFIG_PREFIX + "MaxEntries").orElse(10_000));
+    }
+}
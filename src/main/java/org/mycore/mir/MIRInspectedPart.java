@@ -0,0 +1,36 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import jakarta.servlet.http.Part;
+
+/**
+ * A {@link Part} whose content was inspected while it was spooled, so {@link MIRAttachmentIngestor} does not have
+ * to read it again. Parts spooled by the container are not inspected while they are spooled, they are read once more
+ * after the submission is accepted.
+ */
+interface MIRInspectedPart extends Part {
+
+    /**
+     * Returns the result of inspecting the content of the part.
+     *
+     * @return the inspection result
+     */
+    MIRAttachmentInspection getInspection();
+}
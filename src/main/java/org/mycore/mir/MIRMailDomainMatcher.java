@@ -0,0 +1,204 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.common.config.MCRConfiguration2;
+import org.mycore.common.config.MCRConfigurationException;
+
+/**
+ * Matches mail addresses against a set of domains.
+ * <p>
+ * An address matches if its domain or one of its parent domains is in the set, so {@code example.com} matches
+ * {@code user@example.com} and {@code user@mail.example.com}, but not {@code user@myexample.com}. Every domain level
+ * is a single hash lookup, so the lookup time depends on the number of labels of the address and not on the size
+ * of the set.
+ */
+public final class MIRMailDomainMatcher {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String PROPERTY_PREFIX = "MIR.MailerWithFileServlet.";
+
+    private static final int SAMPLE_SIZE = 1000;
+
+    private final Set<String> domains;
+
+    private MIRMailDomainMatcher(Set<String> domains) {
+        this.domains = domains;
+    }
+
+    /**
+     * Creates a matcher for the given domains. Domains are compared case-insensitively, a leading {@code @} or
+     * {@code .} is ignored.
+     *
+     * @param domains the domains
+     * @return the matcher
+     */
+    public static MIRMailDomainMatcher of(Collection<String> domains) {
+        return new MIRMailDomainMatcher(domains.stream().map(MIRMailDomainMatcher::normalize)
+            .filter(domain -> !domain.isEmpty()).collect(Collectors.toUnmodifiableSet()));
+    }
+
+    /**
+     * Returns the matcher for the configured disallowed sender domains. If a domain file is configured, changes
+     * to that file are picked up without a restart.
+     *
+     * @return the matcher
+     */
+    public static MIRMailDomainMatcher getDisallowed() {
+        return DisallowedHolder.INSTANCE.get();
+    }
+
+    /**
+     * Returns whether the domain of the given mail address or one of its parent domains is in the set.
+     *
+     * @param email the mail address
+     * @return true if the address matches
+     */
+    public boolean matches(String email) {
+        String domain = normalize(email.substring(email.lastIndexOf('@') + 1));
+        while (!domain.isEmpty()) {
+            if (domains.contains(domain)) {
+                return true;
+            }
+            final int dot = domain.indexOf('.');
+            domain = dot < 0 ? "" : domain.substring(dot + 1);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of domains.
+     *
+     * @return the size
+     */
+    public int size() {
+        return domains.size();
+    }
+
+    /**
+     * Returns the approximate heap usage of the domain set in bytes, assuming compact strings and compressed
+     * pointers.
+     */
+    private long estimateMemoryUsage() {
+        long bytes = 16L + 8L * domains.size();
+        for (String domain : domains) {
+            bytes += 24 + ((16 + domain.length() + 7) & ~7);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the average lookup time in nanoseconds for addresses in subdomains of a sample of the domains.
+     */
+    private long measureLookupTime() {
+        final String[] sample = domains.stream().limit(SAMPLE_SIZE).map(domain -> "user@mail." + domain)
+            .toArray(String[]::new);
+        if (sample.length == 0) {
+            return 0;
+        }
+        final long start = System.nanoTime();
+        for (String email : sample) {
+            matches(email);
+        }
+        return (System.nanoTime() - start) / sample.length;
+    }
+
+    private static String normalize(String domain) {
+        String normalized = domain.trim().toLowerCase(Locale.ROOT);
+        while (normalized.startsWith("@") || normalized.startsWith(".")) {
+            normalized = normalized.substring(1);
+        }
+        return normalized;
+    }
+
+    private static final class DisallowedHolder {
+
+        private static final DisallowedHolder INSTANCE = new DisallowedHolder();
+
+        private final Set<String> configuredDomains = MCRConfiguration2
+            .getOrThrow(PROPERTY_PREFIX + "DisallowedEmailDomains", MCRConfiguration2::splitValue)
+            .collect(Collectors.toSet());
+
+        private final Path file = MCRConfiguration2.getString(PROPERTY_PREFIX + "DisallowedEmailDomainsFile")
+            .map(Path::of).orElse(null);
+
+        private final AtomicBoolean stale = new AtomicBoolean();
+
+        private volatile MIRMailDomainMatcher matcher;
+
+        private DisallowedHolder() {
+            try {
+                matcher = load();
+            } catch (IOException e) {
+                throw new MCRConfigurationException("Could not read disallowed mail domains from " + file, e);
+            }
+            if (file != null) {
+                try {
+                    MIRFileWatcher.watch(file, () -> stale.set(true));
+                } catch (IOException e) {
+                    LOGGER.warn("Could not watch {}, changes will not be detected", file, e);
+                }
+            }
+        }
+
+        private MIRMailDomainMatcher get() {
+            if (stale.compareAndSet(true, false)) {
+                try {
+                    matcher = load();
+                } catch (IOException e) {
+                    LOGGER.warn("Could not reload disallowed mail domains from {}, keeping previous version", file,
+                        e);
+                }
+            }
+            return matcher;
+        }
+
+        private MIRMailDomainMatcher load() throws IOException {
+            final long start = System.nanoTime();
+            final Set<String> domains = new HashSet<>(configuredDomains);
+            if (file != null) {
+                try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+                    lines.map(String::trim).filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                        .forEach(domains::add);
+                }
+            }
+            final MIRMailDomainMatcher loaded = of(domains);
+            final long loadTime = System.nanoTime() - start;
+            LOGGER.info("Loaded {} disallowed mail domains in {} ms, approx. {} KiB, {} ns per lookup",
+                loaded.size(), loadTime / 1_000_000, loaded.estimateMemoryUsage() / 1024,
+                loaded.measureLookupTime());
+            return loaded;
+        }
+    }
+}
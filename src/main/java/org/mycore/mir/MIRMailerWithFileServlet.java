@@ -19,29 +19,36 @@
 package org.mycore.mir;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.Serial;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
-
-import javax.imageio.ImageIO;
-import javax.imageio.stream.ImageOutputStream;
-import javax.sound.sampled.AudioFileFormat;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
 
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.MultipartConfig;
+import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import jakarta.servlet.http.Part;
+import jakarta.servlet.http.HttpSession;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -49,13 +56,15 @@ import org.mycore.common.config.MCRConfiguration2;
 import org.mycore.frontend.MCRFrontendUtil;
 import org.mycore.frontend.servlets.MCRServlet;
 import org.mycore.frontend.servlets.MCRServletJob;
-import org.mycore.mir.handler.MIRFormSubmissionHandler;
+import org.mycore.mir.MIRSubmissionMetrics.Rejection;
+import org.mycore.mir.MIRSubmissionMetrics.Stage;
 import org.mycore.mir.handler.MIRFormSubmissionHandlerException;
 import org.mycore.mir.handler.MIRFormSubmissionRequest;
+import org.mycore.mir.handler.MIRFormSubmissionResult;
+import org.mycore.mir.handler.MIRFormSubmissionValidationException;
 import org.mycore.mir.handler.MIRInboundAttachment;
 
-import net.logicsquad.nanocaptcha.audio.AudioCaptcha;
-import net.logicsquad.nanocaptcha.image.ImageCaptcha;
+import com.google.gson.Gson;
 
 /**
  * Servlet implementation class MIRMailerWithFileServlet.
@@ -68,123 +77,787 @@ public class MIRMailerWithFileServlet extends MCRServlet {
 
     private static final Logger LOGGER = LogManager.getLogger();
 
-    private static final String PROPERTY_PREFIX = "MIR.MailerWithFileServlet.";
-
     private static final String CAPTCHA_SESSION_KEY = "mwf_captcha";
+    private static final String CAPTCHA_AUDIO_SESSION_KEY = "mwf_captcha_audio";
+    private static final String CAPTCHA_TOKEN_COOKIE = "mwf_captcha_token";
     private static final String ACTION_CAPTCHA = "captcha";
     private static final String ACTION_CAPTCHA_PLAY = "captcha-play";
+    private static final String ACTION_FORM_STATE = "form-state";
+    private static final String ACTION_UPLOAD_CREATE = "upload-create";
+    private static final String ACTION_UPLOAD_CHUNK = "upload-chunk";
+    private static final String ACTION_UPLOAD_STATUS = "upload-status";
+    private static final String ACTION_UPLOAD_FINALIZE = "upload-finalize";
+    private static final String ACTION_DOWNLOAD = "download";
+    private static final Set<String> RESERVED_ACTIONS = Set.of(ACTION_CAPTCHA, ACTION_CAPTCHA_PLAY, ACTION_FORM_STATE,
+        ACTION_UPLOAD_CREATE, ACTION_UPLOAD_CHUNK, ACTION_UPLOAD_STATUS, ACTION_UPLOAD_FINALIZE, ACTION_DOWNLOAD);
     private static final String DEFAULT_REDIRECT_PATH = "content/index.xml";
 
+    private static final String METRICS_NAME_OTHER = "other";
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
     private static final String PARAM_CAPTCHA = "captcha";
-    private static final String PARAM_FILE = "file";
     private static final String PARAM_SENDER_NAME = "name";
     private static final String PARAM_SENDER_EMAIL = "mail";
     private static final String PARAM_ACTION = "action";
-
-    private static final Set<String> SENSITIVE_PARAMS = Set.of(PARAM_CAPTCHA, PARAM_ACTION);
+    private static final String PARAM_FORM_STATE_TOKEN = "token";
+    private static final String PARAM_SUBMISSION_ID = "submission_id";
+    private static final String PARAM_UPLOAD_ID = "upload_id";
+    private static final String PARAM_UPLOAD_FORM_ACTION = "form_action";
+    private static final String PARAM_UPLOAD_FILENAME = "filename";
+    private static final String PARAM_UPLOAD_SIZE = "size";
+    private static final String PARAM_UPLOAD_CONTENT_TYPE = "type";
+    private static final String PARAM_UPLOAD_OFFSET = "offset";
+    private static final String PARAM_DOWNLOAD_FILE = "file";
+    private static final String PARAM_DOWNLOAD_EXPIRES = "expires";
+    private static final String PARAM_DOWNLOAD_SIGNATURE = "signature";
+
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    private static final int MAX_SUBMISSION_ID_LENGTH = 128;
+
+    private static final Gson GSON = new Gson();
+
+    private static final Set<String> SENSITIVE_PARAMS =
+        Set.of(PARAM_CAPTCHA, PARAM_ACTION, PARAM_SUBMISSION_ID, PARAM_UPLOAD_ID);
 
     private static final String CHAR_ENCODING =
         MCRConfiguration2.getString("MCR.Request.CharEncoding").orElse("UTF-8");
 
-    private static final Set<String> DISALLOWED_MAIL_DOMAINS =
-        MCRConfiguration2.getOrThrow(PROPERTY_PREFIX + "DisallowedEmailDomains", MCRConfiguration2::splitValue)
-            .collect(Collectors.toSet());
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        MIRMailDomainMatcher.getDisallowed();
+        if (MIRSubmissionJournal.isEnabled()) {
+            MIRSubmissionJournal.getInstance().replay();
+        }
+    }
+
+    /**
+     * Applies the rate limit, rejects unknown actions and checks the request size limit before the request body is
+     * parsed. Only an action passed in the query string is known at this point, other requests are checked against
+     * the default limits. The limit of an action passed in the request body is applied in addition once the body is
+     * parsed. Chunks of resumable uploads are sent with {@code PATCH}, which is handled like
+     * {@code POST}. Submissions for an action passed in the query string are read without blocking a container
+     * thread if {@link MIRAsyncIngestion} is enabled.
+     */
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response)
+        throws ServletException, IOException {
+        final String action =
+            MIRMailerWithFileServletHelper.getQueryParameter(request.getQueryString(), PARAM_ACTION);
+        if (!acquireRateLimit(action, request, response)) {
+            MIRSubmissionMetrics.get(getMetricsName(action)).reject(Rejection.RATE_LIMITED);
+            return;
+        }
+        if (action != null && !isReservedAction(action)
+            && MIRActionRegistry.getInstance().getAction(action).isEmpty()) {
+            LOGGER.error("No form submission handler configured for action '{}'", action);
+            MIRSubmissionMetrics.get(getMetricsName(action)).reject(Rejection.UNKNOWN_ACTION);
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        if (isUploadAction(action) && !MIRUploadStore.isEnabled()
+            || ACTION_DOWNLOAD.equals(action) && !MIRDownloadStore.isEnabled()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (!checkRequestSize(action, request, response)) {
+            return;
+        }
+        if ("PATCH".equals(request.getMethod())) {
+            if (ACTION_UPLOAD_CHUNK.equals(action)) {
+                doPost(request, response);
+            } else {
+                response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            }
+            return;
+        }
+        if (action != null && !isReservedAction(action) && "POST".equals(request.getMethod())
+            && MIRAsyncIngestion.isEnabled()
+            && MIRAsyncIngestion.getInstance().start(request, response, getMaxAttachmentSize(action),
+                getIngestionTimeout(action), (req, res) -> super.service(req, res))) {
+            return;
+        }
+        super.service(request, response);
+    }
+
+    private static long getMaxAttachmentSize(String action) {
+        return MIRActionRegistry.getInstance().getAction(action)
+            .flatMap(formAction -> formAction.handler().getMaxAttachmentSize()).orElse(Long.MAX_VALUE);
+    }
+
+    private static Duration getIngestionTimeout(String action) {
+        return MIRActionRegistry.getInstance().getAction(action).map(MIRActionRegistry.Action::ingestionTimeout)
+            .orElse(null);
+    }
+
+    private static boolean acquireRateLimit(String action, HttpServletRequest request, HttpServletResponse response)
+        throws IOException {
+        final MIRRateLimiter rateLimiter = MIRRateLimiter.getInstance();
+        if (rateLimiter.tryAcquire(action, MCRFrontendUtil.getRemoteAddr(request), request.getRequestedSessionId())) {
+            return true;
+        }
+        LOGGER.debug(() -> "Rate limit exceeded for action " + action);
+        response.setHeader("Retry-After", Long.toString(rateLimiter.getRetryAfter(action)));
+        response.sendError(SC_TOO_MANY_REQUESTS);
+        return false;
+    }
+
+    private boolean checkRequestSize(String action, HttpServletRequest request, HttpServletResponse response)
+        throws IOException {
+        final Optional<Long> maxRequestSize = ACTION_UPLOAD_CHUNK.equals(action)
+            ? Optional.of((long) MIRUploadStore.getInstance().getChunkSize())
+            : MIRActionRegistry.getInstance().getMaxRequestSize(action);
+        if (maxRequestSize.isEmpty()) {
+            return true;
+        }
+        final long contentLength = request.getContentLengthLong();
+        if (contentLength < 0 && request.getContentType() != null) {
+            LOGGER.debug(() -> "Request without content length for action " + action);
+            MIRSubmissionMetrics.get(getMetricsName(action)).reject(Rejection.LENGTH_REQUIRED);
+            response.sendError(HttpServletResponse.SC_LENGTH_REQUIRED);
+            return false;
+        }
+        if (contentLength > maxRequestSize.get()) {
+            LOGGER.warn("Rejected request of {} bytes for action '{}', max allowed is {} bytes", contentLength,
+                action, maxRequestSize.get());
+            MIRSubmissionMetrics.get(getMetricsName(action)).reject(Rejection.TOO_LARGE);
+            response.setHeader("Connection", "close");
+            response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isReservedAction(String action) {
+        return action != null && RESERVED_ACTIONS.contains(action);
+    }
+
+    private static boolean isUploadAction(String action) {
+        return ACTION_UPLOAD_CREATE.equals(action) || ACTION_UPLOAD_CHUNK.equals(action)
+            || ACTION_UPLOAD_STATUS.equals(action) || ACTION_UPLOAD_FINALIZE.equals(action);
+    }
+
+    /**
+     * Returns the name of the metrics for the given action. Unknown actions share one metrics instance, so that
+     * clients cannot create arbitrary many.
+     */
+    private static String getMetricsName(String action) {
+        if (isReservedAction(action) || MIRActionRegistry.getInstance().getAction(action).isPresent()) {
+            return action;
+        }
+        return METRICS_NAME_OTHER;
+    }
 
     @Override
     protected void doGetPost(MCRServletJob job) throws ServletException, IOException {
+        final long start = System.nanoTime();
         LOGGER.debug(() -> "Starting...");
         LOGGER.debug(() -> MIRMailerWithFileServletHelper.buildRequestLogMessage(job.getRequest()));
         final String action = job.getRequest().getParameter(PARAM_ACTION);
-        if (action == null) {
-            LOGGER.error(() -> "'action' parameter is required");
-            job.getResponse().sendError(HttpServletResponse.SC_BAD_REQUEST);
-            return;
-        }
-        switch (action) {
-            case ACTION_CAPTCHA -> handleCaptchaRequest(job);
-            case ACTION_CAPTCHA_PLAY -> handleCaptchaPlayRequest(job);
-            default -> handleFormSubmitAction(job, action);
+        final MIRSubmissionTrace trace = MIRSubmissionTrace.begin(getMetricsName(action), start);
+        MIRSubmissionTrace.record(Stage.PARSE, start);
+        try {
+            if (action == null) {
+                LOGGER.error(() -> "'action' parameter is required");
+                MIRSubmissionTrace.reject(Rejection.UNKNOWN_ACTION);
+                job.getResponse().sendError(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+            final String queryString = job.getRequest().getQueryString();
+            if (MIRMailerWithFileServletHelper.getQueryParameter(queryString, PARAM_ACTION) == null
+                && MIRRateLimiter.getInstance().hasActionLimit(action)
+                && !acquireRateLimit(action, job.getRequest(), job.getResponse())) {
+                MIRSubmissionTrace.reject(Rejection.RATE_LIMITED);
+                return;
+            }
+            switch (action) {
+                case ACTION_CAPTCHA -> handleCaptchaRequest(job);
+                case ACTION_CAPTCHA_PLAY -> handleCaptchaPlayRequest(job);
+                case ACTION_FORM_STATE -> handleFormStateRequest(job);
+                case ACTION_UPLOAD_CREATE -> handleUploadCreateRequest(job);
+                case ACTION_UPLOAD_CHUNK -> handleUploadChunkRequest(job);
+                case ACTION_UPLOAD_STATUS -> handleUploadStatusRequest(job);
+                case ACTION_UPLOAD_FINALIZE -> handleUploadFinalizeRequest(job);
+                case ACTION_DOWNLOAD -> handleDownloadRequest(job);
+                default -> handleFormSubmitAction(job, action);
+            }
+        } finally {
+            trace.end();
         }
     }
 
     private void handleCaptchaRequest(MCRServletJob job) throws IOException {
         LOGGER.debug(() -> "Handling captcha request...");
-        final String captchaText = MIRCaptchaHelper.generateCaptchaText();
-        job.getRequest().getSession().setAttribute(CAPTCHA_SESSION_KEY, captchaText);
-        final ImageCaptcha imageCaptcha = MIRCaptchaHelper.createImageCaptcha(captchaText, 150, 50);
-        job.getResponse().setContentType("image/png");
-        try (ImageOutputStream ios = ImageIO.createImageOutputStream(job.getResponse().getOutputStream())) {
-            ImageIO.write(imageCaptcha.getImage(), "png", ios);
+        final HttpServletRequest request = job.getRequest();
+        final HttpServletResponse response = job.getResponse();
+        final long start = System.nanoTime();
+        final MIRCaptchaPool.RenderedCaptcha captcha = MIRCaptchaPool.getInstance().take();
+        MIRSubmissionTrace.record(Stage.CAPTCHA, start);
+        if (captcha.token() != null) {
+            setCaptchaTokenCookie(request, response, captcha.token(),
+                (int) MIRCaptchaTokenService.getInstance().getTimeToLive().toSeconds());
+        } else {
+            final HttpSession session = request.getSession();
+            session.setAttribute(CAPTCHA_SESSION_KEY, captcha.text());
+            session.removeAttribute(CAPTCHA_AUDIO_SESSION_KEY);
+        }
+        response.setContentType("image/png");
+        response.setHeader("Cache-Control", "no-store");
+        response.setContentLength(captcha.image().length);
+        response.getOutputStream().write(captcha.image());
+    }
+
+    private void handleFormStateRequest(MCRServletJob job) throws IOException {
+        LOGGER.debug(() -> "Handling form state request...");
+        final HttpServletResponse response = job.getResponse();
+        final Optional<Map<String, String>> fields =
+            MIRFormStateStore.getInstance().get(job.getRequest().getParameter(PARAM_FORM_STATE_TOKEN));
+        if (fields.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setContentType("application/json");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader("Cache-Control", "no-store");
+        GSON.toJson(fields.get(), response.getWriter());
+    }
+
+    private void handleUploadCreateRequest(MCRServletJob job) throws IOException {
+        LOGGER.debug(() -> "Handling upload create request...");
+        final HttpServletRequest request = job.getRequest();
+        final HttpServletResponse response = job.getResponse();
+        if (!checkUploadMethod(request, response)) {
+            return;
+        }
+        request.setCharacterEncoding(CHAR_ENCODING);
+        final MIRUploadStore.Upload upload;
+        try {
+            upload = MIRUploadStore.getInstance().create(request.getParameter(PARAM_UPLOAD_FORM_ACTION),
+                MCRFrontendUtil.getRemoteAddr(request), request.getParameter(PARAM_UPLOAD_FILENAME),
+                request.getParameter(PARAM_UPLOAD_CONTENT_TYPE),
+                Long.parseLong(request.getParameter(PARAM_UPLOAD_SIZE)));
+        } catch (NumberFormatException | MIRAttachmentIngestionException e) {
+            LOGGER.warn("Rejected upload: {}", e.getMessage());
+            MIRSubmissionTrace.reject(Rejection.INVALID_ATTACHMENT);
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        response.setStatus(HttpServletResponse.SC_CREATED);
+        sendUploadStatus(response, upload);
+    }
+
+    private void handleUploadChunkRequest(MCRServletJob job) throws IOException {
+        final HttpServletRequest request = job.getRequest();
+        final HttpServletResponse response = job.getResponse();
+        if (!checkUploadMethod(request, response)) {
+            return;
+        }
+        final Optional<MIRUploadStore.Upload> upload = getUpload(request, response);
+        if (upload.isEmpty()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            upload.get().writeChunk(Long.parseLong(request.getParameter(PARAM_UPLOAD_OFFSET)),
+                request.getContentLengthLong(), request.getInputStream());
+        } catch (NumberFormatException | MIRAttachmentIngestionException e) {
+            LOGGER.warn("Rejected upload chunk: {}", e.getMessage());
+            MIRSubmissionTrace.reject(Rejection.INVALID_ATTACHMENT);
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        } finally {
+            MIRSubmissionTrace.record(Stage.INGEST, start);
+        }
+        sendUploadStatus(response, upload.get());
+    }
+
+    private void handleUploadStatusRequest(MCRServletJob job) throws IOException {
+        final Optional<MIRUploadStore.Upload> upload = getUpload(job.getRequest(), job.getResponse());
+        if (upload.isPresent()) {
+            sendUploadStatus(job.getResponse(), upload.get());
+        }
+    }
+
+    private void handleUploadFinalizeRequest(MCRServletJob job) throws IOException {
+        LOGGER.debug(() -> "Handling upload finalize request...");
+        final HttpServletRequest request = job.getRequest();
+        final HttpServletResponse response = job.getResponse();
+        if (!checkUploadMethod(request, response)) {
+            return;
+        }
+        final Optional<MIRUploadStore.Upload> upload = getUpload(request, response);
+        if (upload.isEmpty()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            upload.get().finish();
+        } catch (MIRAttachmentIngestionException e) {
+            LOGGER.debug(e::getMessage);
+            response.sendError(HttpServletResponse.SC_CONFLICT);
+            return;
+        } finally {
+            MIRSubmissionTrace.record(Stage.INGEST, start);
+        }
+        sendUploadStatus(response, upload.get());
+    }
+
+    private static boolean checkUploadMethod(HttpServletRequest request, HttpServletResponse response)
+        throws IOException {
+        if ("GET".equals(request.getMethod())) {
+            response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return false;
+        }
+        return true;
+    }
+
+    private static Optional<MIRUploadStore.Upload> getUpload(HttpServletRequest request,
+        HttpServletResponse response) throws IOException {
+        final Optional<MIRUploadStore.Upload> upload =
+            MIRUploadStore.getInstance().get(request.getParameter(PARAM_UPLOAD_ID));
+        if (upload.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
         }
+        return upload;
+    }
+
+    private static void sendUploadStatus(HttpServletResponse response, MIRUploadStore.Upload upload)
+        throws IOException {
+        final Map<String, Object> status = new LinkedHashMap<>();
+        status.put("id", upload.getId());
+        status.put("size", upload.getSize());
+        status.put("chunkSize", MIRUploadStore.getInstance().getChunkSize());
+        status.put("offset", upload.getOffset());
+        status.put("missingChunks", upload.getMissingChunks());
+        upload.getChecksum().ifPresent(checksum -> status.put("sha256", checksum));
+        response.setContentType("application/json");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader("Cache-Control", "no-store");
+        GSON.toJson(status, response.getWriter());
+    }
+
+    private void handleDownloadRequest(MCRServletJob job) throws IOException {
+        final HttpServletRequest request = job.getRequest();
+        final HttpServletResponse response = job.getResponse();
+        final Optional<MIRDownloadStore.Download> optDownload = MIRDownloadStore.getInstance().get(
+            request.getParameter(PARAM_DOWNLOAD_FILE), request.getParameter(PARAM_DOWNLOAD_EXPIRES),
+            request.getParameter(PARAM_DOWNLOAD_SIGNATURE));
+        if (optDownload.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        final MIRDownloadStore.Download download = optDownload.get();
+        final String entityTag = '"' + download.id() + '"';
+        final long lastModified = download.lastModified().toEpochMilli();
+        response.setHeader("ETag", entityTag);
+        response.setDateHeader("Last-Modified", lastModified);
+        response.setHeader("Cache-Control", "private");
+        if (isNotModified(request, entityTag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType(download.contentType());
+        response.setHeader("Content-Disposition", "attachment; filename*=UTF-8''"
+            + MIRMailerWithFileServletHelper.encodeUriComponent(download.filename()).replace("'", "%27")
+                .replace("(", "%28").replace(")", "%29").replace("*", "%2A"));
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+            // let the container send the file with sendfile, the response body is written after the servlet returns
+            MIRByteRangeHelper.send(request, response, download.size(), entityTag, (offset, length) -> {
+                request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, download.file().toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START_ATTRIBUTE, offset);
+                request.setAttribute(SENDFILE_END_ATTRIBUTE, offset + length);
+            });
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(download.file(), StandardOpenOption.READ)) {
+            final WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            MIRByteRangeHelper.send(request, response, download.size(), entityTag, (offset, length) -> {
+                long position = offset;
+                final long end = offset + length;
+                while (position < end) {
+                    final long transferred = channel.transferTo(position, end - position, out);
+                    if (transferred <= 0) {
+                        throw new IOException("Unexpected end of file " + download.file());
+                    }
+                    position += transferred;
+                }
+            });
+        }
+    }
+
+    private static boolean isNotModified(HttpServletRequest request, String entityTag, long lastModified) {
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return "*".equals(ifNoneMatch.trim()) || Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim).map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+                .anyMatch(entityTag::equals);
+        }
+        final long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
     }
 
     private void handleCaptchaPlayRequest(MCRServletJob job) throws IOException {
         LOGGER.debug(() -> "Handling captcha play request...");
-        final String captchaText =
-            Optional.ofNullable(job.getRequest().getSession().getAttribute(CAPTCHA_SESSION_KEY)).map(Object::toString)
-                .orElseGet(MIRCaptchaHelper::generateCaptchaText);
-        final AudioCaptcha audioCaptcha = MIRCaptchaHelper.createAudioCaptcha(captchaText);
-        job.getResponse().setContentType("audio/wav");
-        try (OutputStream out = job.getResponse().getOutputStream();
-            AudioInputStream ais = audioCaptcha.getAudio().getAudioInputStream()) {
-            AudioSystem.write(ais, AudioFileFormat.Type.WAVE, out);
+        final HttpServletRequest request = job.getRequest();
+        final HttpServletResponse response = job.getResponse();
+        if (MIRCaptchaTokenService.isEnabled()) {
+            handleTokenCaptchaPlayRequest(request, response);
+            return;
+        }
+        final HttpSession session = request.getSession();
+        final String captchaText = Optional.ofNullable(session.getAttribute(CAPTCHA_SESSION_KEY))
+            .map(Object::toString).orElse(null);
+        final CaptchaAudio audio = Optional.ofNullable(session.getAttribute(CAPTCHA_AUDIO_SESSION_KEY))
+            .filter(CaptchaAudio.class::isInstance).map(CaptchaAudio.class::cast)
+            .filter(cached -> cached.text().equals(captchaText))
+            .orElseGet(() -> createCaptchaAudio(session, captchaText));
+        sendCaptchaAudio(request, response, audio.wav(), audio.entityTag());
+    }
+
+    private void handleTokenCaptchaPlayRequest(HttpServletRequest request, HttpServletResponse response)
+        throws IOException {
+        final MIRCaptchaTokenService tokenService = MIRCaptchaTokenService.getInstance();
+        final Optional<String> token = getCaptchaToken(request);
+        final long start = System.nanoTime();
+        final Optional<byte[]> wav = token.isEmpty() ? Optional.empty() : tokenService.getAudio(token.get());
+        MIRSubmissionTrace.record(Stage.CAPTCHA, start);
+        if (wav.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        sendCaptchaAudio(request, response, wav.get(), '"' + tokenService.getId(token.get()) + '"');
+    }
+
+    private static void sendCaptchaAudio(HttpServletRequest request, HttpServletResponse response, byte[] wav,
+        String entityTag) throws IOException {
+        response.setContentType("audio/wav");
+        response.setHeader("Cache-Control", "private, no-cache");
+        response.setHeader("ETag", entityTag);
+        if (entityTag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
         }
+        MIRByteRangeHelper.send(request, response, wav.length, entityTag,
+            (offset, length) -> response.getOutputStream().write(wav, (int) offset, (int) length));
     }
 
-    private void handleFormSubmitAction(MCRServletJob job, String action) throws IOException, ServletException {
-        LOGGER.debug("Handling form submit action '{}'", action);
+    private static CaptchaAudio createCaptchaAudio(HttpSession session, String captchaText) {
+        final String text = Optional.ofNullable(captchaText).orElseGet(MIRCaptchaHelper::generateCaptchaText);
+        final long start = System.nanoTime();
+        final byte[] wav;
+        try {
+            wav = MIRCaptchaHelper.encodeWav(MIRCaptchaHelper.createAudioCaptcha(text));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        MIRSubmissionTrace.record(Stage.CAPTCHA, start);
+        final CaptchaAudio audio = new CaptchaAudio(text, wav, '"' + UUID.randomUUID().toString() + '"');
+        if (captchaText != null) {
+            session.setAttribute(CAPTCHA_AUDIO_SESSION_KEY, audio);
+        }
+        return audio;
+    }
+
+    private void handleFormSubmitAction(MCRServletJob job, String actionName) throws IOException, ServletException {
+        LOGGER.debug("Handling form submit action '{}'", actionName);
         final HttpServletRequest request = job.getRequest();
         final HttpServletResponse response = job.getResponse();
+        final Optional<MIRActionRegistry.Action> optAction = MIRActionRegistry.getInstance().getAction(actionName);
+        if (optAction.isEmpty()) {
+            LOGGER.error("No form submission handler configured for action '{}'", actionName);
+            MIRSubmissionTrace.reject(Rejection.UNKNOWN_ACTION);
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        final MIRActionRegistry.Action action = optAction.get();
         request.setCharacterEncoding(CHAR_ENCODING);
         final FormData formData = FormData.ofRequest(request);
 
-        final boolean requiresCaptcha =
-            MCRConfiguration2.getBoolean(PROPERTY_PREFIX + action + "CaptchaRequired").orElse(false);
-
-        if (requiresCaptcha && !validateCaptcha(request, response, formData)) {
+        final String submissionKey =
+            formData.submissionId() == null ? null : actionName + ":id:" + formData.submissionId();
+        if (submissionKey != null && !claimSubmission(submissionKey, request, response)) {
             return;
         }
+        Outcome outcome = Outcome.FAILED;
+        try {
+            outcome = processSubmission(request, response, action, formData);
+        } finally {
+            if (submissionKey != null) {
+                finishSubmission(submissionKey, outcome);
+            }
+        }
+    }
+
+    /**
+     * Checks the captcha of a submission and handles it. A resent submission is recognised by the captcha it answered
+     * before the captcha is checked, as the captcha is used up by the first submission. Nothing else of the
+     * submission is read before the captcha is valid.
+     */
+    private Outcome processSubmission(HttpServletRequest request, HttpServletResponse response,
+        MIRActionRegistry.Action action, FormData formData) throws IOException, ServletException {
+        String captchaKey = null;
+        if (action.captchaRequired()) {
+            captchaKey = getCaptchaKey(request, action.name(), formData);
+            if (captchaKey != null && isKnownSubmission(captchaKey, request, response)) {
+                return Outcome.FAILED;
+            }
+            final long start = System.nanoTime();
+            final boolean validCaptcha = validateCaptcha(request, response, formData);
+            MIRSubmissionTrace.record(Stage.CAPTCHA, start);
+            if (!validCaptcha) {
+                return Outcome.FAILED;
+            }
+            if (captchaKey != null && !claimSubmission(captchaKey, request, response)) {
+                return Outcome.FAILED;
+            }
+        }
+        Outcome outcome = Outcome.FAILED;
+        try {
+            outcome = processVerifiedSubmission(request, response, action, formData);
+        } finally {
+            if (captchaKey != null) {
+                finishSubmission(captchaKey, outcome);
+            }
+        }
+        return outcome;
+    }
 
+    private Outcome processVerifiedSubmission(HttpServletRequest request, HttpServletResponse response,
+        MIRActionRegistry.Action action, FormData formData) throws IOException, ServletException {
         final String senderEmail = formData.senderEmail();
         if (senderEmail == null) {
             LOGGER.error(() -> "'mail' parameter is required");
+            MIRSubmissionTrace.reject(Rejection.MISSING_SENDER);
             response.sendRedirect(getDefaultRedirectUrl(request));
-            return;
+            return Outcome.FAILED;
         }
         if (!validateSender(senderEmail, request, response)) {
-            return;
+            return Outcome.FAILED;
         }
 
-        MIRFormSubmissionHandler handler;
+        final List<MIRInboundAttachment> attachments;
+        final long ingestStart = System.nanoTime();
         try {
-            handler = MCRConfiguration2.getSingleInstanceOf(MIRFormSubmissionHandler.class,
-                PROPERTY_PREFIX + action + ".FormSubmissionHandler.Class").orElseThrow();
-        } catch (Exception e) {
-            LOGGER.error("Failed to instantiate form handler for action '{}'", action, e);
+            attachments = formData.uploadIds().isEmpty() ? MIRAttachmentIngestor.ingest(request.getParts())
+                : Stream.concat(MIRAttachmentIngestor.ingest(request.getParts()).stream(),
+                    resolveUploads(action.name(), formData.uploadIds()).stream()).toList();
+            // the content of parts spooled by the container is read only now that captcha and sender are valid
+            MIRAttachmentIngestor.inspect(attachments);
+        } catch (MIRAttachmentIngestionException e) {
+            LOGGER.error("Invalid attachment for action '{}'", action.name(), e);
+            MIRSubmissionTrace.reject(Rejection.INVALID_ATTACHMENT);
             response.sendError(HttpServletResponse.SC_BAD_REQUEST);
-            return;
+            return Outcome.FAILED;
+        } finally {
+            MIRSubmissionTrace.record(Stage.INGEST, ingestStart);
         }
+        attachments.forEach(attachment -> MIRSubmissionTrace.recordAttachment(attachment.size()));
 
-        final List<MIRInboundAttachment> attachments =
-            Optional.ofNullable(request.getPart(PARAM_FILE)).stream().filter(p -> p.getSize() > 0)
-                .map(PartInboundAttachment::new).map(MIRInboundAttachment.class::cast).toList();
+        final String fingerprintKey = formData.submissionId() != null ? null
+            : MIRIdempotencyIndex.fingerprint(action.name(), formData.fields, attachments);
+        if (fingerprintKey != null && !claimSubmission(fingerprintKey, request, response)) {
+            return Outcome.FAILED;
+        }
+        Outcome outcome = Outcome.FAILED;
+        boolean invalid = false;
+        boolean failed = false;
+        MIRSubmissionJournal.Entry journalEntry = null;
         try {
-            handler.handle(new MIRFormSubmissionRequest(formData.fields, attachments));
-            final String successRedirectUrl =
-                Optional.ofNullable(request.getParameter("redirect")).filter(MCRFrontendUtil::isSafeRedirect)
-                    .orElse(getDefaultRedirectUrl(request));
-            response.sendRedirect(response.encodeRedirectURL(successRedirectUrl));
+            // invalid submissions are rejected before they are retained in the journal
+            action.handler().validate(new MIRFormSubmissionRequest(formData.fields, attachments));
+            if (MIRSubmissionJournal.isEnabled()) {
+                journalEntry = MIRSubmissionJournal.getInstance().append(action.name(), formData.fields, attachments);
+            }
+            outcome = Outcome.UNKNOWN;
+            final MIRFormSubmissionResult result = awaitHandler(action, new MIRFormSubmissionRequest(formData.fields,
+                journalEntry == null ? attachments : journalEntry.attachments()));
+            LOGGER.debug("Submission for action '{}' {}", action.name(), result);
+            outcome = Outcome.COMPLETED;
+        } catch (IOException e) {
+            LOGGER.error("Could not write submission for action '{}' to the journal", action.name(), e);
+            MIRSubmissionTrace.reject(Rejection.JOURNAL_ERROR);
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        } catch (MIRFormSubmissionValidationException e) {
+            LOGGER.warn("Invalid submission for action '{}': {}", action.name(), e.getMessage());
+            invalid = true;
+            outcome = Outcome.FAILED;
+            MIRSubmissionTrace.reject(Rejection.INVALID_SUBMISSION);
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
         } catch (MIRFormSubmissionHandlerException e) {
             LOGGER.error("Error while sending mail", e);
+            failed = true;
+            outcome = Outcome.FAILED;
+            MIRSubmissionTrace.reject(Rejection.HANDLER_ERROR);
             response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        } catch (TimeoutException e) {
+            LOGGER.error("Submission for action '{}' was cancelled after {}", action.name(), action.timeout());
+            failed = true;
+            MIRSubmissionTrace.reject(Rejection.TIMEOUT);
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        } catch (CancellationException e) {
+            LOGGER.error("Submission for action '{}' was cancelled", action.name());
+            MIRSubmissionTrace.reject(Rejection.TIMEOUT);
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        } finally {
+            if (journalEntry != null && (outcome == Outcome.COMPLETED || invalid)) {
+                journalEntry.acknowledge();
+            } else if (journalEntry != null && failed) {
+                journalEntry.fail();
+            }
+            if (fingerprintKey != null) {
+                finishSubmission(fingerprintKey, outcome);
+            }
+            if (!formData.uploadIds().isEmpty()) {
+                // the handler may have moved the staged files already, so the uploads cannot be reused
+                MIRUploadStore.getInstance().remove(formData.uploadIds());
+            }
+        }
+        if (outcome == Outcome.COMPLETED) {
+            redirectToSuccess(request, response);
         }
+        return outcome;
+    }
+
+    /**
+     * Waits for the handler of the action to finish the submission. The handler is cancelled if the timeout of the
+     * action elapses or the waiting thread is interrupted. Cancelling only interrupts the handler, e.g. a blocking
+     * mail transfer may go on, so this method then waits until the handler has stopped. If it finished anyway, its
+     * result is returned. Only then may the caller release the attachments.
+     *
+     * @throws TimeoutException if the handler was cancelled after the timeout of the action
+     * @throws CancellationException if the handler was cancelled because the waiting thread was interrupted
+     */
+    private static MIRFormSubmissionResult awaitHandler(MIRActionRegistry.Action action,
+        MIRFormSubmissionRequest formSubmissionRequest) throws TimeoutException {
+        final CompletableFuture<MIRFormSubmissionResult> result =
+            action.handler().handleAsync(formSubmissionRequest).toCompletableFuture();
+        try {
+            return action.timeout() == null ? result.get()
+                : result.get(action.timeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof MIRFormSubmissionHandlerException handlerException) {
+                throw handlerException;
+            }
+            throw new MIRFormSubmissionHandlerException("Failed to handle submission", e.getCause());
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            final MIRFormSubmissionResult lateResult = awaitEnd(result);
+            if (lateResult != null) {
+                LOGGER.warn("Submission for action '{}' finished after its timeout", action.name());
+                return lateResult;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            awaitEnd(result);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while handling submission");
+        }
+    }
+
+    /**
+     * Waits uninterruptibly until the given cancelled handler has stopped.
+     *
+     * @return the result if the handler finished anyway, otherwise null
+     */
+    private static MIRFormSubmissionResult awaitEnd(CompletableFuture<MIRFormSubmissionResult> result) {
+        return result.handle((value, e) -> value).join();
+    }
+
+    private static List<MIRInboundAttachment> resolveUploads(String action, List<String> uploadIds) {
+        if (!MIRUploadStore.isEnabled()) {
+            throw new MIRAttachmentIngestionException("Chunked uploads are not enabled");
+        }
+        return MIRUploadStore.getInstance().resolve(action, uploadIds);
+    }
+
+    /**
+     * Claims the idempotency key of a submission. Duplicates of a submission in flight or completed recently are
+     * acknowledged like a successful submission without processing them again, see
+     * {@link #rejectDuplicate(String, MIRIdempotencyIndex.Status, HttpServletRequest, HttpServletResponse)}.
+     */
+    private boolean claimSubmission(String key, HttpServletRequest request, HttpServletResponse response)
+        throws IOException {
+        final MIRIdempotencyIndex.Status status = MIRIdempotencyIndex.getInstance().begin(key);
+        if (status == MIRIdempotencyIndex.Status.NEW) {
+            return true;
+        }
+        rejectDuplicate(key, status, request, response);
+        return false;
+    }
+
+    /**
+     * Returns the idempotency key of the captcha answered by a submission: the token of the captcha in token mode,
+     * otherwise the session the captcha was issued for and the answer.
+     *
+     * @return the key or null if the submission has no captcha
+     */
+    private static String getCaptchaKey(HttpServletRequest request, String action, FormData formData) {
+        if (formData.captcha() == null) {
+            return null;
+        }
+        if (MIRCaptchaTokenService.isEnabled()) {
+            return getCaptchaToken(request).map(MIRCaptchaTokenService.getInstance()::getId)
+                .map(id -> MIRIdempotencyIndex.captchaKey(action, id, formData.captcha())).orElse(null);
+        }
+        return Optional.ofNullable(request.getRequestedSessionId())
+            .map(id -> MIRIdempotencyIndex.captchaKey(action, id, formData.captcha())).orElse(null);
+    }
+
+    /**
+     * Acknowledges a duplicate of a submission in flight or completed recently without claiming its key.
+     */
+    private boolean isKnownSubmission(String key, HttpServletRequest request, HttpServletResponse response)
+        throws IOException {
+        final Optional<MIRIdempotencyIndex.Status> status = MIRIdempotencyIndex.getInstance().getStatus(key);
+        if (status.isEmpty()) {
+            return false;
+        }
+        rejectDuplicate(key, status.get(), request, response);
+        return true;
+    }
+
+    /**
+     * Answers a duplicate submission without processing it. Duplicates of a submission whose handler was cancelled
+     * are answered with {@code 409 Conflict}, as the first submission may have been delivered.
+     */
+    private void rejectDuplicate(String key, MIRIdempotencyIndex.Status status, HttpServletRequest request,
+        HttpServletResponse response) throws IOException {
+        MIRSubmissionTrace.reject(Rejection.DUPLICATE);
+        if (status == MIRIdempotencyIndex.Status.UNKNOWN) {
+            LOGGER.warn("Rejecting duplicate of submission {} with unknown outcome", key);
+            response.sendError(HttpServletResponse.SC_CONFLICT);
+            return;
+        }
+        LOGGER.info("Ignoring duplicate submission {} ({})", key, status);
+        redirectToSuccess(request, response);
+    }
+
+    private static void finishSubmission(String key, Outcome outcome) {
+        switch (outcome) {
+            case COMPLETED -> MIRIdempotencyIndex.getInstance().complete(key);
+            case UNKNOWN -> MIRIdempotencyIndex.getInstance().markUnknown(key);
+            default -> MIRIdempotencyIndex.getInstance().abandon(key);
+        }
+    }
+
+    private void redirectToSuccess(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        final String successRedirectUrl =
+            Optional.ofNullable(request.getParameter("redirect")).filter(MCRFrontendUtil::isSafeRedirect)
+                .orElse(getDefaultRedirectUrl(request));
+        response.sendRedirect(response.encodeRedirectURL(successRedirectUrl));
     }
 
     private boolean validateSender(String email, HttpServletRequest request, HttpServletResponse response)
         throws IOException {
-        final String emailLowerCase = "@" + email.toLowerCase(Locale.ROOT);
-        if (DISALLOWED_MAIL_DOMAINS.stream().anyMatch(emailLowerCase::endsWith)) {
+        if (MIRMailDomainMatcher.getDisallowed().matches(email)) {
             LOGGER.error("Will not send e-mail, disallowed senderEmail domain: {}", email);
+            MIRSubmissionTrace.reject(Rejection.DISALLOWED_SENDER);
             response.sendRedirect(getDefaultRedirectUrl(request));
             return false;
         }
@@ -195,16 +868,22 @@ public class MIRMailerWithFileServlet extends MCRServlet {
         throws IOException {
         final String captcha = formData.captcha;
         if (captcha == null || !checkCaptcha(request, captcha)) {
-            clearCaptcha(request);
+            clearCaptcha(request, response);
             LOGGER.debug("Invalid captcha");
+            MIRSubmissionTrace.reject(Rejection.INVALID_CAPTCHA);
             redirectWithCaptchaError(request, response, formData);
             return false;
         }
-        clearCaptcha(request);
+        clearCaptcha(request, response);
         return true;
     }
 
     private boolean checkCaptcha(HttpServletRequest request, String captcha) {
+        if (MIRCaptchaTokenService.isEnabled()) {
+            return getCaptchaToken(request)
+                .map(token -> MIRCaptchaTokenService.getInstance().verify(token, captcha))
+                .orElse(false);
+        }
         return Optional.ofNullable(request.getSession().getAttribute(CAPTCHA_SESSION_KEY))
             .filter(String.class::isInstance)
             .map(String.class::cast)
@@ -216,9 +895,8 @@ public class MIRMailerWithFileServlet extends MCRServlet {
         FormData formData) throws IOException {
         final String referer = getSafeReferer(request);
         final String separator = referer.contains("?") ? "&" : "?";
-        final String url =
-            referer + separator + "error=captcha" + MIRMailerWithFileServletHelper.getUrlParams(formData.fields);
-        response.sendRedirect(url);
+        final String token = MIRFormStateStore.getInstance().put(formData.fields);
+        response.sendRedirect(referer + separator + "error=captcha&form=" + token);
     }
 
     private String getSafeReferer(HttpServletRequest request) {
@@ -226,49 +904,76 @@ public class MIRMailerWithFileServlet extends MCRServlet {
             .orElseGet(() -> getDefaultRedirectUrl(request));
     }
 
-    private void clearCaptcha(HttpServletRequest request) {
+    private void clearCaptcha(HttpServletRequest request, HttpServletResponse response) {
+        if (MIRCaptchaTokenService.isEnabled()) {
+            setCaptchaTokenCookie(request, response, "", 0);
+            return;
+        }
         request.getSession().removeAttribute(CAPTCHA_SESSION_KEY);
+        request.getSession().removeAttribute(CAPTCHA_AUDIO_SESSION_KEY);
+    }
+
+    private static Optional<String> getCaptchaToken(HttpServletRequest request) {
+        return Optional.ofNullable(request.getCookies()).stream().flatMap(Arrays::stream)
+            .filter(cookie -> CAPTCHA_TOKEN_COOKIE.equals(cookie.getName())).map(Cookie::getValue)
+            .filter(value -> !value.isEmpty()).findFirst();
+    }
+
+    private static void setCaptchaTokenCookie(HttpServletRequest request, HttpServletResponse response, String token,
+        int maxAge) {
+        final Cookie cookie = new Cookie(CAPTCHA_TOKEN_COOKIE, token);
+        cookie.setPath(request.getContextPath() + request.getServletPath());
+        cookie.setHttpOnly(true);
+        cookie.setSecure(request.isSecure());
+        cookie.setMaxAge(maxAge);
+        cookie.setAttribute("SameSite", "Lax");
+        response.addCookie(cookie);
     }
 
     private static String getDefaultRedirectUrl(HttpServletRequest request) {
         return MCRFrontendUtil.getBaseURL(request) + DEFAULT_REDIRECT_PATH;
     }
 
+    /**
+     * Encoded audio of a captcha, cached in the session next to the captcha text.
+     *
+     * @param text the captcha text
+     * @param wav the WAV encoded audio
+     * @param entityTag the entity tag of the audio
+     */
+    private record CaptchaAudio(String text, byte[] wav, String entityTag) implements Serializable {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Outcome of a submission, decides what happens to its idempotency keys.
+     */
+    private enum Outcome {
+        /** The submission was handled, duplicates are acknowledged. */
+        COMPLETED,
+        /** The submission was rejected or its handler failed, it may be resent. */
+        FAILED,
+        /** The handler was cancelled, the submission may have been delivered. */
+        UNKNOWN
+    }
+
     private record FormData(String action, String captcha, String senderName, String senderEmail,
-        Map<String, String> fields) {
+        String submissionId, List<String> uploadIds, Map<String, String> fields) {
 
         public static FormData ofRequest(HttpServletRequest request) {
-            final Map<String, String> data = request.getParameterMap().entrySet().stream()
-                .filter(e -> !SENSITIVE_PARAMS.contains(e.getKey()))
-                .collect(Collectors.toMap(
-                    Map.Entry::getKey,
-                    e -> e.getValue().length > 0 ? String.join(",", e.getValue()) : "",
-                    (v1, v2) -> v1,
-                    LinkedHashMap::new
-                ));
+            final Map<String, String> data =
+                MIRMailerWithFileServletHelper.collectFields(request.getParameterMap(), SENSITIVE_PARAMS);
             final String action = request.getParameter(PARAM_ACTION);
             final String captcha = request.getParameter(PARAM_CAPTCHA);
             final String name = request.getParameter(PARAM_SENDER_NAME);
             final String email = request.getParameter(PARAM_SENDER_EMAIL);
-            return new FormData(action, captcha, name, email, data);
-        }
-    }
-
-    private record PartInboundAttachment(Part file) implements MIRInboundAttachment {
-
-        @Override
-        public String filename() {
-            return file.getSubmittedFileName();
-        }
-
-        @Override
-        public long size() {
-            return file.getSize();
-        }
-
-        @Override
-        public InputStream openStream() throws IOException {
-            return file.getInputStream();
+            final String submissionId = Optional.ofNullable(request.getParameter(PARAM_SUBMISSION_ID))
+                .filter(id -> !id.isBlank() && id.length() <= MAX_SUBMISSION_ID_LENGTH).orElse(null);
+            final List<String> uploadIds = Optional.ofNullable(request.getParameterValues(PARAM_UPLOAD_ID))
+                .stream().flatMap(Arrays::stream).distinct().toList();
+            return new FormData(action, captcha, name, email, submissionId, uploadIds, data);
         }
     }
 }
@@ -20,9 +20,11 @@ package org.mycore.mir;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
-import java.net.URLEncoder;
+import java.net.URLDecoder;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import jakarta.servlet.http.HttpServletRequest;
 
@@ -31,6 +33,10 @@ import jakarta.servlet.http.HttpServletRequest;
  */
 public final class MIRMailerWithFileServletHelper {
 
+    private static final String UNRESERVED_MARKS = "-_.!~*'()";
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
     private MIRMailerWithFileServletHelper() {}
 
     /**
@@ -50,19 +56,101 @@ public final class MIRMailerWithFileServletHelper {
     }
 
     /**
-     * Encodes a string for use in a URI component according to RFC 3986.
+     * Encodes a string for use in a URI component according to RFC 3986, like {@code encodeURIComponent} in
+     * JavaScript. The string is encoded in a single pass and returned as is if nothing needs to be encoded.
      *
      * @param s the string to encode
      * @return the encoded string
      */
     public static String encodeUriComponent(String s) {
-        return URLEncoder.encode(s, UTF_8)
-            .replaceAll("\\+", "%20")
-            .replaceAll("\\%21", "!")
-            .replaceAll("\\%27", "'")
-            .replaceAll("\\%28", "(")
-            .replaceAll("\\%29", ")")
-            .replaceAll("\\%7E", "~");
+        final int length = s.length();
+        int i = 0;
+        while (i < length && isUnreserved(s.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            return s;
+        }
+        final StringBuilder sb = new StringBuilder(length + 16).append(s, 0, i);
+        while (i < length) {
+            final char c = s.charAt(i);
+            if (isUnreserved(c)) {
+                sb.append(c);
+                i++;
+                continue;
+            }
+            int codePoint = s.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (codePoint <= Character.MAX_VALUE && Character.isSurrogate((char) codePoint)) {
+                codePoint = '?';
+            }
+            if (codePoint < 0x80) {
+                appendEncoded(sb, codePoint);
+            } else if (codePoint < 0x800) {
+                appendEncoded(sb, 0xC0 | (codePoint >> 6));
+                appendEncoded(sb, 0x80 | (codePoint & 0x3F));
+            } else if (codePoint < 0x10000) {
+                appendEncoded(sb, 0xE0 | (codePoint >> 12));
+                appendEncoded(sb, 0x80 | ((codePoint >> 6) & 0x3F));
+                appendEncoded(sb, 0x80 | (codePoint & 0x3F));
+            } else {
+                appendEncoded(sb, 0xF0 | (codePoint >> 18));
+                appendEncoded(sb, 0x80 | ((codePoint >> 12) & 0x3F));
+                appendEncoded(sb, 0x80 | ((codePoint >> 6) & 0x3F));
+                appendEncoded(sb, 0x80 | (codePoint & 0x3F));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isUnreserved(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || UNRESERVED_MARKS.indexOf(c) >= 0;
+    }
+
+    private static void appendEncoded(StringBuilder sb, int b) {
+        sb.append('%').append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+    }
+
+    /**
+     * Collects the form fields from a request parameter map. Multiple values of a parameter are joined with commas.
+     *
+     * @param parameterMap the request parameter map
+     * @param excludedNames names of parameters that are not form fields
+     * @return the form fields in request order
+     */
+    public static Map<String, String> collectFields(Map<String, String[]> parameterMap, Set<String> excludedNames) {
+        final Map<String, String> fields = new LinkedHashMap<>();
+        parameterMap.forEach((name, values) -> {
+            if (!excludedNames.contains(name)) {
+                fields.put(name, values.length == 1 ? values[0] : String.join(",", values));
+            }
+        });
+        return fields;
+    }
+
+    /**
+     * Returns the first value of the given parameter in a query string without parsing the request body.
+     *
+     * @param queryString the query string, may be {@code null}
+     * @param name the parameter name
+     * @return the decoded parameter value or {@code null} if the parameter is missing or malformed
+     */
+    public static String getQueryParameter(String queryString, String name) {
+        if (queryString == null) {
+            return null;
+        }
+        for (String pair : queryString.split("&")) {
+            final int separator = pair.indexOf('=');
+            final String key = separator < 0 ? pair : pair.substring(0, separator);
+            if (key.equals(name)) {
+                try {
+                    return separator < 0 ? "" : URLDecoder.decode(pair.substring(separator + 1), UTF_8);
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
     }
 
     /**
@@ -0,0 +1,62 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Utility class for publishing plugin components as JMX MBeans.
+ */
+public final class MIRManagementHelper {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String DOMAIN = "org.mycore.mir";
+
+    private MIRManagementHelper() {}
+
+    /**
+     * Registers the given MBean with the platform MBean server, replacing a previously registered MBean with the
+     * same name. Registration failures are logged and otherwise ignored.
+     *
+     * @param mbean the MBean or MXBean to register
+     * @param type the MBean type, e.g. {@code MailDispatcher}
+     * @param name the name that distinguishes MBeans of the same type
+     */
+    public static void register(Object mbean, String type, String name) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName objectName =
+                new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(mbean, objectName);
+        } catch (JMException e) {
+            LOGGER.warn("Could not register MBean {}/{}", type, name, e);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Incremental parser for {@code multipart/form-data} bodies (RFC 7578).
+ * <p>
+ * The body is fed in arbitrary pieces as they arrive, e.g. from a non-blocking read. The content of each part is
+ * passed to the output stream provided by the {@link PartHandler}, so that parts are never held in memory as a whole.
+ */
+final class MIRMultipartParser {
+
+    private static final byte[] HEADER_END = "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final int MAX_HEADER_SIZE = 8 * 1024;
+
+    private final PartHandler handler;
+
+    private final byte[] delimiter;
+
+    private byte[] buffer;
+
+    private int length;
+
+    private State state = State.PREAMBLE;
+
+    private OutputStream partOut;
+
+    /**
+     * Creates a parser for the given boundary.
+     *
+     * @param boundary the boundary parameter of the content type
+     * @param handler the handler receiving the parts
+     */
+    MIRMultipartParser(String boundary, PartHandler handler) {
+        this.handler = handler;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.buffer = new byte[64 * 1024];
+        // the first boundary is not preceded by a line break, a virtual one lets it match the delimiter
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        length = 2;
+    }
+
+    /**
+     * Returns the boundary of a {@code multipart/form-data} content type.
+     *
+     * @param contentType the content type
+     * @return the boundary or {@code null} if the content type is not {@code multipart/form-data}
+     */
+    static String getBoundary(String contentType) {
+        if (contentType == null
+            || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data")) {
+            return null;
+        }
+        final String boundary = parseParameters(contentType).get("boundary");
+        return boundary == null || boundary.isEmpty() || boundary.length() > 70 ? null : boundary;
+    }
+
+    /**
+     * Parses the next piece of the body.
+     *
+     * @param data the data
+     * @param offset the offset of the piece in data
+     * @param count the length of the piece
+     * @throws IOException if the body is malformed or a part cannot be written
+     */
+    void feed(byte[] data, int offset, int count) throws IOException {
+        if (length + count > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + count));
+        }
+        System.arraycopy(data, offset, buffer, length, count);
+        length += count;
+        int position = 0;
+        boolean progress = true;
+        while (progress) {
+            final int consumed = switch (state) {
+                case PREAMBLE -> skipPreamble(position);
+                case DELIMITER -> readDelimiterEnd(position);
+                case HEADERS -> readHeaders(position);
+                case BODY -> readBody(position);
+                case END -> length - position;
+            };
+            position += consumed;
+            progress = consumed > 0 && position < length;
+        }
+        System.arraycopy(buffer, position, buffer, 0, length - position);
+        length -= position;
+    }
+
+    /**
+     * Completes parsing after the whole body was fed.
+     *
+     * @throws IOException if the body ended before the final boundary
+     */
+    void finish() throws IOException {
+        if (state != State.END) {
+            throw new IOException("Multipart body ended unexpectedly");
+        }
+    }
+
+    private int skipPreamble(int position) {
+        final int index = indexOf(delimiter, position);
+        if (index < 0) {
+            return Math.max(0, length - position - delimiter.length + 1);
+        }
+        state = State.DELIMITER;
+        return index - position + delimiter.length;
+    }
+
+    private int readDelimiterEnd(int position) throws IOException {
+        if (length - position < 2) {
+            return 0;
+        }
+        if (buffer[position] == '-' && buffer[position + 1] == '-') {
+            state = State.END;
+            return 2;
+        }
+        if (buffer[position] == '\r' && buffer[position + 1] == '\n') {
+            state = State.HEADERS;
+            return 2;
+        }
+        throw new IOException("Malformed multipart boundary");
+    }
+
+    private int readHeaders(int position) throws IOException {
+        final int index = indexOf(HEADER_END, position);
+        if (index < 0) {
+            if (length - position > MAX_HEADER_SIZE) {
+                throw new IOException("Multipart headers too large");
+            }
+            return 0;
+        }
+        final Map<String, String> headers = new LinkedHashMap<>();
+        final String block = new String(buffer, position, index - position, StandardCharsets.UTF_8);
+        for (String line : block.split("\r\n")) {
+            final int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+        final Map<String, String> disposition = parseParameters(headers.getOrDefault("content-disposition", ""));
+        final String name = disposition.get("name");
+        if (name == null) {
+            throw new IOException("Multipart part without name");
+        }
+        partOut = handler.startPart(name, disposition.get("filename"), headers.get("content-type"));
+        state = State.BODY;
+        return index - position + HEADER_END.length;
+    }
+
+    private int readBody(int position) throws IOException {
+        final int index = indexOf(delimiter, position);
+        if (index < 0) {
+            final int safe = Math.max(0, length - position - delimiter.length + 1);
+            partOut.write(buffer, position, safe);
+            return safe;
+        }
+        partOut.write(buffer, position, index - position);
+        partOut.close();
+        partOut = null;
+        handler.endPart();
+        state = State.DELIMITER;
+        return index - position + delimiter.length;
+    }
+
+    private int indexOf(byte[] pattern, int from) {
+        final int last = length - pattern.length;
+        outer:
+        for (int i = from; i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (buffer[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Parses the parameters of a header value like {@code form-data; name="file"; filename="a.pdf"}.
+     */
+    private static Map<String, String> parseParameters(String value) {
+        final Map<String, String> parameters = new LinkedHashMap<>();
+        int i = value.indexOf(';');
+        while (i >= 0 && i < value.length()) {
+            final int equals = value.indexOf('=', i);
+            if (equals < 0) {
+                break;
+            }
+            final String key = value.substring(i + 1, equals).trim().toLowerCase(Locale.ROOT);
+            final StringBuilder parameter = new StringBuilder();
+            int j = equals + 1;
+            while (j < value.length() && value.charAt(j) == ' ') {
+                j++;
+            }
+            if (j < value.length() && value.charAt(j) == '"') {
+                for (j++; j < value.length() && value.charAt(j) != '"'; j++) {
+                    if (value.charAt(j) == '\\' && j + 1 < value.length()) {
+                        j++;
+                    }
+                    parameter.append(value.charAt(j));
+                }
+                j = value.indexOf(';', j);
+            } else {
+                final int end = value.indexOf(';', j);
+                parameter.append(value, j, end < 0 ? value.length() : end);
+                j = end;
+            }
+            parameters.putIfAbsent(key, parameter.toString().trim());
+            i = j;
+        }
+        return parameters;
+    }
+
+    private enum State {
+        PREAMBLE, DELIMITER, HEADERS, BODY, END
+    }
+
+    /**
+     * Receives the parts of a multipart body.
+     */
+    interface PartHandler {
+
+        /**
+         * Starts a new part.
+         *
+         * @param name the field name
+         * @param filename the file name of a file part, {@code null} for other fields
+         * @param contentType the content type of the part, may be {@code null}
+         * @return the stream receiving the content of the part, closed at the end of the part
+         * @throws IOException if the part is rejected or cannot be created
+         */
+        OutputStream startPart(String name, String filename, String contentType) throws IOException;
+
+        /**
+         * Ends the current part.
+         *
+         * @throws IOException if the part cannot be completed
+         */
+        void endPart() throws IOException;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import jakarta.servlet.http.Part;
+
+import org.mycore.mir.handler.MIRInboundAttachment;
+
+/**
+ * Implementation of {@link MIRInboundAttachment} backed by a multipart request {@link Part}.
+ * <p>
+ * Parts spooled by the container are inspected lazily: their content is read once when the checksum or the detected
+ * content type is first requested, e.g. by the validation of an accepted submission.
+ */
+final class MIRPartInboundAttachment implements MIRInboundAttachment {
+
+    private final Part file;
+
+    private volatile MIRAttachmentInspection inspection;
+
+    /**
+     * Constructs an attachment for the given part.
+     *
+     * @param file the part
+     * @param inspection the result of inspecting the content of the part, or null to inspect it when needed
+     */
+    MIRPartInboundAttachment(Part file, MIRAttachmentInspection inspection) {
+        this.file = file;
+        this.inspection = inspection;
+    }
+
+    /**
+     * Returns the result of inspecting the content of the part, reading it on the first call.
+     *
+     * @return the inspection result
+     * @throws MIRAttachmentIngestionException if the part cannot be read
+     */
+    MIRAttachmentInspection getInspection() {
+        MIRAttachmentInspection result = inspection;
+        if (result == null) {
+            synchronized (this) {
+                result = inspection;
+                if (result == null) {
+                    try (InputStream in = file.getInputStream()) {
+                        result = MIRAttachmentInspector.inspect(in);
+                    } catch (IOException e) {
+                        throw new MIRAttachmentIngestionException("Failed to read attachment " + filename(), e);
+                    }
+                    inspection = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the content of the part was inspected already.
+     *
+     * @return true if the inspection result is available without reading the part
+     */
+    boolean isInspected() {
+        return inspection != null;
+    }
+
+    @Override
+    public String filename() {
+        return file.getSubmittedFileName();
+    }
+
+    @Override
+    public long size() {
+        final MIRAttachmentInspection result = inspection;
+        return result == null ? file.getSize() : result.size();
+    }
+
+    @Override
+    public String contentType() {
+        return Optional.ofNullable(file.getContentType()).orElseGet(MIRInboundAttachment.super::contentType);
+    }
+
+    @Override
+    public Optional<String> checksum() {
+        return Optional.of(getInspection().sha256());
+    }
+
+    @Override
+    public Optional<String> detectedContentType() {
+        return getInspection().detectedContentType();
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        return file.getInputStream();
+    }
+
+    @Override
+    public void transferTo(Path target) throws IOException {
+        // containers usually rename the spooled file instead of copying it
+        file.write(target.toAbsolutePath().toString());
+    }
+}
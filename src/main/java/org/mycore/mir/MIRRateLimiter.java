@@ -0,0 +1,264 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.common.config.MCRConfiguration2;
+import org.mycore.common.config.MCRConfigurationException;
+
+/**
+ * In-memory token bucket rate limiter for the actions of {@link MIRMailerWithFileServlet}.
+ * <p>
+ * Every client address and every requested session has one bucket per action. A bucket is stored as a single
+ * theoretical arrival time, so it is updated with a compare-and-set and never locked. Buckets that are full again
+ * carry no information and are evicted periodically. If the configured maximum number of buckets is reached
+ * nonetheless, the least recently used buckets are evicted, so that clients filling the table with random session ids
+ * or addresses cannot lock out other clients.
+ */
+public final class MIRRateLimiter implements MIRRateLimiterMXBean {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String CONFIG_PREFIX = "MIR.MailerWithFileServlet.RateLimit.";
+
+    private static final String CAPACITY = "Capacity";
+
+    private static final String RATE = "RatePerMinute";
+
+    private static final String DEFAULT_GROUP = "*";
+
+    private static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+    private static final long FORCED_SWEEP_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final Limit defaultLimit;
+
+    private final Map<String, Limit> actionLimits;
+
+    private final int maxBuckets;
+
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    private final Object evictionLock = new Object();
+
+    private final LongAdder acceptedCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    private final LongAdder evictedCount = new LongAdder();
+
+    private MIRRateLimiter(Limit defaultLimit, Map<String, Limit> actionLimits, int maxBuckets) {
+        this.defaultLimit = defaultLimit;
+        this.actionLimits = Map.copyOf(actionLimits);
+        this.maxBuckets = maxBuckets;
+    }
+
+    /**
+     * Returns the configured rate limiter.
+     *
+     * @return the rate limiter
+     */
+    public static MIRRateLimiter getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Takes a token from the buckets of the given client address and session for the given action.
+     *
+     * @param action the requested action, may be {@code null}
+     * @param clientAddress the client address
+     * @param sessionId the requested session id, may be {@code null}
+     * @return {@code true} if the request is allowed
+     */
+    public boolean tryAcquire(String action, String clientAddress, String sessionId) {
+        final Limit limit = getLimit(action);
+        if (limit.capacity() <= 0) {
+            return true;
+        }
+        final String group = actionLimits.containsKey(action) ? action : DEFAULT_GROUP;
+        final long now = System.nanoTime();
+        sweep(now, SWEEP_INTERVAL);
+        boolean allowed = tryAcquire(group + " a:" + clientAddress, limit, now);
+        if (allowed && sessionId != null) {
+            allowed = tryAcquire(group + " s:" + sessionId, limit, now);
+        }
+        (allowed ? acceptedCount : rejectedCount).increment();
+        return allowed;
+    }
+
+    /**
+     * Returns whether a limit is configured for the given action itself, instead of the default limit.
+     *
+     * @param action the action
+     * @return {@code true} if the action has its own limit
+     */
+    public boolean hasActionLimit(String action) {
+        return action != null && actionLimits.containsKey(action);
+    }
+
+    /**
+     * Returns the number of seconds a client should wait before retrying a rejected request.
+     *
+     * @param action the requested action, may be {@code null}
+     * @return the delay in seconds
+     */
+    public long getRetryAfter(String action) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(getLimit(action).interval()));
+    }
+
+    private Limit getLimit(String action) {
+        return action == null ? defaultLimit : actionLimits.getOrDefault(action, defaultLimit);
+    }
+
+    private boolean tryAcquire(String key, Limit limit, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxBuckets) {
+                sweep(now, FORCED_SWEEP_INTERVAL);
+                if (buckets.size() >= maxBuckets) {
+                    evict(now);
+                }
+            }
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        while (true) {
+            final long arrival = bucket.get();
+            final long start = arrival - now > 0 ? arrival : now;
+            if (start - now > limit.burstTolerance()) {
+                return false;
+            }
+            if (bucket.compareAndSet(arrival, start + limit.interval())) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes all full buckets, if the last sweep is at least the given interval ago.
+     */
+    private void sweep(long now, long minInterval) {
+        final long last = lastSweep.get();
+        if (now - last >= minInterval && lastSweep.compareAndSet(last, now)) {
+            buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+        }
+    }
+
+    /**
+     * Removes the least recently used buckets, i.e. the buckets that will be full again first. A sixteenth of the
+     * buckets is removed at once, so that the table is not sorted for every new client.
+     */
+    private void evict(long now) {
+        synchronized (evictionLock) {
+            final int excess = buckets.size() - (maxBuckets - Math.max(1, maxBuckets / 16));
+            if (excess <= 0) {
+                return;
+            }
+            LOGGER.warn("Rate limiter reached {} buckets, evicting the {} least recently used", maxBuckets, excess);
+            buckets.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue().get() - now))
+                .sorted(Map.Entry.comparingByValue())
+                .limit(excess)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(buckets::remove);
+            evictedCount.add(excess);
+        }
+    }
+
+    @Override
+    public int getBucketCount() {
+        return buckets.size();
+    }
+
+    @Override
+    public int getMaxBuckets() {
+        return maxBuckets;
+    }
+
+    @Override
+    public long getAcceptedCount() {
+        return acceptedCount.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    @Override
+    public long getEvictedCount() {
+        return evictedCount.sum();
+    }
+
+    /**
+     * Limit of a bucket.
+     *
+     * @param capacity the maximum number of requests in a burst, 0 disables the limit
+     * @param interval the time in nanoseconds to refill one token
+     */
+    private record Limit(int capacity, long interval) {
+
+        private long burstTolerance() {
+            return (capacity - 1) * interval;
+        }
+    }
+
+    private static final class InstanceHolder {
+
+        private static final MIRRateLimiter INSTANCE = createInstance();
+
+        private static MIRRateLimiter createInstance() {
+            final Limit defaultLimit = createLimit("", new Limit(20, TimeUnit.SECONDS.toNanos(3)));
+            final Map<String, Limit> actionLimits = MCRConfiguration2.getPropertiesMap().keySet().stream()
+                .filter(key -> key.startsWith(CONFIG_PREFIX))
+                .map(key -> key.substring(CONFIG_PREFIX.length()))
+                .filter(key -> key.endsWith('.' + CAPACITY) || key.endsWith('.' + RATE))
+                .map(key -> key.substring(0, key.lastIndexOf('.')))
+                .distinct()
+                .collect(Collectors.toMap(action -> action, action -> createLimit(action + '.', defaultLimit)));
+            final int maxBuckets = MCRConfiguration2.getInt(CONFIG_PREFIX + "MaxBuckets").orElse(100_000);
+            final MIRRateLimiter rateLimiter = new MIRRateLimiter(defaultLimit, actionLimits, maxBuckets);
+            MIRManagementHelper.register(rateLimiter, "RateLimiter", "default");
+            return rateLimiter;
+        }
+
+        private static Limit createLimit(String prefix, Limit defaults) {
+            final int capacity =
+                MCRConfiguration2.getInt(CONFIG_PREFIX + prefix + CAPACITY).orElse(defaults.capacity());
+            final long interval = MCRConfiguration2.getInt(CONFIG_PREFIX + prefix + RATE)
+                .map(rate -> {
+                    if (rate <= 0) {
+                        throw new MCRConfigurationException(CONFIG_PREFIX + prefix + RATE + " must be positive");
+                    }
+                    return TimeUnit.MINUTES.toNanos(1) / rate;
+                }).orElse(defaults.interval());
+            return new Limit(capacity, interval);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+/**
+ * Management interface of {@link MIRRateLimiter}.
+ */
+public interface MIRRateLimiterMXBean {
+
+    /**
+     * Returns the number of buckets currently tracked.
+     *
+     * @return the bucket count
+     */
+    int getBucketCount();
+
+    /**
+     * Returns the maximum number of buckets tracked at once.
+     *
+     * @return the maximum bucket count
+     */
+    int getMaxBuckets();
+
+    /**
+     * Returns the number of requests allowed by the rate limiter.
+     *
+     * @return the accepted count
+     */
+    long getAcceptedCount();
+
+    /**
+     * Returns the number of requests rejected by the rate limiter.
+     *
+     * @return the rejected count
+     */
+    long getRejectedCount();
+
+    /**
+     * Returns the number of buckets evicted because the maximum bucket count was reached.
+     *
+     * @return the evicted count
+     */
+    long getEvictedCount();
+}
@@ -0,0 +1,62 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import org.mycore.mir.handler.MIRInboundAttachment;
+
+/**
+ * Implementation of {@link MIRInboundAttachment} backed by a staged file, e.g. a finished upload of the
+ * {@link MIRUploadStore}.
+ *
+ * @param file the staged file
+ * @param filename the file name
+ * @param contentType the MIME type
+ * @param size the size in bytes
+ * @param sha256 the hex encoded SHA-256 checksum
+ * @param detectedType the content type detected from the content, null if unknown
+ */
+record MIRStagedInboundAttachment(Path file, String filename, String contentType, long size, String sha256,
+    String detectedType) implements MIRInboundAttachment {
+
+    @Override
+    public Optional<String> checksum() {
+        return Optional.ofNullable(sha256);
+    }
+
+    @Override
+    public Optional<String> detectedContentType() {
+        return Optional.ofNullable(detectedType);
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        return Files.newInputStream(file);
+    }
+
+    @Override
+    public void transferTo(Path target) throws IOException {
+        Files.move(file, target);
+    }
+}
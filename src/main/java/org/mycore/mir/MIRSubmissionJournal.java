@@ -0,0 +1,777 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.common.MCRException;
+import org.mycore.common.config.MCRConfiguration2;
+import org.mycore.common.config.MCRConfigurationException;
+import org.mycore.common.events.MCRShutdownHandler;
+import org.mycore.mir.handler.MIRFormSubmissionRequest;
+import org.mycore.mir.handler.MIRFormSubmissionValidationException;
+import org.mycore.mir.handler.MIRInboundAttachment;
+
+/**
+ * Append-only write-ahead journal of accepted form submissions.
+ * <p>
+ * Before a submission is passed to its handler, its fields are appended to the journal and its attachments are
+ * retained in the journal directory. The submission is acknowledged once the handler has finished successfully.
+ * Submissions whose handler fails, e.g. because the mail relay is unavailable, are moved to the {@code failed}
+ * subdirectory, so they can be resent manually. On startup, every submission that was journaled but not
+ * acknowledged, e.g. because the JVM stopped while the mail was sent, is replayed through the handler of its action.
+ * Replayed submissions that fail again are moved to the {@code failed} subdirectory as well. Submissions are
+ * therefore handled at least once. Submissions rejected as invalid by their handler are acknowledged and deleted,
+ * as resending them cannot succeed. Failed submissions are kept for a limited time and up to a limited total size,
+ * the oldest are deleted first.
+ * <p>
+ * Records are written by a single committer thread. All records appended while the previous batch was synced to
+ * disk are written and synced together, so concurrent submissions share one {@code fsync}. Each record carries a
+ * checksum, so a record torn by a crash is detected and cut off on recovery. Once acknowledged records make up most
+ * of the journal, it is compacted by rewriting the pending records to a new file.
+ */
+public final class MIRSubmissionJournal implements MIRSubmissionJournalMXBean {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String CONFIG_PREFIX = "MIR.MailerWithFileServlet.Journal.";
+
+    private static final String JOURNAL_FILE = "journal.log";
+    private static final String COMPACTION_FILE = "journal.log.compact";
+    private static final String ATTACHMENTS_DIR = "attachments";
+    private static final String FAILED_DIR = "failed";
+    private static final String SUBMISSION_FILE = "submission.properties";
+
+    private static final byte RECORD_ENTRY = 1;
+    private static final byte RECORD_ACK = 2;
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private final Path path;
+    private final long compactionThreshold;
+    private final int maxBatchSize;
+    private final Duration failedTimeToLive;
+    private final long maxFailedSize;
+
+    private final BlockingQueue<Append> appends = new LinkedBlockingQueue<>();
+    private final Map<String, byte[]> pending = new ConcurrentHashMap<>();
+    private final Map<String, Entry> recovered = new LinkedHashMap<>();
+
+    private FileChannel channel;
+    private long pendingBytes;
+    private volatile boolean closed;
+
+    private final AtomicLong journalSize = new AtomicLong();
+    private final LongAdder recordCount = new LongAdder();
+    private final LongAdder commitCount = new LongAdder();
+    private final LongAdder commitNanos = new LongAdder();
+    private final LongAdder compactionCount = new LongAdder();
+    private final LongAdder replayedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+
+    private MIRSubmissionJournal(Path path, long compactionThreshold, int maxBatchSize, Duration failedTimeToLive,
+        long maxFailedSize) {
+        this.path = path;
+        this.compactionThreshold = compactionThreshold;
+        this.maxBatchSize = maxBatchSize;
+        this.failedTimeToLive = failedTimeToLive;
+        this.maxFailedSize = maxFailedSize;
+    }
+
+    /**
+     * Returns whether the journal is enabled.
+     *
+     * @return true if {@code MIR.MailerWithFileServlet.Journal.Path} is configured
+     */
+    public static boolean isEnabled() {
+        return MCRConfiguration2.getString(CONFIG_PREFIX + "Path").isPresent();
+    }
+
+    /**
+     * Returns the configured journal.
+     *
+     * @return the journal
+     */
+    public static MIRSubmissionJournal getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Retains the attachments of a submission and appends the submission to the journal. Returns once the record
+     * is synced to disk.
+     *
+     * @param action the action name
+     * @param fields the form fields
+     * @param attachments the attachments, they must not be used afterwards
+     * @return the journal entry holding the retained attachments
+     * @throws IOException if the attachments cannot be retained or the record cannot be written
+     */
+    public Entry append(String action, Map<String, String> fields, List<MIRInboundAttachment> attachments)
+        throws IOException {
+        final String id = UUID.randomUUID().toString();
+        final Path directory = path.resolve(ATTACHMENTS_DIR).resolve(id);
+        final List<MIRInboundAttachment> retained = new ArrayList<>();
+        try {
+            Files.createDirectories(directory);
+            for (MIRInboundAttachment attachment : attachments) {
+                final Path file = directory.resolve(Integer.toString(retained.size()));
+                attachment.transferTo(file);
+                retained.add(new MIRStagedInboundAttachment(file, attachment.filename(), attachment.contentType(),
+                    attachment.size(), attachment.checksum().orElse(null),
+                    attachment.detectedContentType().orElse(null)));
+            }
+            final Entry entry = new Entry(id, action, fields, retained);
+            await(submit(id, RECORD_ENTRY, encodeEntry(entry)));
+            return entry;
+        } catch (IOException e) {
+            deleteRecursively(directory);
+            throw e;
+        }
+    }
+
+    /**
+     * Replays the submissions that were journaled but not acknowledged before the last shutdown. The submissions
+     * are handled one after another on a background thread.
+     */
+    public void replay() {
+        final List<Entry> entries;
+        synchronized (recovered) {
+            entries = List.copyOf(recovered.values());
+            recovered.clear();
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        LOGGER.info("Replaying {} journaled submissions", entries.size());
+        final Thread thread = new Thread(() -> entries.forEach(this::replay), "MIRSubmissionJournal-Replay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void replay(Entry entry) {
+        replayedCount.increment();
+        try {
+            final MIRActionRegistry.Action action = MIRActionRegistry.getInstance().getAction(entry.action())
+                .orElseThrow(() -> new MCRException("No form submission handler configured"));
+            action.handler().handleAsync(new MIRFormSubmissionRequest(entry.fields(), entry.attachments()))
+                .toCompletableFuture().get();
+            LOGGER.info("Replayed journaled submission {} for action '{}'", entry.id(), entry.action());
+            entry.acknowledge();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof MIRFormSubmissionValidationException) {
+                LOGGER.warn("Discarding invalid journaled submission {} for action '{}': {}", entry.id(),
+                    entry.action(), e.getCause().getMessage());
+                entry.acknowledge();
+                return;
+            }
+            LOGGER.error("Replaying journaled submission {} for action '{}' failed", entry.id(), entry.action(), e);
+            entry.fail();
+        } catch (MCRException e) {
+            LOGGER.error("Replaying journaled submission {} for action '{}' failed", entry.id(), entry.action(), e);
+            entry.fail();
+        }
+    }
+
+    private CompletableFuture<Void> submit(String id, byte type, byte[] payload) {
+        final Append append = new Append(id, type, payload, new CompletableFuture<>());
+        appends.add(append);
+        if (closed && appends.remove(append)) {
+            append.future().completeExceptionally(new IOException("Journal is closed"));
+        }
+        return append.future();
+    }
+
+    private static void await(CompletableFuture<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the journal", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ioException ? ioException
+                : new IOException("Failed to write journal", e.getCause());
+        }
+    }
+
+    private void commitLoop() {
+        final List<Append> batch = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(appends.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            appends.drainTo(batch, maxBatchSize - 1);
+            commit(batch);
+            batch.clear();
+        }
+        closed = true;
+        appends.drainTo(batch);
+        batch.forEach(append -> append.future().completeExceptionally(new IOException("Journal is closed")));
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close journal", e);
+        }
+    }
+
+    /**
+     * Writes and syncs the given records in one go and completes their futures.
+     */
+    private void commit(List<Append> batch) {
+        final long start = System.nanoTime();
+        long position = -1;
+        try {
+            position = channel.position();
+            final ByteBuffer[] buffers = batch.stream().map(append -> ByteBuffer.wrap(frame(append.payload())))
+                .toArray(ByteBuffer[]::new);
+            long remaining = 0;
+            for (ByteBuffer buffer : buffers) {
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            LOGGER.error("Failed to write {} journal records", batch.size(), e);
+            truncate(position);
+            batch.forEach(append -> append.future().completeExceptionally(e));
+            return;
+        }
+        for (Append append : batch) {
+            if (append.type() == RECORD_ENTRY) {
+                pending.put(append.id(), append.payload());
+                pendingBytes += HEADER_SIZE + append.payload().length;
+            } else {
+                final byte[] payload = pending.remove(append.id());
+                if (payload != null) {
+                    pendingBytes -= HEADER_SIZE + payload.length;
+                }
+            }
+        }
+        recordCount.add(batch.size());
+        commitCount.increment();
+        commitNanos.add(System.nanoTime() - start);
+        journalSize.set(position + batch.stream().mapToLong(append -> HEADER_SIZE + append.payload().length).sum());
+        batch.forEach(append -> append.future().complete(null));
+        if (journalSize.get() >= compactionThreshold && pendingBytes * 2 < journalSize.get()) {
+            compact();
+        }
+    }
+
+    private void truncate(long position) {
+        if (position < 0) {
+            return;
+        }
+        try {
+            channel.truncate(position);
+            channel.position(position);
+        } catch (IOException e) {
+            LOGGER.error("Failed to truncate journal to {} bytes", position, e);
+        }
+    }
+
+    /**
+     * Rewrites the pending records to a new journal file that atomically replaces the current one.
+     */
+    private void compact() {
+        final Path journalFile = path.resolve(JOURNAL_FILE);
+        final Path compactionFile = path.resolve(COMPACTION_FILE);
+        try {
+            try (FileChannel target = FileChannel.open(compactionFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (byte[] payload : pending.values()) {
+                    final ByteBuffer buffer = ByteBuffer.wrap(frame(payload));
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+                }
+                target.force(true);
+            }
+            Files.move(compactionFile, journalFile, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory();
+            channel.close();
+            channel = openJournal(journalFile);
+            LOGGER.debug("Compacted journal from {} to {} bytes", journalSize.get(), channel.size());
+            journalSize.set(channel.size());
+            compactionCount.increment();
+        } catch (IOException e) {
+            LOGGER.error("Failed to compact journal", e);
+            try {
+                if (!channel.isOpen()) {
+                    channel = openJournal(journalFile);
+                }
+            } catch (IOException reopenException) {
+                LOGGER.error("Failed to reopen journal", reopenException);
+            }
+        }
+    }
+
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(path, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // not supported on every platform, the rename is durable on the next sync of the file system then
+            LOGGER.debug("Could not sync journal directory {}", path, e);
+        }
+    }
+
+    private static FileChannel openJournal(Path journalFile) throws IOException {
+        final FileChannel channel =
+            FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    private static byte[] frame(byte[] payload) {
+        final CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return ByteBuffer.allocate(HEADER_SIZE + payload.length).putInt(payload.length).putInt((int) crc.getValue())
+            .put(payload).array();
+    }
+
+    private static byte[] encodeEntry(Entry entry) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(RECORD_ENTRY);
+            out.writeUTF(entry.id());
+            out.writeUTF(entry.action());
+            out.writeInt(entry.fields().size());
+            for (Map.Entry<String, String> field : entry.fields().entrySet()) {
+                writeString(out, field.getKey());
+                writeString(out, field.getValue());
+            }
+            out.writeInt(entry.attachments().size());
+            for (MIRInboundAttachment attachment : entry.attachments()) {
+                writeString(out, attachment.filename());
+                writeString(out, attachment.contentType());
+                out.writeLong(attachment.size());
+                writeString(out, attachment.checksum().orElse(null));
+                writeString(out, attachment.detectedContentType().orElse(null));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeAck(String id) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(RECORD_ACK);
+            out.writeUTF(id);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Entry decodeEntry(DataInputStream in) throws IOException {
+        final String id = in.readUTF();
+        final String action = in.readUTF();
+        final int fieldCount = in.readInt();
+        final Map<String, String> fields = new LinkedHashMap<>();
+        for (int i = 0; i < fieldCount; i++) {
+            fields.put(readString(in), readString(in));
+        }
+        final int attachmentCount = in.readInt();
+        final Path directory = path.resolve(ATTACHMENTS_DIR).resolve(id);
+        final List<MIRInboundAttachment> attachments = new ArrayList<>();
+        for (int i = 0; i < attachmentCount; i++) {
+            attachments.add(new MIRStagedInboundAttachment(directory.resolve(Integer.toString(i)), readString(in),
+                readString(in), in.readLong(), readString(in), readString(in)));
+        }
+        return new Entry(id, action, fields, attachments);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        return length < 0 ? null : new String(in.readNBytes(length), UTF_8);
+    }
+
+    /**
+     * Reads the journal, cuts off a torn tail and collects the pending submissions for {@link #replay()}.
+     */
+    private void recover() throws IOException {
+        Files.createDirectories(path.resolve(ATTACHMENTS_DIR));
+        Files.createDirectories(path.resolve(FAILED_DIR));
+        Files.deleteIfExists(path.resolve(COMPACTION_FILE));
+        final Path journalFile = path.resolve(JOURNAL_FILE);
+        long validLength = 0;
+        if (Files.exists(journalFile)) {
+            try (InputStream fileIn = Files.newInputStream(journalFile);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn))) {
+                byte[] payload;
+                while ((payload = readRecord(in)) != null) {
+                    apply(payload);
+                    validLength += HEADER_SIZE + payload.length;
+                }
+            }
+        }
+        channel = openJournal(journalFile);
+        if (channel.size() > validLength) {
+            LOGGER.warn("Cutting off {} bytes of a torn record at the end of the journal",
+                channel.size() - validLength);
+            channel.truncate(validLength);
+            channel.position(validLength);
+            channel.force(false);
+        }
+        journalSize.set(validLength);
+        deleteOrphanedAttachments();
+        pruneFailed();
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return the payload or null at the end of the journal or at a torn record
+     */
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        try {
+            final int length = in.readInt();
+            final int checksum = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_SIZE) {
+                return null;
+            }
+            final byte[] payload = in.readNBytes(length);
+            final CRC32C crc = new CRC32C();
+            crc.update(payload);
+            return payload.length == length && (int) crc.getValue() == checksum ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private void apply(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            final byte type = in.readByte();
+            if (type == RECORD_ENTRY) {
+                final Entry entry = decodeEntry(in);
+                pending.put(entry.id(), payload);
+                pendingBytes += HEADER_SIZE + payload.length;
+                recovered.put(entry.id(), entry);
+            } else if (type == RECORD_ACK) {
+                final String id = in.readUTF();
+                final byte[] entryPayload = pending.remove(id);
+                if (entryPayload != null) {
+                    pendingBytes -= HEADER_SIZE + entryPayload.length;
+                }
+                recovered.remove(id);
+            } else {
+                throw new IOException("Unknown journal record type " + type);
+            }
+        }
+    }
+
+    private void deleteOrphanedAttachments() throws IOException {
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(path.resolve(ATTACHMENTS_DIR))) {
+            for (Path directory : directories) {
+                if (!pending.containsKey(directory.getFileName().toString())) {
+                    deleteRecursively(directory);
+                }
+            }
+        }
+    }
+
+    private void moveToFailed(Entry entry) {
+        LOGGER.warn("Moving journaled submission {} for action '{}' to {}", entry.id(), entry.action(), FAILED_DIR);
+        final Path target = path.resolve(FAILED_DIR).resolve(entry.id());
+        try {
+            Files.move(path.resolve(ATTACHMENTS_DIR).resolve(entry.id()), target, StandardCopyOption.ATOMIC_MOVE);
+            final Properties properties = new Properties();
+            properties.setProperty("action", entry.action());
+            entry.fields().forEach((name, value) -> properties.setProperty("field." + name, value));
+            for (int i = 0; i < entry.attachments().size(); i++) {
+                properties.setProperty("attachment." + i, entry.attachments().get(i).filename());
+            }
+            try (OutputStream out = Files.newOutputStream(target.resolve(SUBMISSION_FILE))) {
+                properties.store(out, null);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Could not move journaled submission {} to {}", entry.id(), FAILED_DIR, e);
+        }
+        pruneFailed();
+    }
+
+    /**
+     * Deletes failed submissions older than the configured time to live and the oldest failed submissions
+     * exceeding the configured total size.
+     */
+    private synchronized void pruneFailed() {
+        final List<FailedSubmission> failed = new ArrayList<>();
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(path.resolve(FAILED_DIR))) {
+            for (Path directory : directories) {
+                failed.add(new FailedSubmission(directory, Files.getLastModifiedTime(directory), size(directory)));
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not list failed submissions in {}", path.resolve(FAILED_DIR), e);
+            return;
+        }
+        failed.sort(Comparator.comparing(FailedSubmission::modified).reversed());
+        final Instant expiry = Instant.now().minus(failedTimeToLive);
+        long totalSize = 0;
+        for (FailedSubmission submission : failed) {
+            totalSize += submission.size();
+            if (totalSize > maxFailedSize || submission.modified().toInstant().isBefore(expiry)) {
+                LOGGER.info("Deleting failed submission {}", submission.directory().getFileName());
+                deleteRecursively(submission.directory());
+            }
+        }
+    }
+
+    private static long size(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            long size = 0;
+            for (Path file : (Iterable<Path>) paths::iterator) {
+                if (Files.isRegularFile(file)) {
+                    size += Files.size(file);
+                }
+            }
+            return size;
+        }
+    }
+
+    private static void deleteRecursively(Path directory) {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to delete {}", path, e);
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete {}", directory, e);
+        }
+    }
+
+    @Override
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public long getRecordCount() {
+        return recordCount.sum();
+    }
+
+    @Override
+    public long getCommitCount() {
+        return commitCount.sum();
+    }
+
+    @Override
+    public double getMeanCommitMillis() {
+        final long commits = commitCount.sum();
+        return commits == 0 ? 0 : commitNanos.sum() / 1_000_000d / commits;
+    }
+
+    @Override
+    public long getJournalSize() {
+        return journalSize.get();
+    }
+
+    @Override
+    public long getCompactionCount() {
+        return compactionCount.sum();
+    }
+
+    @Override
+    public long getReplayedCount() {
+        return replayedCount.sum();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * A journaled submission.
+     */
+    public final class Entry {
+
+        private final String id;
+
+        private final String action;
+
+        private final Map<String, String> fields;
+
+        private final List<MIRInboundAttachment> attachments;
+
+        private Entry(String id, String action, Map<String, String> fields, List<MIRInboundAttachment> attachments) {
+            this.id = id;
+            this.action = action;
+            this.fields = fields;
+            this.attachments = List.copyOf(attachments);
+        }
+
+        /**
+         * Returns the id of the entry.
+         *
+         * @return the id
+         */
+        public String id() {
+            return id;
+        }
+
+        /**
+         * Returns the action name of the submission.
+         *
+         * @return the action name
+         */
+        public String action() {
+            return action;
+        }
+
+        /**
+         * Returns the form fields of the submission.
+         *
+         * @return the fields
+         */
+        public Map<String, String> fields() {
+            return fields;
+        }
+
+        /**
+         * Returns the attachments retained in the journal directory.
+         *
+         * @return the attachments
+         */
+        public List<MIRInboundAttachment> attachments() {
+            return attachments;
+        }
+
+        /**
+         * Marks the submission as handled. The retained attachments are deleted once the acknowledgement is synced
+         * to disk, so that they are still available for a replay until then. Does not wait for the sync.
+         */
+        public void acknowledge() {
+            final byte[] payload;
+            try {
+                payload = encodeAck(id);
+            } catch (IOException e) {
+                throw new MCRException("Failed to encode acknowledgement", e);
+            }
+            submit(id, RECORD_ACK, payload).whenComplete((done, e) -> {
+                if (e == null) {
+                    deleteRecursively(path.resolve(ATTACHMENTS_DIR).resolve(id));
+                } else {
+                    LOGGER.error("Failed to acknowledge journaled submission {}", id, e);
+                }
+            });
+        }
+
+        /**
+         * Marks the submission as failed. The submission and its attachments are moved to the {@code failed}
+         * subdirectory and the entry is acknowledged, so it is not replayed.
+         */
+        public void fail() {
+            failedCount.increment();
+            moveToFailed(this);
+            acknowledge();
+        }
+    }
+
+    private record Append(String id, byte type, byte[] payload, CompletableFuture<Void> future) {
+    }
+
+    private record FailedSubmission(Path directory, FileTime modified, long size) {
+    }
+
+    private static final class InstanceHolder {
+
+        private static final MIRSubmissionJournal INSTANCE = createInstance();
+
+        private static MIRSubmissionJournal createInstance() {
+            final Path path = MCRConfiguration2.getString(CONFIG_PREFIX + "Path").map(Path::of)
+                .orElseThrow(() -> new MCRConfigurationException(CONFIG_PREFIX + "Path is not configured"));
+            final MIRSubmissionJournal journal = new MIRSubmissionJournal(path,
+                MCRConfiguration2.getLong(CONFIG_PREFIX + "CompactionThreshold").orElse(16L * 1024 * 1024),
+                MCRConfiguration2.getInt(CONFIG_PREFIX + "MaxBatchSize").orElse(256),
+                Duration.ofSeconds(MCRConfiguration2.getLong(CONFIG_PREFIX + "FailedTimeToLive").orElse(2_592_000L)),
+                MCRConfiguration2.getLong(CONFIG_PREFIX + "MaxFailedSize").orElse(1024L * 1024 * 1024));
+            try {
+                journal.recover();
+            } catch (IOException e) {
+                throw new MCRConfigurationException("Could not recover submission journal " + path, e);
+            }
+            final Thread committer = new Thread(journal::commitLoop, "MIRSubmissionJournal-Committer");
+            committer.setDaemon(true);
+            committer.start();
+            MCRShutdownHandler.getInstance().addCloseable(committer::interrupt);
+            MIRManagementHelper.register(journal, "SubmissionJournal", path.toString());
+            return journal;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+/**
+ * Management interface of {@link MIRSubmissionJournal}.
+ */
+public interface MIRSubmissionJournalMXBean {
+
+    /**
+     * Returns the number of journaled submissions that are not acknowledged yet.
+     *
+     * @return the pending count
+     */
+    int getPendingCount();
+
+    /**
+     * Returns the number of records written to the journal.
+     *
+     * @return the record count
+     */
+    long getRecordCount();
+
+    /**
+     * Returns the number of group commits, each of which synced one or more records to disk.
+     *
+     * @return the commit count
+     */
+    long getCommitCount();
+
+    /**
+     * Returns the mean time in milliseconds a group commit took to write and sync its records.
+     *
+     * @return the mean commit time
+     */
+    double getMeanCommitMillis();
+
+    /**
+     * Returns the current size of the journal file in bytes.
+     *
+     * @return the journal size
+     */
+    long getJournalSize();
+
+    /**
+     * Returns the number of compactions of the journal file.
+     *
+     * @return the compaction count
+     */
+    long getCompactionCount();
+
+    /**
+     * Returns the number of pending submissions replayed after a restart.
+     *
+     * @return the replayed count
+     */
+    long getReplayedCount();
+
+    /**
+     * Returns the number of replayed submissions that failed and were moved aside.
+     *
+     * @return the failed count
+     */
+    long getFailedCount();
+}
@@ -0,0 +1,232 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Counters and latency histograms of the requests of one {@link MIRMailerWithFileServlet} action.
+ * <p>
+ * All counters are {@link LongAdder}s, so recording never blocks concurrent requests. Every instance is published
+ * as JMX MBean {@code org.mycore.mir:type=SubmissionMetrics,name=<action>}.
+ */
+public final class MIRSubmissionMetrics implements MIRSubmissionMetricsMXBean {
+
+    private static final long[] BOUNDS_MILLIS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+
+    private static final long[] BOUNDS_NANOS =
+        Arrays.stream(BOUNDS_MILLIS).map(TimeUnit.MILLISECONDS::toNanos).toArray();
+
+    private static final Map<String, MIRSubmissionMetrics> METRICS = new ConcurrentHashMap<>();
+
+    private final Map<Stage, StageMetrics> stages = new EnumMap<>(Stage.class);
+
+    private final Map<Rejection, LongAdder> rejections = new EnumMap<>(Rejection.class);
+
+    private final LongAdder attachmentCount = new LongAdder();
+
+    private final LongAdder attachmentBytes = new LongAdder();
+
+    private MIRSubmissionMetrics() {
+        Arrays.stream(Stage.values()).forEach(stage -> stages.put(stage, new StageMetrics()));
+        Arrays.stream(Rejection.values()).forEach(rejection -> rejections.put(rejection, new LongAdder()));
+    }
+
+    /**
+     * Returns the metrics with the given name, creating and publishing them on first use. Callers must only pass
+     * names from a bounded set, e.g. configured actions.
+     *
+     * @param name the metrics name
+     * @return the metrics
+     */
+    public static MIRSubmissionMetrics get(String name) {
+        return METRICS.computeIfAbsent(name, n -> {
+            final MIRSubmissionMetrics metrics = new MIRSubmissionMetrics();
+            MIRManagementHelper.register(metrics, "SubmissionMetrics", n);
+            return metrics;
+        });
+    }
+
+    /**
+     * Records the duration of a stage.
+     *
+     * @param stage the stage
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(Stage stage, long nanos) {
+        stages.get(stage).record(nanos);
+    }
+
+    /**
+     * Records a rejected request.
+     *
+     * @param rejection the reason
+     */
+    public void reject(Rejection rejection) {
+        rejections.get(rejection).increment();
+    }
+
+    /**
+     * Records a received attachment.
+     *
+     * @param size the attachment size in bytes
+     */
+    public void recordAttachment(long size) {
+        attachmentCount.increment();
+        attachmentBytes.add(size);
+    }
+
+    @Override
+    public long getRequestCount() {
+        return stages.get(Stage.TOTAL).count.sum();
+    }
+
+    @Override
+    public long getAttachmentCount() {
+        return attachmentCount.sum();
+    }
+
+    @Override
+    public long getAttachmentBytes() {
+        return attachmentBytes.sum();
+    }
+
+    @Override
+    public Map<String, Long> getRejectionCounts() {
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        rejections.forEach((rejection, count) -> counts.put(rejection.name(), count.sum()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getStageCounts() {
+        return mapStages(stage -> stage.count.sum());
+    }
+
+    @Override
+    public Map<String, Double> getStageMeanMillis() {
+        return mapStages(stage -> {
+            final long count = stage.count.sum();
+            return count == 0 ? 0.0 : stage.totalNanos.sum() / (count * 1_000_000.0);
+        });
+    }
+
+    @Override
+    public Map<String, Long> getStageMaxMillis() {
+        return mapStages(stage -> TimeUnit.NANOSECONDS.toMillis(stage.maxNanos.get()));
+    }
+
+    @Override
+    public Map<String, long[]> getStageHistograms() {
+        return mapStages(stage -> Arrays.stream(stage.buckets).mapToLong(LongAdder::sum).toArray());
+    }
+
+    @Override
+    public long[] getHistogramBoundsMillis() {
+        return BOUNDS_MILLIS.clone();
+    }
+
+    private <T> Map<String, T> mapStages(Function<StageMetrics, T> mapper) {
+        final Map<String, T> values = new LinkedHashMap<>();
+        stages.forEach((stage, metrics) -> values.put(stage.name(), mapper.apply(metrics)));
+        return values;
+    }
+
+    /**
+     * Stages of a request.
+     */
+    public enum Stage {
+        /** Parsing the request body. */
+        PARSE,
+        /** Rendering or validating a captcha. */
+        CAPTCHA,
+        /** Checksumming and validating attachments. */
+        INGEST,
+        /** Rendering the mail body. */
+        RENDER,
+        /** Sending or queueing the mail. */
+        DISPATCH,
+        /** The whole request. */
+        TOTAL
+    }
+
+    /**
+     * Reasons for rejecting a request.
+     */
+    public enum Rejection {
+        /** The client exceeded the rate limit. */
+        RATE_LIMITED,
+        /** No handler is configured for the action. */
+        UNKNOWN_ACTION,
+        /** The request has a body without content length. */
+        LENGTH_REQUIRED,
+        /** The request exceeds the maximum request size. */
+        TOO_LARGE,
+        /** The captcha is missing or wrong. */
+        INVALID_CAPTCHA,
+        /** The sender mail address is missing. */
+        MISSING_SENDER,
+        /** The sender mail domain is disallowed. */
+        DISALLOWED_SENDER,
+        /** An attachment is invalid. */
+        INVALID_ATTACHMENT,
+        /** The form submission handler rejected the submission as invalid. */
+        INVALID_SUBMISSION,
+        /** The form submission handler failed. */
+        HANDLER_ERROR,
+        /** The form submission handler did not finish within the timeout of the action. */
+        TIMEOUT,
+        /** The submission could not be written to the journal. */
+        JOURNAL_ERROR,
+        /** The submission is a duplicate of a submission in flight or completed recently. */
+        DUPLICATE
+    }
+
+    private static final class StageMetrics {
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        private final LongAdder[] buckets =
+            IntStream.rangeClosed(0, BOUNDS_NANOS.length).mapToObj(i -> new LongAdder()).toArray(LongAdder[]::new);
+
+        private void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            int bucket = 0;
+            while (bucket < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link MIRSubmissionMetrics}.
+ */
+public interface MIRSubmissionMetricsMXBean {
+
+    /**
+     * Returns the number of handled requests.
+     *
+     * @return the request count
+     */
+    long getRequestCount();
+
+    /**
+     * Returns the number of received attachments.
+     *
+     * @return the attachment count
+     */
+    long getAttachmentCount();
+
+    /**
+     * Returns the total size of all received attachments in bytes.
+     *
+     * @return the attachment bytes
+     */
+    long getAttachmentBytes();
+
+    /**
+     * Returns the number of rejected requests by reason.
+     *
+     * @return the rejection counts
+     */
+    Map<String, Long> getRejectionCounts();
+
+    /**
+     * Returns the number of recorded durations by stage.
+     *
+     * @return the stage counts
+     */
+    Map<String, Long> getStageCounts();
+
+    /**
+     * Returns the mean duration in milliseconds by stage.
+     *
+     * @return the mean durations
+     */
+    Map<String, Double> getStageMeanMillis();
+
+    /**
+     * Returns the maximum duration in milliseconds by stage.
+     *
+     * @return the maximum durations
+     */
+    Map<String, Long> getStageMaxMillis();
+
+    /**
+     * Returns the latency histogram by stage. Bucket {@code i} counts durations up to
+     * {@code getHistogramBoundsMillis()[i]}, the last bucket counts all longer durations.
+     *
+     * @return the histograms
+     */
+    Map<String, long[]> getStageHistograms();
+
+    /**
+     * Returns the upper bounds of the histogram buckets in milliseconds.
+     *
+     * @return the bucket bounds
+     */
+    long[] getHistogramBoundsMillis();
+}
@@ -0,0 +1,169 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.common.config.MCRConfiguration2;
+import org.mycore.mir.MIRSubmissionMetrics.Stage;
+
+/**
+ * Per-request trace of the stages of a {@link MIRMailerWithFileServlet} request.
+ * <p>
+ * The trace of the current request is bound to the request thread, so components like form submission handlers
+ * can record their stages without access to the request. Recording a stage without a current trace does nothing.
+ * Tasks running on other threads on behalf of the request can be bound to the trace with {@link #propagate(Supplier)}.
+ * When the trace ends, requests slower than the configured threshold are logged with their stage breakdown,
+ * optionally only a random sample of them.
+ */
+public final class MIRSubmissionTrace {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String CONFIG_PREFIX = "MIR.MailerWithFileServlet.Metrics.";
+
+    private static final long SLOW_THRESHOLD_NANOS = TimeUnit.MILLISECONDS
+        .toNanos(MCRConfiguration2.getLong(CONFIG_PREFIX + "SlowSubmissionThreshold").orElse(5000L));
+
+    private static final double SLOW_SAMPLE_RATE =
+        MCRConfiguration2.getString(CONFIG_PREFIX + "SlowSubmissionSampleRate").map(Double::parseDouble)
+            .orElse(1.0);
+
+    private static final ThreadLocal<MIRSubmissionTrace> CURRENT = new ThreadLocal<>();
+
+    private final String name;
+
+    private final MIRSubmissionMetrics metrics;
+
+    private final long start;
+
+    private final Map<Stage, Long> stageNanos = new ConcurrentHashMap<>();
+
+    private volatile MIRSubmissionMetrics.Rejection rejection;
+
+    private MIRSubmissionTrace(String name, long start) {
+        this.name = name;
+        this.start = start;
+        this.metrics = MIRSubmissionMetrics.get(name);
+    }
+
+    /**
+     * Starts a trace for the current thread.
+     *
+     * @param name the metrics name of the request, see {@link MIRSubmissionMetrics#get(String)}
+     * @param start the start of the request as returned by {@link System#nanoTime()}
+     * @return the trace
+     */
+    public static MIRSubmissionTrace begin(String name, long start) {
+        final MIRSubmissionTrace trace = new MIRSubmissionTrace(name, start);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * Binds the given task to the trace of the current thread, so that it records its stages to this trace when it
+     * runs on another thread.
+     *
+     * @param task the task
+     * @param <T> the result type of the task
+     * @return the bound task, or the task itself if there is no current trace
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> task) {
+        final MIRSubmissionTrace trace = CURRENT.get();
+        if (trace == null) {
+            return task;
+        }
+        return () -> {
+            final MIRSubmissionTrace previous = CURRENT.get();
+            CURRENT.set(trace);
+            try {
+                return task.get();
+            } finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Records a stage of the current trace that started at the given time.
+     *
+     * @param stage the stage
+     * @param startNanos the start of the stage as returned by {@link System#nanoTime()}
+     */
+    public static void record(Stage stage, long startNanos) {
+        final MIRSubmissionTrace trace = CURRENT.get();
+        if (trace != null) {
+            final long nanos = System.nanoTime() - startNanos;
+            trace.stageNanos.merge(stage, nanos, Long::sum);
+            trace.metrics.record(stage, nanos);
+        }
+    }
+
+    /**
+     * Records a rejection of the current trace.
+     *
+     * @param rejection the reason
+     */
+    public static void reject(MIRSubmissionMetrics.Rejection rejection) {
+        final MIRSubmissionTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.rejection = rejection;
+            trace.metrics.reject(rejection);
+        }
+    }
+
+    /**
+     * Records a received attachment of the current trace.
+     *
+     * @param size the attachment size in bytes
+     */
+    public static void recordAttachment(long size) {
+        final MIRSubmissionTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.metrics.recordAttachment(size);
+        }
+    }
+
+    /**
+     * Ends the trace, records the total duration and unbinds it from the current thread.
+     */
+    public void end() {
+        CURRENT.remove();
+        final long nanos = System.nanoTime() - start;
+        metrics.record(Stage.TOTAL, nanos);
+        if (nanos >= SLOW_THRESHOLD_NANOS && ThreadLocalRandom.current().nextDouble() < SLOW_SAMPLE_RATE) {
+            LOGGER.warn("Slow request for action '{}' took {} ms{}: {}", name,
+                TimeUnit.NANOSECONDS.toMillis(nanos), rejection == null ? "" : " (rejected: " + rejection + ")",
+                stageNanos.entrySet().stream().sorted(Map.Entry.comparingByKey())
+                    .map(e -> e.getKey() + "=" + TimeUnit.NANOSECONDS.toMillis(e.getValue()) + "ms")
+                    .collect(Collectors.joining(", ")));
+        }
+    }
+}
@@ -0,0 +1,502 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.common.config.MCRConfiguration2;
+import org.mycore.common.config.MCRConfigurationException;
+import org.mycore.common.events.MCRShutdownHandler;
+import org.mycore.mir.handler.MIRInboundAttachment;
+
+/**
+ * Staging area for resumable chunked uploads.
+ * <p>
+ * An upload is created with its final size and is split into chunks of a fixed size. Chunks can be written in any
+ * order and concurrently, each chunk is written through its own {@link FileChannel} at its offset in the staging
+ * file. Once all chunks are written, the upload is finished, which computes its checksum. A finished upload can be
+ * referenced by a form submission instead of carrying the file in the submission. Uploads that are not used within
+ * the configured time to live are deleted. Upload state is kept in memory, so uploads do not survive a restart.
+ * <p>
+ * An upload is created for the action it is submitted with and may not exceed the attachment limit of that action.
+ * The number of pending uploads per client and the total size of all pending uploads are limited, so that a single
+ * client cannot fill the disk or take all upload slots.
+ */
+public final class MIRUploadStore {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String CONFIG_PREFIX = "MIR.MailerWithFileServlet.Upload.";
+
+    private static final int ID_LENGTH = 16;
+
+    private static final int MAX_FILENAME_LENGTH = 255;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final Path stagingPath;
+
+    private final int chunkSize;
+
+    private final long maxSize;
+
+    private final int maxUploads;
+
+    private final int maxUploadsPerClient;
+
+    private final long maxTotalSize;
+
+    private final long timeToLive;
+
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+
+    private final AtomicLong reservedSize = new AtomicLong();
+
+    private MIRUploadStore(Path stagingPath, int chunkSize, long maxSize, int maxUploads, int maxUploadsPerClient,
+        long maxTotalSize, Duration timeToLive) {
+        this.stagingPath = stagingPath;
+        this.chunkSize = chunkSize;
+        this.maxSize = maxSize;
+        this.maxUploads = maxUploads;
+        this.maxUploadsPerClient = maxUploadsPerClient;
+        this.maxTotalSize = maxTotalSize;
+        this.timeToLive = timeToLive.toMillis();
+    }
+
+    /**
+     * Returns whether chunked uploads are enabled, i.e. a staging path is configured.
+     *
+     * @return true if chunked uploads are enabled
+     */
+    public static boolean isEnabled() {
+        return MCRConfiguration2.getString(CONFIG_PREFIX + "StagingPath").isPresent();
+    }
+
+    /**
+     * Returns the configured upload store.
+     *
+     * @return the store
+     * @throws MCRConfigurationException if chunked uploads are not enabled
+     */
+    public static MIRUploadStore getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Creates a new upload.
+     *
+     * @param action the name of the action the upload is submitted with
+     * @param client the client address
+     * @param filename the file name
+     * @param contentType the MIME type, may be {@code null}
+     * @param size the size of the file in bytes
+     * @return the upload
+     * @throws MIRAttachmentIngestionException if the action is unknown, the file name or size is invalid or too many
+     * uploads are pending
+     * @throws IOException if the staging file cannot be created
+     */
+    public Upload create(String action, String client, String filename, String contentType, long size)
+        throws IOException {
+        if (filename == null || filename.isBlank() || filename.length() > MAX_FILENAME_LENGTH) {
+            throw new MIRAttachmentIngestionException("Invalid file name: " + filename);
+        }
+        final long maxActionSize = MIRActionRegistry.getInstance().getAction(action)
+            .orElseThrow(() -> new MIRAttachmentIngestionException("Unknown action for upload: " + action))
+            .handler().getMaxAttachmentSize().map(limit -> Math.min(limit, maxSize)).orElse(maxSize);
+        if (size <= 0 || size > maxActionSize) {
+            throw new MIRAttachmentIngestionException(
+                "Invalid upload size " + size + ", max allowed is " + maxActionSize);
+        }
+        final byte[] idBytes = new byte[ID_LENGTH];
+        RANDOM.nextBytes(idBytes);
+        final String id = ENCODER.encodeToString(idBytes);
+        final Path file = stagingPath.resolve(id);
+        final Upload upload = new Upload(id, action, client, file, filename,
+            contentType == null || contentType.isBlank() ? "application/octet-stream" : contentType, size);
+        reserve(upload);
+        try {
+            Files.createFile(file);
+        } catch (IOException e) {
+            uploads.remove(id);
+            upload.delete();
+            throw e;
+        }
+        LOGGER.debug("Created upload {} for {} ({} bytes)", id, filename, size);
+        return upload;
+    }
+
+    private synchronized void reserve(Upload upload) {
+        if (uploads.size() >= maxUploads) {
+            throw new MIRAttachmentIngestionException("Too many pending uploads");
+        }
+        if (uploads.values().stream().filter(pending -> Objects.equals(pending.client, upload.client)).count()
+            >= maxUploadsPerClient) {
+            throw new MIRAttachmentIngestionException("Too many pending uploads for client " + upload.client);
+        }
+        if (reservedSize.get() + upload.size > maxTotalSize) {
+            throw new MIRAttachmentIngestionException("Pending uploads exceed max total size of " + maxTotalSize);
+        }
+        reservedSize.addAndGet(upload.size);
+        uploads.put(upload.id, upload);
+    }
+
+    /**
+     * Returns the upload with the given id.
+     *
+     * @param id the upload id
+     * @return the upload
+     */
+    public Optional<Upload> get(String id) {
+        return id == null ? Optional.empty() : Optional.ofNullable(uploads.get(id));
+    }
+
+    /**
+     * Resolves finished uploads into attachments.
+     *
+     * @param action the name of the action the uploads are submitted with
+     * @param ids the upload ids
+     * @return the attachments in the order of the ids
+     * @throws MIRAttachmentIngestionException if an upload does not exist, is not finished or was created for
+     * another action
+     */
+    public List<MIRInboundAttachment> resolve(String action, List<String> ids) {
+        final List<MIRInboundAttachment> attachments = new ArrayList<>();
+        for (String id : ids) {
+            final Upload upload = get(id).orElseThrow(() -> new MIRAttachmentIngestionException("Unknown upload"));
+            if (!upload.action.equals(action)) {
+                throw new MIRAttachmentIngestionException("Upload " + id + " was created for another action");
+            }
+            final MIRAttachmentInspection inspection = Optional.ofNullable(upload.inspection)
+                .orElseThrow(() -> new MIRAttachmentIngestionException("Upload " + id + " is not finished"));
+            upload.touch();
+            attachments.add(new MIRStagedInboundAttachment(upload.file, upload.filename, upload.contentType,
+                upload.size, inspection.sha256(), inspection.contentType()));
+        }
+        return attachments;
+    }
+
+    /**
+     * Deletes the given uploads.
+     *
+     * @param ids the upload ids
+     */
+    public void remove(List<String> ids) {
+        ids.stream().map(uploads::remove).filter(upload -> upload != null).forEach(Upload::delete);
+    }
+
+    /**
+     * Returns the chunk size. Every chunk except the last one has exactly this size.
+     *
+     * @return the chunk size in bytes
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    private void deleteExpired() {
+        final long now = System.currentTimeMillis();
+        uploads.values().removeIf(upload -> {
+            if (now - upload.lastModified > timeToLive) {
+                LOGGER.debug("Deleting expired upload {}", upload.id);
+                upload.delete();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private static MIRUploadStore createInstance() {
+        final Path stagingPath = MCRConfiguration2.getString(CONFIG_PREFIX + "StagingPath").map(Path::of)
+            .orElseThrow(() -> new MCRConfigurationException(CONFIG_PREFIX + "StagingPath is not configured"));
+        try {
+            Files.createDirectories(stagingPath);
+            try (Stream<Path> files = Files.list(stagingPath)) {
+                // upload state is not persisted, so staged files of a previous run cannot be resumed
+                files.forEach(file -> {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        } catch (IOException | UncheckedIOException e) {
+            throw new MCRConfigurationException("Could not prepare upload staging path " + stagingPath, e);
+        }
+        final MIRUploadStore store = new MIRUploadStore(stagingPath,
+            MCRConfiguration2.getInt(CONFIG_PREFIX + "ChunkSize").orElse(8 * 1024 * 1024),
+            MCRConfiguration2.getLong(CONFIG_PREFIX + "MaxSize").orElse(1024L * 1024 * 1024),
+            MCRConfiguration2.getInt(CONFIG_PREFIX + "MaxUploads").orElse(100),
+            MCRConfiguration2.getInt(CONFIG_PREFIX + "MaxUploadsPerClient").orElse(5),
+            MCRConfiguration2.getLong(CONFIG_PREFIX + "MaxTotalSize").orElse(10L * 1024 * 1024 * 1024),
+            Duration.ofSeconds(MCRConfiguration2.getLong(CONFIG_PREFIX + "TimeToLive").orElse(86_400L)));
+        final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "MIRUploadStore-Cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cleaner.scheduleWithFixedDelay(store::deleteExpired, 10, 10, TimeUnit.MINUTES);
+        MCRShutdownHandler.getInstance().addCloseable(cleaner::shutdownNow);
+        return store;
+    }
+
+    /**
+     * A chunked upload. Chunks are written concurrently under a shared lock, finishing and deleting the upload takes
+     * the lock exclusively, so that no chunk is written to a file that is inspected, moved or deleted.
+     */
+    public final class Upload {
+
+        private final String id;
+
+        private final String action;
+
+        private final String client;
+
+        private final Path file;
+
+        private final String filename;
+
+        private final String contentType;
+
+        private final long size;
+
+        private final int chunkCount;
+
+        private final BitSet writtenChunks;
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        private volatile MIRAttachmentInspection inspection;
+
+        private volatile boolean deleted;
+
+        private volatile long lastModified = System.currentTimeMillis();
+
+        private Upload(String id, String action, String client, Path file, String filename, String contentType,
+            long size) {
+            this.id = id;
+            this.action = action;
+            this.client = client;
+            this.file = file;
+            this.filename = filename;
+            this.contentType = contentType;
+            this.size = size;
+            this.chunkCount = (int) ((size + chunkSize - 1) / chunkSize);
+            this.writtenChunks = new BitSet(chunkCount);
+        }
+
+        /**
+         * Returns the upload id.
+         *
+         * @return the id
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Returns the file size.
+         *
+         * @return the size in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the checksum of a finished upload.
+         *
+         * @return the hex encoded SHA-256 checksum or an empty optional if the upload is not finished
+         */
+        public Optional<String> getChecksum() {
+            return Optional.ofNullable(inspection).map(MIRAttachmentInspection::sha256);
+        }
+
+        /**
+         * Returns the number of bytes from the start of the file up to the first missing chunk.
+         *
+         * @return the offset
+         */
+        public synchronized long getOffset() {
+            return Math.min(size, (long) writtenChunks.nextClearBit(0) * chunkSize);
+        }
+
+        /**
+         * Returns the indexes of the chunks that have not been written yet.
+         *
+         * @return the missing chunk indexes
+         */
+        public synchronized int[] getMissingChunks() {
+            final BitSet missing = new BitSet(chunkCount);
+            missing.set(0, chunkCount);
+            missing.andNot(writtenChunks);
+            return missing.stream().toArray();
+        }
+
+        /**
+         * Writes a chunk. The offset must be a multiple of the chunk size and the length must be the chunk size,
+         * or the remaining size for the last chunk. Writing a chunk again overwrites it.
+         *
+         * @param offset the offset of the chunk in the file
+         * @param length the length of the chunk
+         * @param in the chunk content
+         * @throws MIRAttachmentIngestionException if the chunk does not fit the upload or is incomplete
+         * @throws IOException if the chunk cannot be written
+         */
+        public void writeChunk(long offset, long length, InputStream in) throws IOException {
+            lock.readLock().lock();
+            try {
+                doWriteChunk(offset, length, in);
+            } finally {
+                lock.readLock().unlock();
+            }
+            touch();
+        }
+
+        private void doWriteChunk(long offset, long length, InputStream in) throws IOException {
+            if (deleted) {
+                throw new MIRAttachmentIngestionException("Upload " + id + " does not exist anymore");
+            }
+            if (inspection != null) {
+                throw new MIRAttachmentIngestionException("Upload " + id + " is already finished");
+            }
+            if (offset < 0 || offset >= size || offset % chunkSize != 0
+                || length != Math.min(chunkSize, size - offset)) {
+                throw new MIRAttachmentIngestionException(
+                    "Invalid chunk at offset " + offset + " with length " + length + " for upload " + id);
+            }
+            long written = 0;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+                ReadableByteChannel source = Channels.newChannel(in)) {
+                while (written < length) {
+                    final long transferred = channel.transferFrom(source, offset + written, length - written);
+                    if (transferred <= 0) {
+                        break;
+                    }
+                    written += transferred;
+                }
+            }
+            if (written != length || in.read() != -1) {
+                throw new MIRAttachmentIngestionException("Incomplete chunk at offset " + offset + " for upload " + id);
+            }
+            synchronized (this) {
+                writtenChunks.set((int) (offset / chunkSize));
+            }
+        }
+
+        /**
+         * Finishes the upload, computes its checksum and detects its content type. The chunks may arrive in any
+         * order, so the file is inspected in one pass once all of them are written.
+         *
+         * @return the hex encoded SHA-256 checksum
+         * @throws MIRAttachmentIngestionException if chunks are missing
+         * @throws IOException if the staged file cannot be read
+         */
+        public String finish() throws IOException {
+            lock.writeLock().lock();
+            try {
+                return doFinish();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private String doFinish() throws IOException {
+            if (inspection != null) {
+                return inspection.sha256();
+            }
+            if (deleted) {
+                throw new MIRAttachmentIngestionException("Upload " + id + " does not exist anymore");
+            }
+            synchronized (this) {
+                if (writtenChunks.cardinality() != chunkCount) {
+                    throw new MIRAttachmentIngestionException("Upload " + id + " has missing chunks");
+                }
+            }
+            final MIRAttachmentInspector inspector = new MIRAttachmentInspector();
+            final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                while (channel.read(buffer) >= 0) {
+                    inspector.write(buffer.array(), 0, buffer.position());
+                    buffer.clear();
+                }
+            }
+            inspection = inspector.getInspection();
+            touch();
+            LOGGER.debug("Finished upload {} ({} bytes, SHA-256 {}, type {})", id, size, inspection.sha256(),
+                inspection.contentType());
+            return inspection.sha256();
+        }
+
+        private void touch() {
+            lastModified = System.currentTimeMillis();
+        }
+
+        private void delete() {
+            lock.writeLock().lock();
+            try {
+                if (deleted) {
+                    return;
+                }
+                deleted = true;
+                reservedSize.addAndGet(-size);
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.warn("Could not delete staged upload {}", file, e);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static final class InstanceHolder {
+
+        private static final MIRUploadStore INSTANCE = createInstance();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.handler;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Handles a form submission request asynchronously, so that independent I/O of a submission can overlap and the
+ * caller can wait with a timeout.
+ * <p>
+ * The attachments of the request are owned by the caller and only valid until the returned stage completes, so a
+ * handler that finishes the work later has to take them over first, e.g. by moving them to a queue. When the caller
+ * cancels the returned stage, e.g. because the timeout of the action elapsed, the handler should stop its work as
+ * soon as possible; threads working on it are interrupted.
+ */
+public interface MIRAsyncFormSubmissionHandler extends MIRFormSubmissionHandler {
+
+    /**
+     * Starts processing the given form submission request.
+     *
+     * @param formSubmissionRequest the form submission to handle
+     * @return a stage completing with the result or exceptionally with a {@link MIRFormSubmissionHandlerException}
+     *     if an error occurs during processing; cancelling the stage requests processing to stop, the stage must
+     *     not complete before the attachments are no longer used
+     */
+    CompletionStage<MIRFormSubmissionResult> handleAsync(MIRFormSubmissionRequest formSubmissionRequest);
+
+    /**
+     * Processes the given form submission request and waits for the result.
+     *
+     * @param formSubmissionRequest the form submission to handle
+     * @throws MIRFormSubmissionHandlerException if an error occurs during processing
+     */
+    @Override
+    default void handle(MIRFormSubmissionRequest formSubmissionRequest) {
+        try {
+            handleAsync(formSubmissionRequest).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof MIRFormSubmissionHandlerException handlerException) {
+                throw handlerException;
+            }
+            throw new MIRFormSubmissionHandlerException("Failed to handle submission", e.getCause());
+        }
+    }
+
+    /**
+     * Returns the given handler as asynchronous handler. Blocking handlers are run on a virtual thread.
+     *
+     * @param handler the handler
+     * @return the handler itself if it is asynchronous, otherwise an adapter
+     */
+    static MIRAsyncFormSubmissionHandler of(MIRFormSubmissionHandler handler) {
+        if (handler instanceof MIRAsyncFormSubmissionHandler asyncHandler) {
+            return asyncHandler;
+        }
+        return new MIRBlockingFormSubmissionHandlerAdapter(handler);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.handler;
+
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+import org.mycore.mir.MIRSubmissionTrace;
+
+/**
+ * Adapts a blocking {@link MIRFormSubmissionHandler} to {@link MIRAsyncFormSubmissionHandler} by running it on a
+ * virtual thread. Cancelling the returned stage interrupts the thread, the stage completes once the handler has
+ * returned.
+ */
+public final class MIRBlockingFormSubmissionHandlerAdapter implements MIRAsyncFormSubmissionHandler {
+
+    private static final ThreadFactory THREAD_FACTORY =
+        Thread.ofVirtual().name("MIRFormSubmissionHandler-", 1).factory();
+
+    private static final Executor VIRTUAL_THREAD_EXECUTOR = command -> THREAD_FACTORY.newThread(command).start();
+
+    private final MIRFormSubmissionHandler handler;
+
+    /**
+     * Constructs an adapter for the given handler.
+     *
+     * @param handler the blocking handler
+     */
+    public MIRBlockingFormSubmissionHandlerAdapter(MIRFormSubmissionHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public CompletionStage<MIRFormSubmissionResult> handleAsync(MIRFormSubmissionRequest formSubmissionRequest) {
+        return supplyAsync(() -> {
+            handler.handle(formSubmissionRequest);
+            return MIRFormSubmissionResult.COMPLETED;
+        });
+    }
+
+    @Override
+    public void handle(MIRFormSubmissionRequest formSubmissionRequest) {
+        handler.handle(formSubmissionRequest);
+    }
+
+    @Override
+    public void validate(MIRFormSubmissionRequest formSubmissionRequest) {
+        handler.validate(formSubmissionRequest);
+    }
+
+    @Override
+    public Optional<Long> getMaxAttachmentSize() {
+        return handler.getMaxAttachmentSize();
+    }
+
+    /**
+     * Runs the given task on a new virtual thread bound to the current submission trace. Cancelling the returned
+     * future interrupts the thread, the future completes once the task has returned.
+     *
+     * @param task the task
+     * @param <T> the result type
+     * @return a future completing with the result of the task
+     */
+    static <T> CompletableFuture<T> supplyAsync(Supplier<T> task) {
+        return supplyAsync(task, VIRTUAL_THREAD_EXECUTOR);
+    }
+
+    /**
+     * Runs the given task with the given executor bound to the current submission trace. Cancelling the returned
+     * future interrupts the task if it is running and skips it otherwise. A running task is not abandoned: the future
+     * completes once the task has returned, see {@link MIRCooperativeFuture}.
+     *
+     * @param task the task
+     * @param executor the executor
+     * @param <T> the result type
+     * @return a future completing with the result of the task
+     */
+    static <T> CompletableFuture<T> supplyAsync(Supplier<T> task, Executor executor) {
+        final MIRCooperativeFuture<T> future = new MIRCooperativeFuture<>();
+        final TaskRunner<T> runner = new TaskRunner<>(MIRSubmissionTrace.propagate(task), future);
+        future.onCancel(runner::cancel);
+        executor.execute(runner);
+        return future;
+    }
+
+    /**
+     * Runs a task and completes its future, interrupting the task on cancellation.
+     */
+    private static final class TaskRunner<T> implements Runnable {
+
+        private final Supplier<T> task;
+
+        private final CompletableFuture<T> future;
+
+        private boolean started;
+
+        private boolean cancelled;
+
+        private Thread thread;
+
+        private TaskRunner(Supplier<T> task, CompletableFuture<T> future) {
+            this.task = task;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                started = true;
+                thread = Thread.currentThread();
+            }
+            try {
+                future.complete(task.get());
+            } catch (RuntimeException | Error e) {
+                future.completeExceptionally(e);
+            } finally {
+                synchronized (this) {
+                    thread = null;
+                    // do not leak the interrupt of a cancellation to the next task of a pooled thread
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        private synchronized void cancel() {
+            cancelled = true;
+            if (!started) {
+                future.completeExceptionally(new CancellationException("Task was cancelled before it started"));
+            } else if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+}
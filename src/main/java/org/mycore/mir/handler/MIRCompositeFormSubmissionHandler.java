@@ -0,0 +1,235 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.handler;
+
+import static org.mycore.mir.handler.MIRBlockingFormSubmissionHandlerAdapter.supplyAsync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.common.config.MCRConfiguration2;
+import org.mycore.common.config.MCRConfigurationException;
+import org.mycore.common.config.annotation.MCRConfigurationProxy;
+import org.mycore.common.config.annotation.MCRInstanceMap;
+import org.mycore.common.config.annotation.MCRProperty;
+import org.mycore.common.events.MCRShutdownHandler;
+
+/**
+ * Implementation of {@link MIRAsyncFormSubmissionHandler} that passes a form submission to several child handlers
+ * running concurrently, e.g. to mail a submission and archive it at the same time.
+ * <p>
+ * Blocking children run on a bounded executor shared by all composite handlers, so that rebuilding handlers after a
+ * configuration change does not start further threads. Its size is set with
+ * {@code MIR.MailerWithFileServlet.CompositeHandler.Threads}. Asynchronous children are started directly. All children
+ * get the same attachments, each of which is read once from the request and shared between them, see
+ * {@link MIRSharedInboundAttachment}. The submission fails if a required child fails, failures of best-effort children
+ * are only logged. The result is {@link MIRFormSubmissionResult#ACCEPTED} if any successful child only accepted the
+ * submission. The returned stage completes after all children have finished.
+ */
+@MCRConfigurationProxy(proxyClass = MIRCompositeFormSubmissionHandler.Factory.class)
+public class MIRCompositeFormSubmissionHandler implements MIRAsyncFormSubmissionHandler {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final List<Child> children;
+
+    private final ExecutorService executor;
+
+    private final int sharedMemoryLimit;
+
+    /**
+     * Constructs a MIRCompositeFormSubmissionHandler.
+     *
+     * @param children the child handlers
+     * @param executor the executor running blocking child handlers
+     * @param sharedMemoryLimit the max number of bytes of a shared attachment kept in memory
+     */
+    public MIRCompositeFormSubmissionHandler(List<Child> children, ExecutorService executor, int sharedMemoryLimit) {
+        this.children = List.copyOf(children);
+        this.executor = executor;
+        this.sharedMemoryLimit = sharedMemoryLimit;
+    }
+
+    @Override
+    public CompletionStage<MIRFormSubmissionResult> handleAsync(MIRFormSubmissionRequest formSubmissionRequest) {
+        final List<MIRSharedInboundAttachment> attachments = children.size() < 2 ? List.of()
+            : formSubmissionRequest.attachments().stream()
+                .map(attachment -> new MIRSharedInboundAttachment(attachment, sharedMemoryLimit)).toList();
+        final MIRFormSubmissionRequest sharedRequest = attachments.isEmpty() ? formSubmissionRequest
+            : new MIRFormSubmissionRequest(formSubmissionRequest.fields(), List.copyOf(attachments));
+        final List<CompletableFuture<MIRFormSubmissionResult>> results = new ArrayList<>();
+        for (Child child : children) {
+            results.add(start(child, sharedRequest));
+        }
+        final MIRCooperativeFuture<MIRFormSubmissionResult> result = new MIRCooperativeFuture<>();
+        result.onCancel(() -> results.forEach(childResult -> childResult.cancel(true)));
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).whenComplete((done, e) -> {
+            attachments.forEach(MIRSharedInboundAttachment::close);
+            complete(result, results);
+        });
+        return result;
+    }
+
+    private CompletableFuture<MIRFormSubmissionResult> start(Child child, MIRFormSubmissionRequest request) {
+        if (child.handler() instanceof MIRAsyncFormSubmissionHandler asyncHandler) {
+            try {
+                return asyncHandler.handleAsync(request).toCompletableFuture();
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return supplyAsync(() -> {
+            child.handler().handle(request);
+            return MIRFormSubmissionResult.COMPLETED;
+        }, executor);
+    }
+
+    private void complete(CompletableFuture<MIRFormSubmissionResult> result,
+        List<CompletableFuture<MIRFormSubmissionResult>> results) {
+        MIRFormSubmissionHandlerException failure = null;
+        MIRFormSubmissionResult outcome = MIRFormSubmissionResult.COMPLETED;
+        for (int i = 0; i < children.size(); i++) {
+            final Child child = children.get(i);
+            final CompletableFuture<MIRFormSubmissionResult> childResult = results.get(i);
+            if (childResult.state() == Future.State.SUCCESS) {
+                if (childResult.resultNow() == MIRFormSubmissionResult.ACCEPTED) {
+                    outcome = MIRFormSubmissionResult.ACCEPTED;
+                }
+                continue;
+            }
+            final Throwable cause = childResult.state() == Future.State.FAILED ? childResult.exceptionNow()
+                : new CancellationException("Form submission handler '" + child.name() + "' was cancelled");
+            if (!child.required()) {
+                LOGGER.warn("Best-effort form submission handler '{}' failed", child.name(), cause);
+            } else if (failure == null && cause instanceof MIRFormSubmissionValidationException validationException) {
+                failure = validationException;
+            } else if (failure == null) {
+                failure = new MIRFormSubmissionHandlerException(
+                    "Form submission handler '" + child.name() + "' failed: " + cause.getMessage(), cause);
+            } else {
+                failure.addSuppressed(cause);
+            }
+        }
+        if (failure == null) {
+            result.complete(outcome);
+        } else {
+            result.completeExceptionally(failure);
+        }
+    }
+
+    @Override
+    public void validate(MIRFormSubmissionRequest formSubmissionRequest) {
+        for (Child child : children) {
+            child.handler().validate(formSubmissionRequest);
+        }
+    }
+
+    @Override
+    public Optional<Long> getMaxAttachmentSize() {
+        long maxSize = Long.MAX_VALUE;
+        for (Child child : children) {
+            final Optional<Long> childMaxSize = child.handler().getMaxAttachmentSize();
+            if (childMaxSize.isPresent()) {
+                maxSize = Math.min(maxSize, childMaxSize.get());
+            }
+        }
+        return maxSize == Long.MAX_VALUE ? Optional.empty() : Optional.of(maxSize);
+    }
+
+    /**
+     * A child handler of the composite.
+     *
+     * @param name the name of the child in the configuration
+     * @param handler the handler
+     * @param required whether the submission fails if the handler fails
+     */
+    public record Child(String name, MIRFormSubmissionHandler handler, boolean required) {
+    }
+
+    /**
+     * Factory class for creating {@link MIRCompositeFormSubmissionHandler} instances from configuration.
+     */
+    public static final class Factory implements Supplier<MIRCompositeFormSubmissionHandler> {
+
+        /**
+         * The child handlers by name.
+         */
+        @MCRInstanceMap(name = "Handlers", valueClass = MIRFormSubmissionHandler.class)
+        public Map<String, MIRFormSubmissionHandler> handlers;
+
+        /**
+         * Optional comma-separated list of the names of children whose failures are only logged.
+         */
+        @MCRProperty(name = "BestEffortHandlers", required = false)
+        public String bestEffortHandlers;
+
+        /**
+         * Optional max number of bytes of a shared attachment kept in memory, defaults to 1048576.
+         */
+        @MCRProperty(name = "SharedMemoryLimit", required = false)
+        public String sharedMemoryLimit;
+
+        @Override
+        public MIRCompositeFormSubmissionHandler get() {
+            final Set<String> bestEffort = Optional.ofNullable(bestEffortHandlers).stream()
+                .flatMap(MCRConfiguration2::splitValue).collect(Collectors.toSet());
+            bestEffort.stream().filter(name -> !handlers.containsKey(name)).findFirst().ifPresent(name -> {
+                throw new MCRConfigurationException("Unknown best-effort form submission handler: " + name);
+            });
+            final List<Child> children = handlers.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> new Child(entry.getKey(), entry.getValue(), !bestEffort.contains(entry.getKey())))
+                .toList();
+            return new MIRCompositeFormSubmissionHandler(children, ExecutorHolder.EXECUTOR,
+                Optional.ofNullable(sharedMemoryLimit).map(Integer::parseInt).orElse(1024 * 1024));
+        }
+    }
+
+    private static final class ExecutorHolder {
+
+        private static final ExecutorService EXECUTOR = createExecutor();
+
+        private static ExecutorService createExecutor() {
+            final AtomicInteger threadCount = new AtomicInteger();
+            final ExecutorService executor = Executors.newFixedThreadPool(
+                MCRConfiguration2.getInt("MIR.MailerWithFileServlet.CompositeHandler.Threads").orElse(4), r -> {
+                    final Thread thread =
+                        new Thread(r, "MIRCompositeFormSubmissionHandler-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            MCRShutdownHandler.getInstance().addCloseable(executor::shutdownNow);
+            return executor;
+        }
+    }
+}
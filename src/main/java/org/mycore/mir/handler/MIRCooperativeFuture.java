@@ -0,0 +1,79 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.handler;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Future of form submission work that is cancelled cooperatively.
+ * <p>
+ * Unlike {@link CompletableFuture#cancel(boolean)}, cancelling only requests the work to stop. The future completes
+ * once the work has actually stopped: exceptionally if it was cancelled in time, with its result if it finished
+ * anyway. A caller waiting for a cancelled future can therefore rely on the attachments no longer being used.
+ *
+ * @param <T> the result type
+ */
+final class MIRCooperativeFuture<T> extends CompletableFuture<T> {
+
+    private final AtomicBoolean cancelRequested = new AtomicBoolean();
+
+    private volatile Runnable canceller = () -> {
+    };
+
+    /**
+     * Sets the action that requests the work to stop, it must be set before the future is handed out.
+     *
+     * @param canceller the action
+     */
+    void onCancel(Runnable canceller) {
+        this.canceller = canceller;
+    }
+
+    /**
+     * Returns whether cancellation was requested.
+     *
+     * @return true if {@link #cancel(boolean)} was called before the future completed
+     */
+    boolean isCancelRequested() {
+        return cancelRequested.get();
+    }
+
+    /**
+     * Requests the work to stop. The future is not completed by this method.
+     *
+     * @param mayInterruptIfRunning ignored, running work is always interrupted
+     * @return false if the future is already completed, true otherwise
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (isDone()) {
+            return false;
+        }
+        if (cancelRequested.compareAndSet(false, true)) {
+            canceller.run();
+        }
+        return true;
+    }
+
+    @Override
+    public <U> CompletableFuture<U> newIncompleteFuture() {
+        return new CompletableFuture<>();
+    }
+}
@@ -18,6 +18,8 @@
 
 package org.mycore.mir.handler;
 
+import java.util.Optional;
+
 /**
  * Handles a form submission request.
  */
@@ -30,4 +32,25 @@ public interface MIRFormSubmissionHandler {
      * @throws MIRFormSubmissionHandlerException if an error occurs during processing
      */
     void handle(MIRFormSubmissionRequest formSubmissionRequest) throws MIRFormSubmissionHandlerException;
+
+    /**
+     * Checks whether the given form submission request can be handled, without handling it. The servlet validates
+     * a submission before it is written to the journal, so invalid submissions are rejected without retaining them.
+     *
+     * @param formSubmissionRequest the form submission to check
+     * @throws MIRFormSubmissionValidationException if the submission is invalid
+     */
+    default void validate(MIRFormSubmissionRequest formSubmissionRequest)
+        throws MIRFormSubmissionValidationException {
+    }
+
+    /**
+     * Returns the maximum total size of all attachments this handler accepts. The servlet uses it to reject
+     * oversized requests before their body is read.
+     *
+     * @return the maximum total size in bytes or an empty optional if the size is not limited
+     */
+    default Optional<Long> getMaxAttachmentSize() {
+        return Optional.empty();
+    }
 }
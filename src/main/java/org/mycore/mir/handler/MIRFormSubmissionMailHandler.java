@@ -18,37 +18,46 @@
 
 package org.mycore.mir.handler;
 
-import java.io.File;
+import static org.mycore.mir.handler.MIRBlockingFormSubmissionHandlerAdapter.supplyAsync;
+
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URI;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Supplier;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-import org.mycore.common.MCRException;
-import org.mycore.common.MCRMailer;
-import org.mycore.common.MCRUtils;
 import org.mycore.common.config.MCRConfiguration2;
 import org.mycore.common.config.MCRConfigurationException;
 import org.mycore.common.config.annotation.MCRConfigurationProxy;
 import org.mycore.common.config.annotation.MCRInstance;
 import org.mycore.common.config.annotation.MCRProperty;
+import org.mycore.mir.MIRContentTypeSniffer;
+import org.mycore.mir.MIRDownloadStore;
+import org.mycore.mir.MIRSubmissionMetrics.Stage;
+import org.mycore.mir.MIRSubmissionTrace;
+import org.mycore.mir.mail.MIRDirectMailDispatcher;
+import org.mycore.mir.mail.MIRMailAttachment;
+import org.mycore.mir.mail.MIRMailDispatcher;
+import org.mycore.mir.mail.MIRMailEnvelope;
+import org.mycore.mir.mail.MIROutboundMail;
 
 /**
- * Implementation of {@link MIRFormSubmissionHandler} that handles form submissions by generating and sending emails.
+ * Implementation of {@link MIRAsyncFormSubmissionHandler} that handles form submissions by generating and sending
+ * emails.
  */
 @MCRConfigurationProxy(proxyClass = MIRFormSubmissionMailHandler.Factory.class)
-public class MIRFormSubmissionMailHandler implements MIRFormSubmissionHandler {
-
-    private static final Logger LOGGER = LogManager.getLogger();
+public class MIRFormSubmissionMailHandler implements MIRAsyncFormSubmissionHandler {
 
     private static final String FIELD_SENDER_NAME = "name";
     private static final String FIELD_SENDER_EMAIL = "mail";
@@ -60,6 +69,8 @@ public class MIRFormSubmissionMailHandler implements MIRFormSubmissionHandler {
     private final MIRMailBodyRenderer bodyRenderer;
     private final List<String> requiredFieldNames;
     private final AttachmentConfig attachmentConfig;
+    private final MIRMailDispatcher dispatcher;
+    private final boolean copyIncludesAttachments;
 
     /**
      * Constructs a MIRFormSubmissionMailHandler.
@@ -73,99 +84,183 @@ public class MIRFormSubmissionMailHandler implements MIRFormSubmissionHandler {
         this.bodyRenderer = config.bodyRenderer;
         this.requiredFieldNames = config.requiredFieldNames;
         this.attachmentConfig = config.attachmentConfig();
+        this.dispatcher = config.dispatcher();
+        this.copyIncludesAttachments = config.copyIncludesAttachments();
     }
 
+    /**
+     * Renders the mail body in memory and stores the attachments sent as download links concurrently, then
+     * dispatches the mail for the recipients and the copy for the sender. Storing a link and dispatching run on their
+     * own virtual threads. Cancelling the returned stage interrupts them, the stage completes once they have ended.
+     */
     @Override
-    public void handle(MIRFormSubmissionRequest formSubmissionRequest) {
+    public CompletionStage<MIRFormSubmissionResult> handleAsync(MIRFormSubmissionRequest formSubmissionRequest) {
         final Map<String, String> fields = formSubmissionRequest.fields();
-        checkFields(fields);
-        final List<Path> tempFiles = new ArrayList<>();
         try {
-            final String body = bodyRenderer.render(formSubmissionRequest);
-            if (!formSubmissionRequest.attachments().isEmpty()) {
-                if (attachmentConfig == null || !attachmentConfig.isEnabled()) {
-                    throw new MIRFormSubmissionHandlerException("Attachments are not allowed");
-                }
-                validateAttachments(formSubmissionRequest.attachments());
-                for (MIRInboundAttachment attachment : formSubmissionRequest.attachments()) {
-                    tempFiles.add(uploadFile(attachmentConfig.uploadPath(), attachment));
+            validate(formSubmissionRequest);
+        } catch (MIRFormSubmissionHandlerException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        final String body;
+        try {
+            body = render(formSubmissionRequest);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(toHandlerException(e));
+        }
+        final List<MIRMailAttachment> attachments = new ArrayList<>();
+        final List<CompletableFuture<MIRDownloadStore.Link>> links = new ArrayList<>();
+        for (MIRInboundAttachment attachment : formSubmissionRequest.attachments()) {
+            if (attachmentConfig.isLinked(attachment)) {
+                links.add(supplyAsync(() -> storeDownload(attachment)));
+            } else {
+                attachments.add(new InboundMailAttachment(attachment));
+            }
+        }
+        final MIRCooperativeFuture<MIRFormSubmissionResult> result = new MIRCooperativeFuture<>();
+        final List<CompletableFuture<?>> tasks = new CopyOnWriteArrayList<>();
+        result.onCancel(() -> tasks.forEach(task -> task.cancel(true)));
+        tasks.addAll(links);
+        CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).whenComplete((done, e) -> {
+            if (e != null || result.isCancelRequested()) {
+                links.forEach(link -> link.thenAccept(MIRFormSubmissionMailHandler::deleteDownload));
+                result.completeExceptionally(toHandlerException(e));
+                return;
+            }
+            final List<MIRDownloadStore.Link> storedLinks = links.stream().map(CompletableFuture::join).toList();
+            final CompletableFuture<MIRFormSubmissionResult> dispatch =
+                supplyAsync(() -> dispatch(fields, body, storedLinks, attachments));
+            tasks.add(dispatch);
+            dispatch.whenComplete((dispatchResult, dispatchError) -> {
+                if (dispatchError == null) {
+                    result.complete(dispatchResult);
+                } else {
+                    result.completeExceptionally(toHandlerException(dispatchError));
                 }
+            });
+            if (result.isCancelRequested()) {
+                dispatch.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Checks the required fields, the sender and the attachments of the given submission.
+     */
+    @Override
+    public void validate(MIRFormSubmissionRequest formSubmissionRequest) {
+        final Map<String, String> fields = formSubmissionRequest.fields();
+        checkFields(fields);
+        if (resolveSendCopy(fields) && resolveFormSender(fields).isEmpty()) {
+            throw new MIRFormSubmissionValidationException("No sender found, check form");
+        }
+        checkAttachments(formSubmissionRequest.attachments());
+    }
+
+    private void checkAttachments(List<MIRInboundAttachment> attachments) {
+        if (!attachments.isEmpty()) {
+            if (attachmentConfig == null || !attachmentConfig.isEnabled()) {
+                throw new MIRFormSubmissionValidationException("Attachments are not allowed");
+            }
+            attachmentConfig.validate(attachments);
+        }
+    }
+
+    private String render(MIRFormSubmissionRequest formSubmissionRequest) {
+        final long renderStart = System.nanoTime();
+        try {
+            return bodyRenderer.render(formSubmissionRequest);
+        } finally {
+            MIRSubmissionTrace.record(Stage.RENDER, renderStart);
+        }
+    }
+
+    /**
+     * Dispatches the mail. The stored download links are deleted if the mail is not dispatched.
+     */
+    private MIRFormSubmissionResult dispatch(Map<String, String> fields, String body,
+        List<MIRDownloadStore.Link> links, List<MIRMailAttachment> attachments) {
+        boolean dispatched = false;
+        try {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new MIRFormSubmissionHandlerException("Submission was cancelled");
             }
-            final List<String> parts = tempFiles.stream().map(Path::toUri).map(URI::toString).toList();
             final Optional<String> optFormSender = resolveFormSender(fields);
             final boolean sendCopy = resolveSendCopy(fields);
-            if (sendCopy && optFormSender.isEmpty()) {
-                throw new MIRFormSubmissionHandlerException("No sender found, check form");
+            final List<String> replyTo = optFormSender.map(List::of).orElseGet(List::of);
+            final List<MIRMailEnvelope> envelopes = new ArrayList<>();
+            envelopes.add(new MIRMailEnvelope(replyTo, recipients, true));
+            if (sendCopy) {
+                envelopes.add(new MIRMailEnvelope(List.of(), replyTo, copyIncludesAttachments));
             }
-            if (optFormSender.isPresent()) {
-                MCRMailer.send(sender, List.of(optFormSender.get()), recipients, null, subject, body, parts);
-                if (sendCopy) {
-                    MCRMailer.send(sender, optFormSender.get(), subject, body);
-                }
-            } else {
-                MCRMailer.send(sender, recipients, subject, body, false);
+            final long dispatchStart = System.nanoTime();
+            try {
+                dispatcher.dispatch(new MIROutboundMail(sender, envelopes, subject,
+                    links.isEmpty() ? body : body + formatLinks(links), attachments));
+            } finally {
+                MIRSubmissionTrace.record(Stage.DISPATCH, dispatchStart);
             }
-        } catch (IOException e) {
-            throw new MIRFormSubmissionHandlerException("Failed to send mail: error handling attachments", e);
-        } catch (MCRException e) {
-            throw new MIRFormSubmissionHandlerException("Failed to send mail: " + e.getMessage(), e);
+            dispatched = true;
+            return dispatcher.isDeferred() ? MIRFormSubmissionResult.ACCEPTED : MIRFormSubmissionResult.COMPLETED;
         } finally {
-            tempFiles.forEach(tempFile -> {
-                try {
-                    Files.deleteIfExists(tempFile);
-                } catch (IOException e) {
-                    LOGGER.warn("Failed to delete temporary file {}", tempFile, e);
-                }
-            });
+            if (!dispatched) {
+                links.forEach(MIRFormSubmissionMailHandler::deleteDownload);
+            }
         }
     }
 
-    private void validateAttachments(List<MIRInboundAttachment> attachments) {
-        final Integer minCount = attachmentConfig.minCount;
-        if (minCount != null && attachments.size() < minCount) {
-            throw new MIRFormSubmissionHandlerException("Not enough attachments: min allowed is " + minCount);
+    private static MIRFormSubmissionHandlerException toHandlerException(Throwable e) {
+        final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof MIRFormSubmissionHandlerException handlerException) {
+            return handlerException;
         }
-        final Integer maxCount = attachmentConfig.maxCount();
-        if (maxCount != null && attachments.size() > maxCount) {
-            throw new MIRFormSubmissionHandlerException("Too many attachments: max allowed is " + maxCount);
+        if (cause instanceof CancellationException || cause == null) {
+            return new MIRFormSubmissionHandlerException("Submission was cancelled", cause);
         }
-        long totalSize = 0;
-        final Long maxFileSize = attachmentConfig.maxFileSize();
-        final Long maxTotalSize = attachmentConfig.maxTotalSize();
-        for (MIRInboundAttachment attachment : attachments) {
-            final long size = attachment.size();
-            if (maxFileSize != null && size > maxFileSize) {
-                throw new MIRFormSubmissionHandlerException(
-                    "Attachment " + attachment.filename() + " exceeds max file size of " + maxFileSize + " bytes"
-                );
+        return new MIRFormSubmissionHandlerException("Failed to send mail: " + cause.getMessage(), cause);
+    }
+
+    private static void deleteDownload(MIRDownloadStore.Link link) {
+        MIRDownloadStore.getInstance().delete(link.id());
+    }
+
+    private static MIRDownloadStore.Link storeDownload(MIRInboundAttachment attachment) {
+        try {
+            final MIRDownloadStore.Link link = MIRDownloadStore.getInstance().store(attachment);
+            if (Thread.currentThread().isInterrupted()) {
+                deleteDownload(link);
+                throw new MIRFormSubmissionHandlerException("Submission was cancelled");
             }
-            totalSize += size;
-        }
-        if (maxTotalSize != null && totalSize > maxTotalSize) {
-            throw new MIRFormSubmissionHandlerException(
-                "Total attachment size exceeds max allowed of " + maxTotalSize + " bytes");
+            return link;
+        } catch (IOException e) {
+            throw new MIRFormSubmissionHandlerException("Failed to store attachment " + attachment.filename(), e);
         }
     }
 
-    private Path uploadFile(String uploadPath, MIRInboundAttachment attachment) throws IOException {
-        final Path uploads = new File(uploadPath).toPath();
-        final String filename = attachment.filename();
-        if (filename.isBlank() || filename.length() > 255) {
-            throw new IllegalArgumentException("Invalid file name");
+    private static String formatLinks(List<MIRDownloadStore.Link> links) {
+        final StringBuilder text = new StringBuilder("\n\nDownloads (available until ")
+            .append(DateTimeFormatter.ISO_LOCAL_DATE.format(links.getFirst().expires().atOffset(ZoneOffset.UTC)))
+            .append("):\n");
+        for (MIRDownloadStore.Link link : links) {
+            text.append("- ").append(link.filename()).append(" (").append(link.size()).append(" bytes)\n  ")
+                .append(link.url()).append('\n');
         }
-        final Path tempFile = MCRUtils.safeResolve(uploads, filename);
-        LOGGER.debug("Uploading file {} to {}", filename, tempFile);
-        try (InputStream fileContent = attachment.openStream()) {
-            Files.copy(fileContent, tempFile);
+        return text.toString();
+    }
+
+    @Override
+    public Optional<Long> getMaxAttachmentSize() {
+        if (attachmentConfig == null) {
+            return Optional.of(0L);
         }
-        return tempFile;
+        return attachmentConfig.getMaxTotalSize();
     }
 
     private void checkFields(Map<String, String> fields) {
         for (String name : requiredFieldNames) {
             String value = fields.get(name);
             if (value == null || value.isBlank()) {
-                throw new MIRFormSubmissionHandlerException("Missing required field: " + name);
+                throw new MIRFormSubmissionValidationException("Missing required field: " + name);
             }
         }
     }
@@ -188,17 +283,51 @@ public class MIRFormSubmissionMailHandler implements MIRFormSubmissionHandler {
         return Optional.ofNullable(fields.get(FIELD_COPY)).map(Boolean::valueOf).orElse(false);
     }
 
+    /**
+     * Adapts an {@link MIRInboundAttachment} for delivery, so it is streamed into the mail without an extra copy.
+     *
+     * @param attachment the inbound attachment
+     */
+    private record InboundMailAttachment(MIRInboundAttachment attachment) implements MIRMailAttachment {
+
+        @Override
+        public String filename() {
+            return attachment.filename();
+        }
+
+        @Override
+        public String contentType() {
+            return attachment.contentType();
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return attachment.openStream();
+        }
+
+        @Override
+        public void moveTo(Path target) throws IOException {
+            attachment.transferTo(target);
+        }
+
+        @Override
+        public void discard() {
+            // the inbound attachment is owned by the request
+        }
+    }
+
      /**
      * Configuration for handling attachments in a form submission.
      *
-     * @param uploadPath path where attachments should be uploaded
      * @param minCount optional minimum number of attachments allowed
      * @param maxCount optional maximum number of attachments allowed
      * @param maxFileSize optional maximum size of a single attachment in bytes
      * @param maxTotalSize optional maximum total size of all attachments in bytes
+     * @param linkThreshold optional size in bytes from which attachments are sent as download links
+     * @param allowedTypes optional content types allowed for attachments, {@code type/*} matches all subtypes
      */
-    public record AttachmentConfig(String uploadPath, Integer minCount, Integer maxCount, Long maxFileSize,
-         Long maxTotalSize) {
+    public record AttachmentConfig(Integer minCount, Integer maxCount, Long maxFileSize, Long maxTotalSize,
+        Long linkThreshold, List<String> allowedTypes) {
 
          /**
           * Returns whether attachments are enabled.
@@ -208,6 +337,86 @@ public class MIRFormSubmissionMailHandler implements MIRFormSubmissionHandler {
         public boolean isEnabled() {
             return maxCount == null || maxCount > 0;
         }
+
+        /**
+         * Returns the maximum total size of all attachments, derived from the count and size limits if no total
+         * size is configured.
+         *
+         * @return the maximum total size in bytes or an empty optional if the size is not limited
+         */
+        public Optional<Long> getMaxTotalSize() {
+            if (!isEnabled()) {
+                return Optional.of(0L);
+            }
+            if (maxTotalSize != null) {
+                return Optional.of(maxTotalSize);
+            }
+            if (maxCount != null && maxFileSize != null) {
+                return Optional.of(maxFileSize > Long.MAX_VALUE / maxCount ? Long.MAX_VALUE : maxCount * maxFileSize);
+            }
+            return Optional.empty();
+        }
+
+        /**
+         * Returns whether the given attachment is sent as download link instead of being attached to the mail.
+         *
+         * @param attachment the attachment
+         * @return true if the attachment reaches the link threshold
+         */
+        public boolean isLinked(MIRInboundAttachment attachment) {
+            return linkThreshold != null && attachment.size() >= linkThreshold;
+        }
+
+        /**
+         * Validates the count, sizes and content types of the given attachments. The content type detected from
+         * the content is checked, not the one declared by the client: executables are rejected unless their type
+         * is explicitly allowed.
+         *
+         * @param attachments the attachments
+         * @throws MIRFormSubmissionValidationException if a limit is exceeded or a content type is not allowed
+         */
+        public void validate(List<MIRInboundAttachment> attachments) {
+            if (minCount != null && attachments.size() < minCount) {
+                throw new MIRFormSubmissionValidationException("Not enough attachments: min allowed is " + minCount);
+            }
+            if (maxCount != null && attachments.size() > maxCount) {
+                throw new MIRFormSubmissionValidationException("Too many attachments: max allowed is " + maxCount);
+            }
+            long totalSize = 0;
+            for (MIRInboundAttachment attachment : attachments) {
+                final long size = attachment.size();
+                if (maxFileSize != null && size > maxFileSize) {
+                    throw new MIRFormSubmissionValidationException(
+                        "Attachment " + attachment.filename() + " exceeds max file size of " + maxFileSize + " bytes"
+                    );
+                }
+                validateType(attachment);
+                totalSize += size;
+            }
+            if (maxTotalSize != null && totalSize > maxTotalSize) {
+                throw new MIRFormSubmissionValidationException(
+                    "Total attachment size exceeds max allowed of " + maxTotalSize + " bytes");
+            }
+        }
+
+        private void validateType(MIRInboundAttachment attachment) {
+            final String detectedType = attachment.detectedContentType().orElse(null);
+            if (MIRContentTypeSniffer.isExecutable(detectedType)
+                && (allowedTypes == null || !allowedTypes.contains(detectedType))) {
+                throw new MIRFormSubmissionValidationException(
+                    "Attachment " + attachment.filename() + " is an executable of type " + detectedType);
+            }
+            if (allowedTypes == null || allowedTypes.isEmpty()) {
+                return;
+            }
+            final String type = MIRContentTypeSniffer.getEffectiveType(attachment.contentType(), detectedType);
+            final boolean allowed = allowedTypes.stream().anyMatch(pattern -> pattern.endsWith("/*")
+                ? type.startsWith(pattern.substring(0, pattern.length() - 1)) : type.equals(pattern));
+            if (!allowed) {
+                throw new MIRFormSubmissionValidationException(
+                    "Attachment " + attachment.filename() + " has the content type " + type + " which is not allowed");
+            }
+        }
     }
 
     /**
@@ -219,9 +428,12 @@ public class MIRFormSubmissionMailHandler implements MIRFormSubmissionHandler {
      * @param bodyRenderer renderer responsible for creating the email body from the submitted form data
      * @param requiredFieldNames field names that must be present in the form submission
      * @param attachmentConfig attachment config for submission
+     * @param dispatcher dispatcher used to deliver the mails
+     * @param copyIncludesAttachments whether the copy for the sender includes the attachments
      */
     public record FormSubmissionHandlerConfig(String sender, List<String> recipients, String subject,
-        MIRMailBodyRenderer bodyRenderer, List<String> requiredFieldNames, AttachmentConfig attachmentConfig) {
+        MIRMailBodyRenderer bodyRenderer, List<String> requiredFieldNames, AttachmentConfig attachmentConfig,
+        MIRMailDispatcher dispatcher, boolean copyIncludesAttachments) {
     }
 
     /**
@@ -259,12 +471,6 @@ public class MIRFormSubmissionMailHandler implements MIRFormSubmissionHandler {
         @MCRProperty(name = "RequiredFieldNames", required = false)
         public String requiredFieldNamesString;
 
-        /**
-         * Path for attachment uploads.
-         */
-        @MCRProperty(name = "Attachment.UploadPath", required = false)
-        public String uploadPath;
-
         /**
          * Optional maximum total size of all attachments in bytes.
          */
@@ -289,6 +495,30 @@ public class MIRFormSubmissionMailHandler implements MIRFormSubmissionHandler {
         @MCRProperty(name = "Attachment.MaxTotalSize", required = false)
         public String maxTotalSize;
 
+        /**
+         * Optional size in bytes from which attachments are sent as download links.
+         */
+        @MCRProperty(name = "Attachment.LinkThreshold", required = false)
+        public String linkThreshold;
+
+        /**
+         * Optional comma-separated list of content types allowed for attachments, e.g. {@code application/pdf,image/*}.
+         */
+        @MCRProperty(name = "Attachment.AllowedTypes", required = false)
+        public String allowedTypes;
+
+        /**
+         * Optional dispatcher used to deliver the mails, mails are sent synchronously if not set.
+         */
+        @MCRInstance(name = "Dispatcher", valueClass = MIRMailDispatcher.class, required = false)
+        public MIRMailDispatcher dispatcher;
+
+        /**
+         * Optional flag whether the copy for the sender includes the attachments, defaults to false.
+         */
+        @MCRProperty(name = "Copy.IncludeAttachments", required = false)
+        public String copyIncludeAttachments;
+
         @Override
         public MIRFormSubmissionMailHandler get() {
             final List<String> requiredFieldNames =
@@ -297,7 +527,9 @@ public class MIRFormSubmissionMailHandler implements MIRFormSubmissionHandler {
             final List<String> recipients =
                 Optional.of(recipientsString).stream().flatMap(MCRConfiguration2::splitValue).toList();
             final FormSubmissionHandlerConfig config = new FormSubmissionHandlerConfig(sender, recipients, subject,
-                bodyRenderer, requiredFieldNames, getAttachmentConfig());
+                bodyRenderer, requiredFieldNames, getAttachmentConfig(),
+                Optional.ofNullable(dispatcher).orElseGet(MIRDirectMailDispatcher::new),
+                Boolean.parseBoolean(copyIncludeAttachments));
             return new MIRFormSubmissionMailHandler(config);
         }
 
@@ -313,12 +545,14 @@ public class MIRFormSubmissionMailHandler implements MIRFormSubmissionHandler {
                 && attachmentMaxFileSize > attachmentMaxTotalSize) {
                 throw new MCRConfigurationException("Attachments max file size can't be greater than max total size");
             }
-            if (uploadPath == null && (attachmentMaxFileSize != null || attachmentMaxTotalSize != null
-                || attachmentMinCount != null || attachmentMaxCount != null)) {
-                throw new MCRConfigurationException("Attachments upload is required");
+            final Long attachmentLinkThreshold = Optional.ofNullable(linkThreshold).map(Long::valueOf).orElse(null);
+            if (attachmentLinkThreshold != null && !MIRDownloadStore.isEnabled()) {
+                throw new MCRConfigurationException("Attachments link threshold requires a download storage path");
             }
-            return new AttachmentConfig(uploadPath, attachmentMinCount, attachmentMaxCount, attachmentMaxFileSize,
-                attachmentMaxTotalSize);
+            final List<String> attachmentAllowedTypes = Optional.ofNullable(allowedTypes).stream()
+                .flatMap(MCRConfiguration2::splitValue).map(type -> type.toLowerCase(Locale.ROOT)).distinct().toList();
+            return new AttachmentConfig(attachmentMinCount, attachmentMaxCount, attachmentMaxFileSize,
+                attachmentMaxTotalSize, attachmentLinkThreshold, attachmentAllowedTypes);
         }
     }
 }
@@ -0,0 +1,41 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.handler;
+
+import java.io.Serial;
+
+/**
+ * Exception thrown by implementations of {@link MIRFormSubmissionHandler} when a form submission is invalid, e.g.
+ * because a required field is missing or an attachment is not allowed. Unlike other failures, resending the same
+ * submission cannot succeed.
+ */
+public class MIRFormSubmissionValidationException extends MIRFormSubmissionHandlerException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a new {@code MIRFormSubmissionValidationException} with the specified detail message.
+     *
+     * @param message a descriptive message explaining why the submission is invalid
+     */
+    public MIRFormSubmissionValidationException(String message) {
+        super(message);
+    }
+}
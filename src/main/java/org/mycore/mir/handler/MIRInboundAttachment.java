@@ -20,6 +20,9 @@ package org.mycore.mir.handler;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
 
 /**
  * Represents a file attachment submitted as part of a form submission.
@@ -40,6 +43,34 @@ public interface MIRInboundAttachment {
      */
     long size();
 
+    /**
+     * Returns the MIME type of the attachment.
+     *
+     * @return the content type, defaults to {@code application/octet-stream}
+     */
+    default String contentType() {
+        return "application/octet-stream";
+    }
+
+    /**
+     * Returns the hex encoded SHA-256 checksum of the attachment, if it is known.
+     *
+     * @return the checksum
+     */
+    default Optional<String> checksum() {
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the content type detected from the content of the attachment, if it is known. Unlike
+     * {@link #contentType()}, it does not depend on what the client declared.
+     *
+     * @return the detected content type
+     */
+    default Optional<String> detectedContentType() {
+        return Optional.empty();
+    }
+
     /**
      * Returns an {@link InputStream} to read the content of the attachment.
      *
@@ -47,4 +78,18 @@ public interface MIRInboundAttachment {
      * @throws IOException if an I/O error occurs while opening the stream
      */
     InputStream openStream() throws IOException;
+
+    /**
+     * Writes the content of the attachment to the given file.
+     * <p>
+     * Implementations backed by a file should override this method to move the file instead of copying it.
+     *
+     * @param target the target file, must not exist
+     * @throws IOException if an I/O error occurs
+     */
+    default void transferTo(Path target) throws IOException {
+        try (InputStream in = openStream()) {
+            Files.copy(in, target);
+        }
+    }
 }
@@ -18,6 +18,9 @@
 
 package org.mycore.mir.handler;
 
+import java.io.IOException;
+import java.io.Writer;
+
 /**
  * Renders a mail body based on a form submission.
  * <p>
@@ -34,4 +37,16 @@ public interface MIRMailBodyRenderer {
      * @throws MIRMailBodyRenderingException if rendering fails
      */
     String render(MIRFormSubmissionRequest request);
+
+    /**
+     * Renders the mail body using the given form submission data to the given writer.
+     *
+     * @param request the form submission containing all data required to render the mail body
+     * @param writer the writer the mail body is written to
+     * @throws IOException if writing fails
+     * @throws MIRMailBodyRenderingException if rendering fails
+     */
+    default void render(MIRFormSubmissionRequest request, Writer writer) throws IOException {
+        writer.write(render(request));
+    }
 }
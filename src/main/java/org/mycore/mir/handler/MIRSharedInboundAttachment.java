@@ -0,0 +1,219 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * {@link MIRInboundAttachment} that reads another attachment once and serves its content to several readers.
+ * <p>
+ * Each stream opened by {@link #openStream()} starts at the beginning. Whichever reader needs bytes that were not
+ * read yet reads the next chunk from the source and appends it to a buffer the other readers catch up from, so no
+ * reader waits for another one. The buffer is kept in memory up to a limit and spilled to a temporary file beyond
+ * it, which is deleted on {@link #close()}. {@link #transferTo(Path)} copies the content, so that the source stays
+ * available to the other readers.
+ */
+final class MIRSharedInboundAttachment implements MIRInboundAttachment, AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final MIRInboundAttachment source;
+
+    private final int memoryLimit;
+
+    private InputStream sourceIn;
+
+    private boolean complete;
+
+    private boolean closed;
+
+    private byte[] memory = new byte[0];
+
+    private long length;
+
+    private Path file;
+
+    private FileChannel fileChannel;
+
+    /**
+     * Constructs a shared attachment.
+     *
+     * @param source the attachment to share
+     * @param memoryLimit the max number of bytes kept in memory
+     */
+    MIRSharedInboundAttachment(MIRInboundAttachment source, int memoryLimit) {
+        this.source = source;
+        this.memoryLimit = memoryLimit;
+    }
+
+    @Override
+    public String filename() {
+        return source.filename();
+    }
+
+    @Override
+    public long size() {
+        return source.size();
+    }
+
+    @Override
+    public String contentType() {
+        return source.contentType();
+    }
+
+    @Override
+    public Optional<String> checksum() {
+        return source.checksum();
+    }
+
+    @Override
+    public Optional<String> detectedContentType() {
+        return source.detectedContentType();
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        synchronized (this) {
+            checkOpen();
+        }
+        return new SharedInputStream();
+    }
+
+    /**
+     * Closes the source stream and deletes the buffer. Open streams fail afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        memory = null;
+        try {
+            if (sourceIn != null) {
+                sourceIn.close();
+            }
+            if (fileChannel != null) {
+                fileChannel.close();
+            }
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to release shared attachment {}", source.filename(), e);
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Shared attachment " + source.filename() + " is closed");
+        }
+    }
+
+    /**
+     * Makes sure that the byte at the given position is buffered, reading the next chunk from the source if needed.
+     *
+     * @return the number of buffered bytes, not more than the position if the source is exhausted
+     */
+    private synchronized long fill(long position) throws IOException {
+        checkOpen();
+        if (position < length || complete) {
+            return length;
+        }
+        if (sourceIn == null) {
+            sourceIn = source.openStream();
+        }
+        final byte[] chunk = sourceIn.readNBytes(CHUNK_SIZE);
+        if (chunk.length == 0) {
+            complete = true;
+            sourceIn.close();
+            sourceIn = null;
+            return length;
+        }
+        if (fileChannel == null && length + chunk.length > memoryLimit) {
+            file = Files.createTempFile("mir-shared-", ".tmp");
+            fileChannel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            fileChannel.write(ByteBuffer.wrap(memory, 0, (int) length));
+            memory = null;
+        }
+        if (fileChannel == null) {
+            if (length + chunk.length > memory.length) {
+                memory = Arrays.copyOf(memory,
+                    (int) Math.min(memoryLimit, Math.max(length + chunk.length, 2 * (long) memory.length)));
+            }
+            System.arraycopy(chunk, 0, memory, (int) length, chunk.length);
+        } else {
+            final ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            while (buffer.hasRemaining()) {
+                fileChannel.write(buffer, length + buffer.position());
+            }
+        }
+        length += chunk.length;
+        return length;
+    }
+
+    private synchronized int readBuffered(long position, byte[] b, int off, int len) throws IOException {
+        checkOpen();
+        final int n = (int) Math.min(len, length - position);
+        if (fileChannel == null) {
+            System.arraycopy(memory, (int) position, b, off, n);
+            return n;
+        }
+        return fileChannel.read(ByteBuffer.wrap(b, off, n), position);
+    }
+
+    /**
+     * Stream over the shared buffer with its own position.
+     */
+    private final class SharedInputStream extends InputStream {
+
+        private long position;
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) {
+                return 0;
+            }
+            if (fill(position) <= position) {
+                return -1;
+            }
+            final int n = readBuffered(position, b, off, len);
+            position += n;
+            return n;
+        }
+    }
+}
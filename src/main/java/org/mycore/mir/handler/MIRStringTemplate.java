@@ -0,0 +1,153 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.handler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A string template with <code>{{field}}</code> placeholders, parsed once into literal and field segments.
+ * <p>
+ * Rendering only concatenates the segments, unknown fields are rendered as empty strings.
+ */
+public final class MIRStringTemplate {
+
+    private static final String PLACEHOLDER_START = "{{";
+
+    private static final String PLACEHOLDER_END = "}}";
+
+    private final String[] literals;
+
+    private final String[] fieldNames;
+
+    private final int literalLength;
+
+    private MIRStringTemplate(String[] literals, String[] fieldNames) {
+        this.literals = literals;
+        this.fieldNames = fieldNames;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Parses the given template.
+     *
+     * @param template the template
+     * @return the compiled template
+     */
+    public static MIRStringTemplate compile(String template) {
+        final List<String> literals = new ArrayList<>();
+        final List<String> fieldNames = new ArrayList<>();
+        int literalStart = 0;
+        int start = template.indexOf(PLACEHOLDER_START);
+        while (start >= 0) {
+            final int nameStart = start + PLACEHOLDER_START.length();
+            final int end = template.indexOf(PLACEHOLDER_END, nameStart + 1);
+            if (end < 0) {
+                break;
+            }
+            if (isSingleLine(template, nameStart, end)) {
+                literals.add(template.substring(literalStart, start));
+                fieldNames.add(template.substring(nameStart, end));
+                literalStart = end + PLACEHOLDER_END.length();
+                start = template.indexOf(PLACEHOLDER_START, literalStart);
+            } else {
+                start = template.indexOf(PLACEHOLDER_START, start + 1);
+            }
+        }
+        literals.add(template.substring(literalStart));
+        return new MIRStringTemplate(literals.toArray(String[]::new), fieldNames.toArray(String[]::new));
+    }
+
+    private static boolean isSingleLine(String template, int start, int end) {
+        for (int i = start; i < end; i++) {
+            switch (template.charAt(i)) {
+                case '\n', '\r', '\u0085', '\u2028', '\u2029' -> {
+                    return false;
+                }
+                default -> {
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the template contains a placeholder for the given field.
+     *
+     * @param name the field name
+     * @return true if the field is used by the template
+     */
+    public boolean containsField(String name) {
+        for (String fieldName : fieldNames) {
+            if (fieldName.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Renders the template with the given field values.
+     *
+     * @param fields the field values
+     * @return the rendered template
+     */
+    public String render(Map<String, String> fields) {
+        final String[] values = resolve(fields);
+        int length = literalLength;
+        for (String value : values) {
+            length += value.length();
+        }
+        final StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < values.length; i++) {
+            sb.append(literals[i]).append(values[i]);
+        }
+        return sb.append(literals[values.length]).toString();
+    }
+
+    /**
+     * Renders the template with the given field values to the given writer.
+     *
+     * @param fields the field values
+     * @param writer the writer
+     * @throws IOException if writing fails
+     */
+    public void render(Map<String, String> fields, Writer writer) throws IOException {
+        for (int i = 0; i < fieldNames.length; i++) {
+            writer.write(literals[i]);
+            writer.write(fields.getOrDefault(fieldNames[i], ""));
+        }
+        writer.write(literals[fieldNames.length]);
+    }
+
+    private String[] resolve(Map<String, String> fields) {
+        final String[] values = new String[fieldNames.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = fields.getOrDefault(fieldNames[i], "");
+        }
+        return values;
+    }
+}
@@ -19,26 +19,27 @@
 package org.mycore.mir.handler;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
 import java.util.function.Supplier;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import org.mycore.common.config.MCRConfigurationException;
 import org.mycore.common.config.annotation.MCRConfigurationProxy;
 import org.mycore.common.config.annotation.MCRProperty;
-import org.mycore.resource.MCRResourceHelper;
 
 /**
  * Implementation of {@link MIRMailBodyRenderer} that renders a mail body from a string template.
+ * <p>
+ * The placeholder {@code {{attachments}}} is replaced by a list of the submitted attachments with their size, the
+ * content type detected from their content and their SHA-256 checksum. A form field of the same name is ignored.
  */
 @MCRConfigurationProxy(proxyClass = MIRStringTemplateMailBodyRenderer.Factory.class)
 public class MIRStringTemplateMailBodyRenderer implements MIRMailBodyRenderer {
 
-    private static final Pattern PATTERN = Pattern.compile("\\{\\{(.+?)\\}\\}");
+    private static final String ATTACHMENTS_FIELD = "attachments";
 
-    private final String template;
+    private final Supplier<MIRStringTemplate> template;
 
     /**
      * Creates a new body renderer with the given template.
@@ -46,20 +47,53 @@ public class MIRStringTemplateMailBodyRenderer implements MIRMailBodyRenderer {
      * @param template the template to use
      */
     public MIRStringTemplateMailBodyRenderer(String template) {
+        final MIRStringTemplate compiledTemplate = MIRStringTemplate.compile(template);
+        this.template = () -> compiledTemplate;
+    }
+
+    /**
+     * Creates a new body renderer that renders the template returned by the given supplier.
+     *
+     * @param template supplier of the current template
+     */
+    public MIRStringTemplateMailBodyRenderer(Supplier<MIRStringTemplate> template) {
         this.template = template;
     }
 
     @Override
     public String render(MIRFormSubmissionRequest request) {
-        final Matcher matcher = PATTERN.matcher(template);
-        final StringBuilder sb = new StringBuilder();
-        while (matcher.find()) {
-            String key = matcher.group(1);
-            String replacement = request.fields().getOrDefault(key, "");
-            matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+        final MIRStringTemplate currentTemplate = template.get();
+        return currentTemplate.render(getFields(currentTemplate, request));
+    }
+
+    @Override
+    public void render(MIRFormSubmissionRequest request, Writer writer) throws IOException {
+        final MIRStringTemplate currentTemplate = template.get();
+        currentTemplate.render(getFields(currentTemplate, request), writer);
+    }
+
+    private static Map<String, String> getFields(MIRStringTemplate template, MIRFormSubmissionRequest request) {
+        if (!template.containsField(ATTACHMENTS_FIELD)) {
+            return request.fields();
+        }
+        final Map<String, String> fields = new LinkedHashMap<>(request.fields());
+        fields.put(ATTACHMENTS_FIELD, formatAttachments(request));
+        return fields;
+    }
+
+    private static String formatAttachments(MIRFormSubmissionRequest request) {
+        if (request.attachments() == null || request.attachments().isEmpty()) {
+            return "";
+        }
+        final StringBuilder text = new StringBuilder();
+        for (MIRInboundAttachment attachment : request.attachments()) {
+            text.append("- ").append(attachment.filename()).append(" (").append(attachment.size()).append(" bytes, ")
+                .append(attachment.detectedContentType().or(() -> Optional.ofNullable(attachment.contentType()))
+                    .orElse("application/octet-stream"));
+            attachment.checksum().ifPresent(checksum -> text.append(", SHA-256 ").append(checksum));
+            text.append(")\n");
         }
-        matcher.appendTail(sb);
-        return sb.toString();
+        return text.toString();
     }
 
     /**
@@ -75,15 +109,7 @@ public class MIRStringTemplateMailBodyRenderer implements MIRMailBodyRenderer {
 
         @Override
         public MIRStringTemplateMailBodyRenderer get() {
-            try (InputStream in = MCRResourceHelper.getResourceAsStream(templatePath)) {
-                if (in == null) {
-                    throw new MCRConfigurationException("Template not found: " + templatePath);
-                }
-                String template = new String(in.readAllBytes(), StandardCharsets.UTF_8);
-                return new MIRStringTemplateMailBodyRenderer(template);
-            } catch (IOException e) {
-                throw new MCRConfigurationException("Error instantiating MIRStringTemplateMailBodyRenderer", e);
-            }
+            return new MIRStringTemplateMailBodyRenderer(MIRTemplateCache.get(templatePath));
         }
     }
 }
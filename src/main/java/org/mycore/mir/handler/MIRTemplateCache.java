@@ -0,0 +1,115 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.common.config.MCRConfigurationException;
+import org.mycore.mir.MIRFileWatcher;
+import org.mycore.resource.MCRResourceHelper;
+
+/**
+ * Cache of compiled {@link MIRStringTemplate} instances keyed by resource path.
+ * <p>
+ * Templates resolved to a file are watched for changes. A change only marks the cached template as stale, the
+ * template is reloaded by the next render. While one thread reloads a template, other threads keep rendering with
+ * the previous version, so rendering never waits for a reload.
+ */
+public final class MIRTemplateCache {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final Map<String, CachedTemplate> TEMPLATES = new ConcurrentHashMap<>();
+
+    private MIRTemplateCache() {}
+
+    /**
+     * Returns a supplier of the current compiled template for the given resource path.
+     *
+     * @param templatePath the resource path of the template
+     * @return a supplier that always returns the most recent version of the template
+     * @throws MCRConfigurationException if the template cannot be loaded
+     */
+    public static Supplier<MIRStringTemplate> get(String templatePath) {
+        return TEMPLATES.computeIfAbsent(templatePath, CachedTemplate::new);
+    }
+
+    private static MIRStringTemplate load(String templatePath) {
+        try (InputStream in = MCRResourceHelper.getResourceAsStream(templatePath)) {
+            if (in == null) {
+                throw new MCRConfigurationException("Template not found: " + templatePath);
+            }
+            return MIRStringTemplate.compile(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new MCRConfigurationException("Error loading template " + templatePath, e);
+        }
+    }
+
+    private static final class CachedTemplate implements Supplier<MIRStringTemplate> {
+
+        private final String templatePath;
+
+        private final AtomicBoolean stale = new AtomicBoolean();
+
+        private volatile MIRStringTemplate template;
+
+        CachedTemplate(String templatePath) {
+            this.templatePath = templatePath;
+            this.template = load(templatePath);
+            watch();
+        }
+
+        private void watch() {
+            final URL url = MCRResourceHelper.getResourceUrl(templatePath);
+            if (url == null || !"file".equals(url.getProtocol())) {
+                LOGGER.debug("Template {} is not a file, changes will not be detected", templatePath);
+                return;
+            }
+            try {
+                MIRFileWatcher.watch(Path.of(url.toURI()), () -> stale.set(true));
+            } catch (IOException | URISyntaxException e) {
+                LOGGER.warn("Could not watch template {}, changes will not be detected", templatePath, e);
+            }
+        }
+
+        @Override
+        public MIRStringTemplate get() {
+            if (stale.compareAndSet(true, false)) {
+                try {
+                    template = load(templatePath);
+                    LOGGER.info("Reloaded template {}", templatePath);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Could not reload template {}, keeping previous version", templatePath, e);
+                }
+            }
+            return template;
+        }
+    }
+}
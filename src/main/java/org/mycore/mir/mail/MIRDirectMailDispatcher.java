@@ -0,0 +1,107 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.mail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import jakarta.mail.MessagingException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.common.config.MCRConfiguration2;
+
+/**
+ * Implementation of {@link MIRMailDispatcher} that sends mails synchronously on the calling thread.
+ * <p>
+ * Like {@code MCRMailer}, a failed mail is sent again up to {@code MCR.Mail.NumTries} times in total. Envelopes that
+ * were delivered already are not sent again. Unlike {@code MCRMailer}, the retries are not delayed, so the request
+ * is not blocked for minutes; use {@link MIRQueuedMailDispatcher} to retry with a backoff.
+ */
+public class MIRDirectMailDispatcher implements MIRMailDispatcher {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int NUM_TRIES = Math.max(1, MCRConfiguration2.getInt("MCR.Mail.NumTries").orElse(1));
+
+    @Override
+    public void dispatch(MIROutboundMail mail) {
+        try {
+            sendWithRetries(mail);
+        } finally {
+            discardAttachments(mail);
+        }
+    }
+
+    private static void sendWithRetries(MIROutboundMail mail) {
+        MIROutboundMail pending = mail;
+        for (int attempt = 1;; attempt++) {
+            final List<MIRMailEnvelope> delivered = new ArrayList<>();
+            try {
+                send(pending, delivered::add);
+                return;
+            } catch (MIRMailDispatchException e) {
+                if (attempt >= NUM_TRIES) {
+                    throw e;
+                }
+                LOGGER.warn("Sending mail failed (attempt {} of {}), trying again", attempt, NUM_TRIES, e);
+                final List<MIRMailEnvelope> envelopes = pending.envelopes();
+                pending = pending.withEnvelopes(envelopes.subList(delivered.size(), envelopes.size()));
+            }
+        }
+    }
+
+    /**
+     * Sends the given mail without taking ownership of its attachments.
+     *
+     * @param mail the mail to send
+     * @throws MIRMailDispatchException if sending fails
+     */
+    static void send(MIROutboundMail mail) {
+        send(mail, envelope -> {
+        });
+    }
+
+    /**
+     * Sends the given mail without taking ownership of its attachments and reports every envelope delivered.
+     *
+     * @param mail the mail to send
+     * @param delivered called for every envelope after its message was sent
+     * @throws MIRMailDispatchException if sending fails
+     */
+    static void send(MIROutboundMail mail, Consumer<MIRMailEnvelope> delivered) {
+        try {
+            MIRMailSession.send(mail, delivered);
+        } catch (MessagingException e) {
+            throw new MIRMailDispatchException("Failed to send mail: " + e.getMessage(), e);
+        }
+    }
+
+    static void discardAttachments(MIROutboundMail mail) {
+        mail.attachments().forEach(attachment -> {
+            try {
+                attachment.discard();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to discard attachment {}", attachment.filename(), e);
+            }
+        });
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.mail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Implementation of {@link MIRMailAttachment} backed by a file that is owned by the attachment.
+ *
+ * @param path the backing file
+ * @param filename the file name used in the mail
+ * @param contentType the MIME type of the attachment
+ */
+public record MIRFileMailAttachment(Path path, String filename, String contentType) implements MIRMailAttachment {
+
+    @Override
+    public InputStream openStream() throws IOException {
+        return Files.newInputStream(path);
+    }
+
+    @Override
+    public void moveTo(Path target) throws IOException {
+        Files.move(path, target);
+    }
+
+    @Override
+    public void discard() throws IOException {
+        Files.deleteIfExists(path);
+    }
+}
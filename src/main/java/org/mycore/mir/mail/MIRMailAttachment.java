@@ -0,0 +1,66 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.mail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Represents the content of a file attached to a {@link MIROutboundMail}.
+ */
+public interface MIRMailAttachment {
+
+    /**
+     * Returns the file name used in the mail.
+     *
+     * @return the file name
+     */
+    String filename();
+
+    /**
+     * Returns the MIME type of the attachment.
+     *
+     * @return the content type
+     */
+    String contentType();
+
+    /**
+     * Opens a new stream to read the content of the attachment.
+     *
+     * @return an InputStream for reading the attachment's content
+     * @throws IOException if an I/O error occurs while opening the stream
+     */
+    InputStream openStream() throws IOException;
+
+    /**
+     * Moves the content of the attachment to the given file. The attachment must not be used afterwards.
+     *
+     * @param target the target file, must not exist
+     * @throws IOException if an I/O error occurs
+     */
+    void moveTo(Path target) throws IOException;
+
+    /**
+     * Releases the resources held by the attachment, e.g. deletes its backing file.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    void discard() throws IOException;
+}
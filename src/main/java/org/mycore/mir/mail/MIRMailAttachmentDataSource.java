@@ -0,0 +1,53 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.mail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import jakarta.activation.DataSource;
+
+/**
+ * Read-only {@link DataSource} that streams the content of a {@link MIRMailAttachment}.
+ *
+ * @param attachment the attachment
+ */
+record MIRMailAttachmentDataSource(MIRMailAttachment attachment) implements DataSource {
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return attachment.openStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        throw new IOException("Attachment " + attachment.filename() + " is read-only");
+    }
+
+    @Override
+    public String getContentType() {
+        return attachment.contentType();
+    }
+
+    @Override
+    public String getName() {
+        return attachment.filename();
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.mail;
+
+/**
+ * Delivers {@link MIROutboundMail} instances.
+ * <p>
+ * A call to {@link #dispatch(MIROutboundMail)} hands the attachment files of the mail over to the dispatcher, which
+ * is responsible for removing them after delivery or if the mail is rejected.
+ */
+public interface MIRMailDispatcher {
+
+    /**
+     * Hands the given mail over for delivery.
+     *
+     * @param mail the mail to deliver
+     * @throws MIRMailDispatchException if the mail could not be delivered or accepted for delivery
+     */
+    void dispatch(MIROutboundMail mail);
+
+    /**
+     * Returns whether {@link #dispatch(MIROutboundMail)} only accepts mails for later delivery.
+     *
+     * @return true if mails are delivered after dispatch returns, false if they are delivered when it returns
+     */
+    default boolean isDeferred() {
+        return false;
+    }
+}
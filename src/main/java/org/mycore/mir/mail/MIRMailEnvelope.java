@@ -0,0 +1,39 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.mail;
+
+import java.util.List;
+
+/**
+ * Recipients and per-recipient headers of one delivery of a {@link MIROutboundMail}.
+ *
+ * @param replyTo the reply-to addresses, may be empty
+ * @param to the recipient addresses
+ * @param includeAttachments whether the attachments of the mail are sent to these recipients
+ */
+public record MIRMailEnvelope(List<String> replyTo, List<String> to, boolean includeAttachments) {
+
+    /**
+     * Creates a new envelope.
+     */
+    public MIRMailEnvelope {
+        replyTo = List.copyOf(replyTo);
+        to = List.copyOf(to);
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.mail;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+import jakarta.activation.DataHandler;
+import jakarta.mail.Authenticator;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Part;
+import jakarta.mail.PasswordAuthentication;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeBodyPart;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeMultipart;
+import jakarta.mail.internet.PreencodedMimeBodyPart;
+
+import org.mycore.common.config.MCRConfiguration2;
+
+/**
+ * Builds and sends MIME messages for {@link MIROutboundMail} instances.
+ * <p>
+ * {@code MCRMailer} does not expose its mail session, so this class builds its own session from the same
+ * {@code MCR.Mail.*} properties: {@code Server}, {@code Protocol}, {@code Port}, {@code StartTLS}, {@code User},
+ * {@code Password}, {@code Debug} and {@code Encoding}. {@code MCR.Mail.NumTries} is applied by
+ * {@link MIRDirectMailDispatcher}, the {@link MIRQueuedMailDispatcher} uses its own retry policy. Attachments are
+ * streamed into the message while it is written to the transport, so each attachment is read once. Unless
+ * pooling is disabled, messages are sent over connections of the {@link MIRSmtpTransportPool}.
+ */
+public final class MIRMailSession {
+
+    private static final String CONFIG_PREFIX = "MCR.Mail.";
+
+    private static final String ENCODING = MCRConfiguration2.getString(CONFIG_PREFIX + "Encoding").orElse("UTF-8");
+
+    private static final String HEADER_TRANSFER_ENCODING = "Content-Transfer-Encoding";
+
+    private static final int PREENCODED_MEMORY_LIMIT = MCRConfiguration2
+        .getInt("MIR.MailerWithFileServlet.Mail.PreencodedMemoryLimit").orElse(1024 * 1024);
+
+    private MIRMailSession() {}
+
+    /**
+     * Returns the shared mail session.
+     *
+     * @return the mail session
+     */
+    public static Session getSession() {
+        return SessionHolder.SESSION;
+    }
+
+    /**
+     * Sends the given mail to all its envelopes.
+     *
+     * @param mail the mail
+     * @throws MessagingException if the message could not be built or sent
+     */
+    public static void send(MIROutboundMail mail) throws MessagingException {
+        send(mail, envelope -> {
+        });
+    }
+
+    /**
+     * Sends the given mail to all its envelopes and reports every envelope delivered. The content is built once and
+     * shared by the messages of all envelopes. If the attachments are sent to more than one envelope, each of them is
+     * base64 encoded once up front instead of once per message.
+     *
+     * @param mail the mail
+     * @param delivered called for every envelope after its message was sent
+     * @throws MessagingException if the message could not be built or sent, envelopes not reported as delivered
+     *     have not been sent
+     */
+    public static void send(MIROutboundMail mail, Consumer<MIRMailEnvelope> delivered) throws MessagingException {
+        final long attachmentEnvelopes = mail.attachments().isEmpty() ? 0
+            : mail.envelopes().stream().filter(MIRMailEnvelope::includeAttachments).count();
+        final List<MIRPreencodedAttachment> preencoded = new ArrayList<>();
+        try {
+            final MimeMultipart multipart = attachmentEnvelopes == 0 ? null
+                : createMultipart(mail, attachmentEnvelopes > 1 ? preencoded : null);
+            for (MIRMailEnvelope envelope : mail.envelopes()) {
+                final MimeMessage message = createMessage(mail, envelope,
+                    multipart != null && envelope.includeAttachments() ? multipart : null);
+                if (MIRSmtpTransportPool.isEnabled()) {
+                    MIRSmtpTransportPool.getInstance().send(message);
+                } else {
+                    Transport.send(message);
+                }
+                delivered.accept(envelope);
+            }
+        } finally {
+            preencoded.forEach(MIRPreencodedAttachment::close);
+        }
+    }
+
+    /**
+     * Creates a MIME message for the first envelope of the given mail.
+     * <p>
+     * Attachments are not read until the message is written.
+     *
+     * @param mail the mail
+     * @return the message
+     * @throws MessagingException if the message could not be built
+     */
+    public static MimeMessage createMessage(MIROutboundMail mail) throws MessagingException {
+        final MIRMailEnvelope envelope = mail.envelopes().getFirst();
+        return createMessage(mail, envelope,
+            envelope.includeAttachments() && !mail.attachments().isEmpty() ? createMultipart(mail, null) : null);
+    }
+
+    private static MimeMessage createMessage(MIROutboundMail mail, MIRMailEnvelope envelope,
+        MimeMultipart multipart) throws MessagingException {
+        final MimeMessage message = new MimeMessage(getSession());
+        message.setFrom(toAddress(mail.from()));
+        message.setReplyTo(toAddresses(envelope.replyTo()));
+        message.setRecipients(Message.RecipientType.TO, toAddresses(envelope.to()));
+        message.setSentDate(new Date());
+        message.setSubject(mail.subject(), ENCODING);
+        if (multipart == null) {
+            message.setText(mail.body(), ENCODING);
+        } else {
+            message.setContent(multipart);
+        }
+        message.saveChanges();
+        return message;
+    }
+
+    /**
+     * Creates the multipart content of a mail with attachments.
+     *
+     * @param preencoded list the pre-encoded attachments are added to, they have to be closed by the caller, or
+     *     {@code null} to stream the attachments while the message is written
+     */
+    private static MimeMultipart createMultipart(MIROutboundMail mail, List<MIRPreencodedAttachment> preencoded)
+        throws MessagingException {
+        final MimeMultipart multipart = new MimeMultipart();
+        final MimeBodyPart textPart = new MimeBodyPart();
+        textPart.setText(mail.body(), ENCODING);
+        multipart.addBodyPart(textPart);
+        for (MIRMailAttachment attachment : mail.attachments()) {
+            multipart.addBodyPart(preencoded == null ? createAttachmentPart(attachment)
+                : createPreencodedAttachmentPart(attachment, preencoded));
+        }
+        return multipart;
+    }
+
+    private static MimeBodyPart createAttachmentPart(MIRMailAttachment attachment) throws MessagingException {
+        final MimeBodyPart part = new MimeBodyPart();
+        part.setDataHandler(new DataHandler(new MIRMailAttachmentDataSource(attachment)));
+        part.setFileName(attachment.filename());
+        part.setDisposition(Part.ATTACHMENT);
+        // setting the encoding up front prevents a full read of the attachment just to choose an encoding
+        part.setHeader(HEADER_TRANSFER_ENCODING, "base64");
+        return part;
+    }
+
+    private static MimeBodyPart createPreencodedAttachmentPart(MIRMailAttachment attachment,
+        List<MIRPreencodedAttachment> preencoded) throws MessagingException {
+        final MIRPreencodedAttachment encoded;
+        try {
+            encoded = MIRPreencodedAttachment.encode(attachment, PREENCODED_MEMORY_LIMIT);
+        } catch (IOException e) {
+            throw new MessagingException("Failed to encode attachment " + attachment.filename(), e);
+        }
+        preencoded.add(encoded);
+        final MimeBodyPart part = new PreencodedMimeBodyPart("base64");
+        part.setDataHandler(new DataHandler(encoded));
+        part.setFileName(attachment.filename());
+        part.setDisposition(Part.ATTACHMENT);
+        return part;
+    }
+
+    private static InternetAddress[] toAddresses(List<String> addresses) throws MessagingException {
+        final InternetAddress[] result = new InternetAddress[addresses.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = toAddress(addresses.get(i));
+        }
+        return result;
+    }
+
+    private static InternetAddress toAddress(String address) throws MessagingException {
+        final InternetAddress parsed = new InternetAddress(address);
+        if (parsed.getPersonal() == null) {
+            return parsed;
+        }
+        try {
+            return new InternetAddress(parsed.getAddress(), parsed.getPersonal(), ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new MessagingException("Unsupported mail encoding " + ENCODING, e);
+        }
+    }
+
+    private static final class SessionHolder {
+
+        private static final Session SESSION = createSession();
+
+        private static Session createSession() {
+            final Properties properties = new Properties();
+            final String protocol = MCRConfiguration2.getString(CONFIG_PREFIX + "Protocol").orElse("smtp");
+            final String prefix = "mail." + protocol + ".";
+            properties.setProperty("mail.transport.protocol", protocol);
+            properties.setProperty(prefix + "host", MCRConfiguration2.getStringOrThrow(CONFIG_PREFIX + "Server"));
+            properties.setProperty(prefix + "port", MCRConfiguration2.getString(CONFIG_PREFIX + "Port").orElse("25"));
+            MCRConfiguration2.getString(CONFIG_PREFIX + "StartTLS").map(s -> s.toLowerCase(Locale.ROOT))
+                .ifPresent(startTls -> {
+                    final boolean required = startTls.equals("required");
+                    properties.setProperty(prefix + "starttls.enable",
+                        String.valueOf(required || startTls.equals("enabled") || startTls.equals("true")));
+                    properties.setProperty(prefix + "starttls.required", String.valueOf(required));
+                });
+            final String user = MCRConfiguration2.getString(CONFIG_PREFIX + "User").orElse(null);
+            final String password = MCRConfiguration2.getString(CONFIG_PREFIX + "Password").orElse(null);
+            Authenticator authenticator = null;
+            if (user != null && password != null) {
+                properties.setProperty(prefix + "auth", "true");
+                authenticator = new Authenticator() {
+                    @Override
+                    protected PasswordAuthentication getPasswordAuthentication() {
+                        return new PasswordAuthentication(user, password);
+                    }
+                };
+            }
+            final Session session = Session.getInstance(properties, authenticator);
+            session.setDebug(MCRConfiguration2.getBoolean(CONFIG_PREFIX + "Debug").orElse(false));
+            return session;
+        }
+    }
+}
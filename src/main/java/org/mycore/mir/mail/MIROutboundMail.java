@@ -0,0 +1,83 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.mail;
+
+import java.util.List;
+
+/**
+ * Represents a fully rendered mail that is ready for delivery.
+ * <p>
+ * A mail can be delivered to several envelopes, e.g. to the recipients and as copy to the sender. The message is
+ * built once and sent to every envelope with its own recipients and headers.
+ *
+ * @param from the sender address (From)
+ * @param envelopes the deliveries of the mail, at least one
+ * @param subject the subject of the mail
+ * @param body the rendered plain text body
+ * @param attachments attachments of the mail, owned by the dispatcher once the mail is dispatched
+ */
+public record MIROutboundMail(String from, List<MIRMailEnvelope> envelopes, String subject, String body,
+    List<MIRMailAttachment> attachments) {
+
+    /**
+     * Creates a new outbound mail.
+     */
+    public MIROutboundMail {
+        if (envelopes.isEmpty()) {
+            throw new IllegalArgumentException("A mail needs at least one envelope");
+        }
+        envelopes = List.copyOf(envelopes);
+        attachments = List.copyOf(attachments);
+    }
+
+    /**
+     * Creates a new outbound mail with a single envelope.
+     *
+     * @param from the sender address (From)
+     * @param replyTo the reply-to addresses, may be empty
+     * @param to the recipient addresses
+     * @param subject the subject of the mail
+     * @param body the rendered plain text body
+     * @param attachments attachments of the mail
+     */
+    public MIROutboundMail(String from, List<String> replyTo, List<String> to, String subject, String body,
+        List<MIRMailAttachment> attachments) {
+        this(from, List.of(new MIRMailEnvelope(replyTo, to, true)), subject, body, attachments);
+    }
+
+    /**
+     * Returns a copy of this mail with other envelopes, e.g. with the envelopes not delivered yet.
+     *
+     * @param envelopes the envelopes
+     * @return the mail
+     */
+    public MIROutboundMail withEnvelopes(List<MIRMailEnvelope> envelopes) {
+        return new MIROutboundMail(from, envelopes, subject, body, attachments);
+    }
+
+    /**
+     * Returns a copy of this mail with other attachments, e.g. with attachments moved to another location.
+     *
+     * @param attachments the attachments
+     * @return the mail
+     */
+    public MIROutboundMail withAttachments(List<MIRMailAttachment> attachments) {
+        return new MIROutboundMail(from, envelopes, subject, body, attachments);
+    }
+}
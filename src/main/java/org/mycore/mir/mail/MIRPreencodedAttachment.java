@@ -0,0 +1,161 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.mail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+
+import jakarta.activation.DataSource;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Read-only {@link DataSource} holding the base64 encoded content of a {@link MIRMailAttachment}.
+ * <p>
+ * The attachment is read and encoded once, so that the encoded content can be written into several messages. The
+ * encoded content is kept in memory up to a limit and spilled to a temporary file beyond it, which is deleted on
+ * {@link #close()}.
+ */
+final class MIRPreencodedAttachment implements DataSource, AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final MIRMailAttachment attachment;
+
+    private final byte[] content;
+
+    private final Path file;
+
+    private MIRPreencodedAttachment(MIRMailAttachment attachment, byte[] content, Path file) {
+        this.attachment = attachment;
+        this.content = content;
+        this.file = file;
+    }
+
+    /**
+     * Reads and encodes the given attachment.
+     *
+     * @param attachment the attachment
+     * @param memoryLimit the max number of encoded bytes kept in memory
+     * @return the encoded attachment
+     * @throws IOException if the attachment cannot be read or the temporary file cannot be written
+     */
+    static MIRPreencodedAttachment encode(MIRMailAttachment attachment, int memoryLimit) throws IOException {
+        final SpillOutputStream buffer = new SpillOutputStream(memoryLimit);
+        try (buffer; InputStream in = attachment.openStream();
+            OutputStream out = Base64.getMimeEncoder().wrap(buffer)) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            buffer.delete();
+            throw e;
+        }
+        return new MIRPreencodedAttachment(attachment, buffer.memory == null ? null : buffer.memory.toByteArray(),
+            buffer.file);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return file == null ? new ByteArrayInputStream(content) : Files.newInputStream(file);
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        throw new IOException("Attachment " + attachment.filename() + " is read-only");
+    }
+
+    @Override
+    public String getContentType() {
+        return attachment.contentType();
+    }
+
+    @Override
+    public String getName() {
+        return attachment.filename();
+    }
+
+    @Override
+    public void close() {
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete encoded attachment {}", file, e);
+            }
+        }
+    }
+
+    /**
+     * Output stream writing to memory until the limit is reached and to a temporary file afterwards.
+     */
+    private static final class SpillOutputStream extends OutputStream {
+
+        private final int memoryLimit;
+
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+
+        private Path file;
+
+        private OutputStream fileOut;
+
+        private SpillOutputStream(int memoryLimit) {
+            this.memoryLimit = memoryLimit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (memory != null && memory.size() + len > memoryLimit) {
+                file = Files.createTempFile("mir-mail-", ".b64");
+                fileOut = Files.newOutputStream(file);
+                memory.writeTo(fileOut);
+                memory = null;
+            }
+            if (memory != null) {
+                memory.write(b, off, len);
+            } else {
+                fileOut.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fileOut != null) {
+                fileOut.close();
+            }
+        }
+
+        private void delete() throws IOException {
+            close();
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
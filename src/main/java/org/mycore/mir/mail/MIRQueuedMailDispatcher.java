@@ -0,0 +1,502 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.mail;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.common.config.MCRConfigurationException;
+import org.mycore.common.config.annotation.MCRConfigurationProxy;
+import org.mycore.common.config.annotation.MCRProperty;
+import org.mycore.common.events.MCRShutdownHandler;
+import org.mycore.mir.MIRManagementHelper;
+
+/**
+ * Implementation of {@link MIRMailDispatcher} that persists mails in a spool directory and delivers them
+ * asynchronously on a pool of worker threads.
+ * <p>
+ * Every accepted mail is written to its own directory below the spool path before {@link #dispatch(MIROutboundMail)}
+ * returns, so pending mails survive a restart and are picked up again on startup. Failed deliveries are retried with
+ * exponential backoff until the maximum number of attempts is reached, after which the mail is moved to the
+ * {@code failed} directory for manual inspection.
+ */
+@MCRConfigurationProxy(proxyClass = MIRQueuedMailDispatcher.Factory.class)
+public class MIRQueuedMailDispatcher implements MIRMailDispatcher, MIRQueuedMailDispatcherMXBean {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String MAIL_FILE = "mail.properties";
+    private static final String BODY_FILE = "body.txt";
+    private static final String ATTACHMENTS_DIR = "attachments";
+    private static final String FAILED_DIR = "failed";
+    private static final String TEMP_PREFIX = ".";
+
+    private static final String KEY_FROM = "from";
+    private static final String KEY_REPLY_TO = "replyTo.";
+    private static final String KEY_TO = "to.";
+    private static final String KEY_ENVELOPE = "envelope.";
+    private static final String KEY_INCLUDE_ATTACHMENTS = "includeAttachments";
+    private static final String KEY_SUBJECT = "subject";
+    private static final String KEY_ATTACHMENT = "attachment.";
+    private static final String KEY_ATTACHMENT_NAME = "attachmentName.";
+    private static final String KEY_ATTACHMENT_TYPE = "attachmentType.";
+    private static final String KEY_CREATED = "created";
+    private static final String KEY_ATTEMPTS = "attempts";
+
+    private final Path spoolPath;
+    private final int capacity;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final ScheduledExecutorService executor;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final LongAdder enqueuedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder deliveredCount = new LongAdder();
+    private final LongAdder retryCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder enqueueNanos = new LongAdder();
+    private final LongAdder deliveryMillis = new LongAdder();
+    private final AtomicLong maxDeliveryMillis = new AtomicLong();
+
+    /**
+     * Creates a new queued dispatcher, recovers pending mails from the spool path and starts the workers.
+     *
+     * @param config the config
+     */
+    public MIRQueuedMailDispatcher(QueueConfig config) {
+        this.spoolPath = config.spoolPath();
+        this.capacity = config.capacity();
+        this.maxAttempts = config.maxAttempts();
+        this.initialBackoff = config.initialBackoff();
+        this.maxBackoff = config.maxBackoff();
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(config.workers(), r -> {
+            final Thread thread = new Thread(r, "MIRMailDispatcher-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Files.createDirectories(spoolPath.resolve(FAILED_DIR));
+        } catch (IOException e) {
+            throw new MCRConfigurationException("Could not create mail spool directory " + spoolPath, e);
+        }
+        recover();
+        MCRShutdownHandler.getInstance().addCloseable(this::shutdown);
+        MIRManagementHelper.register(this, "MailDispatcher", spoolPath.toString());
+    }
+
+    @Override
+    public void dispatch(MIROutboundMail mail) {
+        final long start = System.nanoTime();
+        if (queueDepth.getAndUpdate(depth -> depth < capacity ? depth + 1 : depth) >= capacity) {
+            rejectedCount.increment();
+            MIRDirectMailDispatcher.discardAttachments(mail);
+            throw new MIRMailDispatchException("Mail queue is full, capacity is " + capacity);
+        }
+        final QueuedMail queuedMail;
+        try {
+            queuedMail = persist(mail);
+        } catch (IOException e) {
+            queueDepth.decrementAndGet();
+            MIRDirectMailDispatcher.discardAttachments(mail);
+            throw new MIRMailDispatchException("Failed to enqueue mail", e);
+        }
+        schedule(queuedMail, Duration.ZERO);
+        enqueuedCount.increment();
+        enqueueNanos.add(System.nanoTime() - start);
+        LOGGER.debug("Enqueued mail {}", queuedMail.directory());
+    }
+
+    @Override
+    public boolean isDeferred() {
+        return true;
+    }
+
+    private void schedule(QueuedMail queuedMail, Duration delay) {
+        executor.schedule(() -> deliver(queuedMail), delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void deliver(QueuedMail queuedMail) {
+        final List<MIRMailEnvelope> delivered = new ArrayList<>();
+        try {
+            MIRDirectMailDispatcher.send(queuedMail.mail(), delivered::add);
+        } catch (RuntimeException e) {
+            // any failure counts as a failed attempt, otherwise the mail would stay in the spool without a retry
+            handleFailure(queuedMail, delivered.size(), e);
+            return;
+        }
+        final long latency = System.currentTimeMillis() - queuedMail.created();
+        deliveryMillis.add(latency);
+        maxDeliveryMillis.accumulateAndGet(latency, Math::max);
+        deliveredCount.increment();
+        deleteRecursively(queuedMail.directory());
+        queueDepth.decrementAndGet();
+        LOGGER.debug("Delivered mail {} after {} ms", queuedMail.directory(), latency);
+    }
+
+    private void handleFailure(QueuedMail queuedMail, int deliveredEnvelopes, RuntimeException e) {
+        final int attempts = queuedMail.attempts() + 1;
+        if (attempts >= maxAttempts) {
+            LOGGER.error("Giving up mail {} after {} attempts", queuedMail.directory(), attempts, e);
+            moveToFailed(queuedMail);
+            failedCount.increment();
+            queueDepth.decrementAndGet();
+            return;
+        }
+        final Duration delay = getBackoff(attempts);
+        LOGGER.warn("Delivery of mail {} failed (attempt {} of {}), retrying in {}", queuedMail.directory(), attempts,
+            maxAttempts, delay, e);
+        // envelopes are sent in order, only the ones not delivered yet are retried
+        final List<MIRMailEnvelope> envelopes = queuedMail.mail().envelopes();
+        final QueuedMail retry = new QueuedMail(queuedMail.directory(),
+            queuedMail.mail().withEnvelopes(envelopes.subList(deliveredEnvelopes, envelopes.size())),
+            queuedMail.created(), attempts);
+        try {
+            writeMailFile(retry);
+        } catch (IOException ioe) {
+            LOGGER.warn("Failed to update attempts of mail {}", queuedMail.directory(), ioe);
+        }
+        retryCount.increment();
+        schedule(retry, delay);
+    }
+
+    private Duration getBackoff(int attempts) {
+        final Duration backoff = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 30));
+        return backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff;
+    }
+
+    private QueuedMail persist(MIROutboundMail mail) throws IOException {
+        final String id = UUID.randomUUID().toString();
+        final Path tempDirectory = Files.createDirectory(spoolPath.resolve(TEMP_PREFIX + id));
+        try {
+            final Path attachmentsDirectory = Files.createDirectory(tempDirectory.resolve(ATTACHMENTS_DIR));
+            final List<MIRMailAttachment> attachments = new ArrayList<>();
+            for (int i = 0; i < mail.attachments().size(); i++) {
+                final MIRMailAttachment source = mail.attachments().get(i);
+                final Path target = attachmentsDirectory.resolve(String.valueOf(i));
+                source.moveTo(target);
+                attachments.add(new MIRFileMailAttachment(target, source.filename(), source.contentType()));
+            }
+            Files.writeString(tempDirectory.resolve(BODY_FILE), mail.body(), UTF_8);
+            final QueuedMail queuedMail =
+                new QueuedMail(tempDirectory, mail.withAttachments(attachments), System.currentTimeMillis(), 0);
+            writeMailFile(queuedMail);
+            final Path directory = spoolPath.resolve(id);
+            Files.move(tempDirectory, directory, StandardCopyOption.ATOMIC_MOVE);
+            return new QueuedMail(directory, relocate(queuedMail.mail(), tempDirectory, directory),
+                queuedMail.created(), 0);
+        } catch (IOException e) {
+            deleteRecursively(tempDirectory);
+            throw e;
+        }
+    }
+
+    private static MIROutboundMail relocate(MIROutboundMail mail, Path from, Path to) {
+        final List<MIRMailAttachment> relocated = mail.attachments().stream()
+            .map(MIRFileMailAttachment.class::cast)
+            .map(a -> new MIRFileMailAttachment(to.resolve(from.relativize(a.path())), a.filename(), a.contentType()))
+            .map(MIRMailAttachment.class::cast).toList();
+        return mail.withAttachments(relocated);
+    }
+
+    private static void writeMailFile(QueuedMail queuedMail) throws IOException {
+        final MIROutboundMail mail = queuedMail.mail();
+        final Properties properties = new Properties();
+        properties.setProperty(KEY_FROM, mail.from());
+        properties.setProperty(KEY_SUBJECT, mail.subject());
+        properties.setProperty(KEY_CREATED, String.valueOf(queuedMail.created()));
+        properties.setProperty(KEY_ATTEMPTS, String.valueOf(queuedMail.attempts()));
+        for (int i = 0; i < mail.envelopes().size(); i++) {
+            final MIRMailEnvelope envelope = mail.envelopes().get(i);
+            final String prefix = KEY_ENVELOPE + i + '.';
+            setList(properties, prefix + KEY_REPLY_TO, envelope.replyTo());
+            setList(properties, prefix + KEY_TO, envelope.to());
+            properties.setProperty(prefix + KEY_INCLUDE_ATTACHMENTS, String.valueOf(envelope.includeAttachments()));
+        }
+        final List<MIRFileMailAttachment> attachments =
+            mail.attachments().stream().map(MIRFileMailAttachment.class::cast).toList();
+        setList(properties, KEY_ATTACHMENT, attachments.stream().map(MIRFileMailAttachment::path)
+            .map(queuedMail.directory()::relativize).map(Path::toString).toList());
+        setList(properties, KEY_ATTACHMENT_NAME, attachments.stream().map(MIRFileMailAttachment::filename).toList());
+        setList(properties, KEY_ATTACHMENT_TYPE,
+            attachments.stream().map(MIRFileMailAttachment::contentType).toList());
+        final Path mailFile = queuedMail.directory().resolve(MAIL_FILE);
+        final Path tempFile = queuedMail.directory().resolve(TEMP_PREFIX + MAIL_FILE);
+        try (Writer writer = Files.newBufferedWriter(tempFile, UTF_8)) {
+            properties.store(writer, null);
+        }
+        Files.move(tempFile, mailFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static QueuedMail readMail(Path directory) throws IOException {
+        final Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(directory.resolve(MAIL_FILE), UTF_8)) {
+            properties.load(reader);
+        }
+        final String body = Files.readString(directory.resolve(BODY_FILE), UTF_8);
+        final List<String> paths = getList(properties, KEY_ATTACHMENT);
+        final List<String> names = getList(properties, KEY_ATTACHMENT_NAME);
+        final List<String> types = getList(properties, KEY_ATTACHMENT_TYPE);
+        final List<MIRMailAttachment> attachments = new ArrayList<>();
+        for (int i = 0; i < paths.size(); i++) {
+            attachments.add(new MIRFileMailAttachment(directory.resolve(paths.get(i)), names.get(i), types.get(i)));
+        }
+        final List<MIRMailEnvelope> envelopes = new ArrayList<>();
+        for (int i = 0; properties.containsKey(KEY_ENVELOPE + i + '.' + KEY_INCLUDE_ATTACHMENTS); i++) {
+            final String prefix = KEY_ENVELOPE + i + '.';
+            envelopes.add(new MIRMailEnvelope(getList(properties, prefix + KEY_REPLY_TO),
+                getList(properties, prefix + KEY_TO),
+                Boolean.parseBoolean(properties.getProperty(prefix + KEY_INCLUDE_ATTACHMENTS))));
+        }
+        final MIROutboundMail mail = new MIROutboundMail(properties.getProperty(KEY_FROM), envelopes,
+            properties.getProperty(KEY_SUBJECT), body, attachments);
+        return new QueuedMail(directory, mail, Long.parseLong(properties.getProperty(KEY_CREATED)),
+            Integer.parseInt(properties.getProperty(KEY_ATTEMPTS)));
+    }
+
+    private static void setList(Properties properties, String prefix, List<String> values) {
+        for (int i = 0; i < values.size(); i++) {
+            properties.setProperty(prefix + i, values.get(i));
+        }
+    }
+
+    private static List<String> getList(Properties properties, String prefix) {
+        final List<String> values = new ArrayList<>();
+        for (int i = 0; properties.containsKey(prefix + i); i++) {
+            values.add(properties.getProperty(prefix + i));
+        }
+        return values;
+    }
+
+    private void recover() {
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(spoolPath, Files::isDirectory)) {
+            for (Path directory : directories) {
+                final String name = directory.getFileName().toString();
+                if (name.startsWith(TEMP_PREFIX)) {
+                    deleteRecursively(directory);
+                } else if (!FAILED_DIR.equals(name)) {
+                    recover(directory);
+                }
+            }
+        } catch (IOException e) {
+            throw new MCRConfigurationException("Could not read mail spool directory " + spoolPath, e);
+        }
+    }
+
+    private void recover(Path directory) {
+        final QueuedMail queuedMail;
+        try {
+            queuedMail = readMail(directory);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Could not recover mail {}, moving it to {}", directory, FAILED_DIR, e);
+            moveToFailed(directory);
+            return;
+        }
+        LOGGER.info("Recovered pending mail {}", directory);
+        queueDepth.incrementAndGet();
+        schedule(queuedMail, Duration.ZERO);
+    }
+
+    private void moveToFailed(QueuedMail queuedMail) {
+        moveToFailed(queuedMail.directory());
+    }
+
+    private void moveToFailed(Path directory) {
+        try {
+            Files.move(directory, spoolPath.resolve(FAILED_DIR).resolve(directory.getFileName()),
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.error("Could not move mail {} to {}", directory, FAILED_DIR, e);
+        }
+    }
+
+    private static void deleteRecursively(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to delete {}", path, e);
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete {}", directory, e);
+        }
+    }
+
+    private void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getEnqueuedCount() {
+        return enqueuedCount.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    @Override
+    public long getDeliveredCount() {
+        return deliveredCount.sum();
+    }
+
+    @Override
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    @Override
+    public double getAverageEnqueueLatencyMillis() {
+        final long count = enqueuedCount.sum();
+        return count == 0 ? 0 : enqueueNanos.sum() / 1_000_000d / count;
+    }
+
+    @Override
+    public double getAverageDeliveryLatencyMillis() {
+        final long count = deliveredCount.sum();
+        return count == 0 ? 0 : (double) deliveryMillis.sum() / count;
+    }
+
+    @Override
+    public long getMaxDeliveryLatencyMillis() {
+        return maxDeliveryMillis.get();
+    }
+
+    private record QueuedMail(Path directory, MIROutboundMail mail, long created, int attempts) {
+    }
+
+    /**
+     * Configuration of the mail queue.
+     *
+     * @param spoolPath directory in which pending mails are persisted
+     * @param capacity maximum number of pending mails
+     * @param workers number of worker threads delivering mails
+     * @param maxAttempts maximum number of delivery attempts per mail
+     * @param initialBackoff delay before the first retry, doubled for every further attempt
+     * @param maxBackoff upper bound for the delay between two attempts
+     */
+    public record QueueConfig(Path spoolPath, int capacity, int workers, int maxAttempts, Duration initialBackoff,
+        Duration maxBackoff) {
+    }
+
+    /**
+     * Factory class for creating {@link MIRQueuedMailDispatcher} instances from configuration.
+     */
+    public static final class Factory implements Supplier<MIRQueuedMailDispatcher> {
+
+        /**
+         * Directory in which pending mails are persisted.
+         */
+        @MCRProperty(name = "SpoolPath")
+        public String spoolPath;
+
+        /**
+         * Optional maximum number of pending mails, defaults to 1000.
+         */
+        @MCRProperty(name = "Capacity", required = false)
+        public String capacity;
+
+        /**
+         * Optional number of worker threads, defaults to 2.
+         */
+        @MCRProperty(name = "Workers", required = false)
+        public String workers;
+
+        /**
+         * Optional maximum number of delivery attempts, defaults to 10.
+         */
+        @MCRProperty(name = "MaxAttempts", required = false)
+        public String maxAttempts;
+
+        /**
+         * Optional delay in seconds before the first retry, defaults to 30.
+         */
+        @MCRProperty(name = "InitialBackoff", required = false)
+        public String initialBackoff;
+
+        /**
+         * Optional maximum delay in seconds between two attempts, defaults to 3600.
+         */
+        @MCRProperty(name = "MaxBackoff", required = false)
+        public String maxBackoff;
+
+        @Override
+        public MIRQueuedMailDispatcher get() {
+            final QueueConfig config = new QueueConfig(Path.of(spoolPath), parsePositive(capacity, 1000, "Capacity"),
+                parsePositive(workers, 2, "Workers"), parsePositive(maxAttempts, 10, "MaxAttempts"),
+                Duration.ofSeconds(parsePositive(initialBackoff, 30, "InitialBackoff")),
+                Duration.ofSeconds(parsePositive(maxBackoff, 3600, "MaxBackoff")));
+            return new MIRQueuedMailDispatcher(config);
+        }
+
+        private static int parsePositive(String value, int defaultValue, String name) {
+            if (value == null) {
+                return defaultValue;
+            }
+            final int result = Integer.parseInt(value);
+            if (result < 1) {
+                throw new MCRConfigurationException(name + " must be greater than 0");
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.mail;
+
+/**
+ * Management interface of {@link MIRQueuedMailDispatcher}.
+ */
+public interface MIRQueuedMailDispatcherMXBean {
+
+    /**
+     * Returns the number of mails waiting for delivery, including mails waiting for a retry.
+     *
+     * @return the current queue depth
+     */
+    int getQueueDepth();
+
+    /**
+     * Returns the maximum number of mails the queue accepts.
+     *
+     * @return the queue capacity
+     */
+    int getCapacity();
+
+    /**
+     * Returns the number of mails accepted since startup.
+     *
+     * @return the enqueued count
+     */
+    long getEnqueuedCount();
+
+    /**
+     * Returns the number of mails rejected because the queue was full.
+     *
+     * @return the rejected count
+     */
+    long getRejectedCount();
+
+    /**
+     * Returns the number of mails delivered since startup.
+     *
+     * @return the delivered count
+     */
+    long getDeliveredCount();
+
+    /**
+     * Returns the number of failed delivery attempts that were rescheduled.
+     *
+     * @return the retry count
+     */
+    long getRetryCount();
+
+    /**
+     * Returns the number of mails given up after the maximum number of attempts.
+     *
+     * @return the failed count
+     */
+    long getFailedCount();
+
+    /**
+     * Returns the average time needed to persist and schedule a mail in milliseconds.
+     *
+     * @return the average enqueue latency
+     */
+    double getAverageEnqueueLatencyMillis();
+
+    /**
+     * Returns the average time between accepting and delivering a mail in milliseconds.
+     *
+     * @return the average delivery latency
+     */
+    double getAverageDeliveryLatencyMillis();
+
+    /**
+     * Returns the maximum time between accepting and delivering a mail in milliseconds.
+     *
+     * @return the maximum delivery latency
+     */
+    long getMaxDeliveryLatencyMillis();
+}
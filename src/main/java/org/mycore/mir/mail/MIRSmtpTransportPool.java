@@ -0,0 +1,291 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.mail;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.common.config.MCRConfiguration2;
+import org.mycore.common.events.MCRShutdownHandler;
+import org.mycore.mir.MIRManagementHelper;
+
+/**
+ * Pool of connected and authenticated SMTP transports.
+ * <p>
+ * Consecutive sends reuse an open connection instead of opening a new one with TLS handshake and authentication for
+ * every message. The most recently used connection is reused first, so that surplus connections become idle and are
+ * closed after the max idle time. A connection that was idle for longer than the validation interval is checked
+ * with {@link Transport#isConnected()}, which sends a {@code NOOP} to the server, before it is reused. Connections
+ * are closed after a max number of messages, because many relays limit the messages per connection.
+ */
+public final class MIRSmtpTransportPool implements MIRSmtpTransportPoolMXBean {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String CONFIG_PREFIX = "MIR.MailerWithFileServlet.Mail.Pool.";
+
+    private final Session session;
+
+    private final int maxConnections;
+
+    private final long maxIdleTime;
+
+    private final long validationInterval;
+
+    private final int maxMessages;
+
+    private final Semaphore permits;
+
+    private final BlockingDeque<PooledTransport> idle = new LinkedBlockingDeque<>();
+
+    private final LongAdder createdCount = new LongAdder();
+
+    private final LongAdder reuseCount = new LongAdder();
+
+    private final LongAdder closedCount = new LongAdder();
+
+    /**
+     * Creates a pool of transports of the given session, e.g. of a session connecting to a local SMTP server.
+     * Transports are obtained with {@link Session#getTransport()}, so a session whose {@code mail.transport.protocol}
+     * maps to a stand-in provider can be used to exercise reuse, validation and eviction without a relay.
+     *
+     * @param session the mail session
+     * @param maxConnections the max number of open connections
+     * @param maxIdleTime the time after which an idle connection is closed
+     * @param validationInterval the idle time after which a connection is checked before it is reused
+     * @param maxMessages the max number of messages sent over one connection
+     */
+    public MIRSmtpTransportPool(Session session, int maxConnections, Duration maxIdleTime,
+        Duration validationInterval, int maxMessages) {
+        this.session = session;
+        this.maxConnections = maxConnections;
+        this.maxIdleTime = maxIdleTime.toMillis();
+        this.validationInterval = validationInterval.toMillis();
+        this.maxMessages = maxMessages;
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    /**
+     * Returns whether sends are pooled, i.e. {@code MIR.MailerWithFileServlet.Mail.Pool.MaxConnections} is greater
+     * than 0.
+     *
+     * @return true if pooling is enabled
+     */
+    public static boolean isEnabled() {
+        return InstanceHolder.MAX_CONNECTIONS > 0;
+    }
+
+    /**
+     * Returns the pool of the shared mail session.
+     *
+     * @return the pool
+     */
+    public static MIRSmtpTransportPool getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Sends the message to all its recipients over a pooled connection. If a reused connection fails, the message is
+     * sent once more over a new connection.
+     *
+     * @param message the message, {@link Message#saveChanges()} must have been called
+     * @throws MessagingException if sending fails
+     */
+    public void send(Message message) throws MessagingException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for a mail connection", e);
+        }
+        try {
+            final PooledTransport transport = borrow();
+            final boolean reused = transport.messageCount > 0;
+            try {
+                send(transport, message);
+            } catch (SendFailedException e) {
+                throw e;
+            } catch (MessagingException e) {
+                if (!reused) {
+                    throw e;
+                }
+                LOGGER.debug("Reused mail connection failed, retrying with a new connection", e);
+                send(connect(), message);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void send(PooledTransport transport, Message message) throws MessagingException {
+        try {
+            transport.send(message);
+        } catch (SendFailedException e) {
+            // rejected addresses leave the connection usable
+            release(transport);
+            throw e;
+        } catch (MessagingException | RuntimeException e) {
+            close(transport);
+            throw e;
+        }
+        release(transport);
+    }
+
+    private PooledTransport borrow() throws MessagingException {
+        for (PooledTransport transport = idle.pollFirst(); transport != null; transport = idle.pollFirst()) {
+            final long idleTime = System.currentTimeMillis() - transport.lastUsed;
+            if (idleTime > maxIdleTime || idleTime > validationInterval && !transport.transport.isConnected()) {
+                close(transport);
+                continue;
+            }
+            reuseCount.increment();
+            return transport;
+        }
+        return connect();
+    }
+
+    private PooledTransport connect() throws MessagingException {
+        final Transport transport = session.getTransport();
+        transport.connect();
+        createdCount.increment();
+        return new PooledTransport(transport);
+    }
+
+    private void release(PooledTransport transport) {
+        if (transport.messageCount >= maxMessages) {
+            close(transport);
+            return;
+        }
+        transport.lastUsed = System.currentTimeMillis();
+        idle.offerFirst(transport);
+    }
+
+    private void close(PooledTransport transport) {
+        closedCount.increment();
+        try {
+            transport.transport.close();
+        } catch (MessagingException e) {
+            LOGGER.debug("Failed to close mail connection", e);
+        }
+    }
+
+    private void evictIdle() {
+        final long now = System.currentTimeMillis();
+        // the least recently used connections are at the end of the deque
+        for (PooledTransport transport = idle.peekLast(); transport != null && now - transport.lastUsed > maxIdleTime;
+            transport = idle.peekLast()) {
+            if (idle.removeLastOccurrence(transport)) {
+                close(transport);
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (PooledTransport transport = idle.pollFirst(); transport != null; transport = idle.pollFirst()) {
+            close(transport);
+        }
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    @Override
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    @Override
+    public long getCreatedCount() {
+        return createdCount.sum();
+    }
+
+    @Override
+    public long getReuseCount() {
+        return reuseCount.sum();
+    }
+
+    @Override
+    public long getClosedCount() {
+        return closedCount.sum();
+    }
+
+    private static final class PooledTransport {
+
+        private final Transport transport;
+
+        private int messageCount;
+
+        private long lastUsed;
+
+        private PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+
+        private void send(Message message) throws MessagingException {
+            transport.sendMessage(message, message.getAllRecipients());
+            messageCount++;
+        }
+    }
+
+    private static final class InstanceHolder {
+
+        private static final int MAX_CONNECTIONS =
+            MCRConfiguration2.getInt(CONFIG_PREFIX + "MaxConnections").orElse(4);
+
+        private static final MIRSmtpTransportPool INSTANCE = createInstance();
+
+        private static MIRSmtpTransportPool createInstance() {
+            final Duration maxIdleTime =
+                Duration.ofSeconds(MCRConfiguration2.getLong(CONFIG_PREFIX + "MaxIdleTime").orElse(60L));
+            final MIRSmtpTransportPool pool = new MIRSmtpTransportPool(MIRMailSession.getSession(), MAX_CONNECTIONS,
+                maxIdleTime,
+                Duration.ofSeconds(MCRConfiguration2.getLong(CONFIG_PREFIX + "ValidationInterval").orElse(5L)),
+                MCRConfiguration2.getInt(CONFIG_PREFIX + "MaxMessages").orElse(100));
+            final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "MIRSmtpTransportPool-Evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final long evictionInterval = Math.max(1, maxIdleTime.toSeconds() / 2);
+            evictor.scheduleWithFixedDelay(pool::evictIdle, evictionInterval, evictionInterval, TimeUnit.SECONDS);
+            MCRShutdownHandler.getInstance().addCloseable(() -> {
+                evictor.shutdownNow();
+                pool.closeAll();
+            });
+            MIRManagementHelper.register(pool, "SmtpTransportPool", "default");
+            return pool;
+        }
+    }
+}
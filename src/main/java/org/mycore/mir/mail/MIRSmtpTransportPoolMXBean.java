@@ -0,0 +1,61 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See https://www.mycore.de/ for details.
+ *
+ * MyCoRe is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MyCoRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mycore.mir.mail;
+
+/**
+ * Management interface of {@link MIRSmtpTransportPool}.
+ */
+public interface MIRSmtpTransportPoolMXBean {
+
+    /**
+     * Returns the maximum number of open connections.
+     *
+     * @return the max connection count
+     */
+    int getMaxConnections();
+
+    /**
+     * Returns the number of idle connections currently kept open.
+     *
+     * @return the idle count
+     */
+    int getIdleCount();
+
+    /**
+     * Returns the number of connections opened.
+     *
+     * @return the created count
+     */
+    long getCreatedCount();
+
+    /**
+     * Returns the number of sends that reused an open connection.
+     *
+     * @return the reuse count
+     */
+    long getReuseCount();
+
+    /**
+     * Returns the number of connections closed because they failed, were idle too long or reached the message
+     * limit.
+     *
+     * @return the closed count
+     */
+    long getClosedCount();
+}
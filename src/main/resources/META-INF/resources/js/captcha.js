@@ -24,6 +24,8 @@ window.addEventListener('load', () => {
   let captchaStop = document.getElementById('captcha-stop');
 
   let audio = null;
+  // changes whenever a new captcha is requested, so repeated plays of the same captcha can be cached
+  let captchaVersion = Date.now();
   // check if error=capcha is in the URL
   let url = new URL(window.location.href);
   let error = url.searchParams.get('error');
@@ -38,7 +40,8 @@ window.addEventListener('load', () => {
 
   captchaRefresh.addEventListener('click', function (e) {
     e.preventDefault();
-    captchaImage.src = captchaImage.src + '&rng=' + Math.random();
+    captchaVersion = Date.now();
+    captchaImage.src = captchaImage.src + '&rng=' + captchaVersion;
   });
 
   const playAudioCaptcha = () => {
@@ -48,7 +51,7 @@ window.addEventListener('load', () => {
       audio.currentTime = 0;
     }
 
-    audio = new Audio(window.webApplicationBaseURL + '/servlets/MIRMailerWithFile?action=captcha-play&rng=' + Math.random());
+    audio = new Audio(window.webApplicationBaseURL + '/servlets/MIRMailerWithFile?action=captcha-play&rng=' + captchaVersion);
 
     audio.play();
     captchaPlay?.classList.add('d-none');
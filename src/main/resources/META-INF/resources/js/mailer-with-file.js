@@ -16,16 +16,140 @@
  * along with MyCoRe.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+function applyFormValues(entries) {
+  for (const [key, value] of entries) {
+    const input = document.querySelector(`[name="${CSS.escape(key)}"]`);
+    if (input) {
+      input.value = value;
+    }
+  }
+}
+
+const UPLOAD_CONCURRENCY = 3;
+const UPLOAD_RETRIES = 5;
+
+function uploadRequest(method, params, body) {
+  const url = window.webApplicationBaseURL + '/servlets/MIRMailerWithFile?' + new URLSearchParams(params);
+  const headers = body ? { 'Content-Type': 'application/octet-stream' } : {};
+  return fetch(url, { method, body, headers, credentials: 'same-origin' }).then(response => {
+    if (!response.ok) {
+      const error = new Error(`Upload request failed with status ${response.status}`);
+      error.status = response.status;
+      throw error;
+    }
+    return response.json();
+  });
+}
+
+async function retry(operation) {
+  for (let attempt = 1; ; attempt++) {
+    try {
+      return await operation();
+    } catch (error) {
+      // client errors are not caused by a dropped connection and will not go away on retry
+      if (attempt >= UPLOAD_RETRIES || (error.status >= 400 && error.status < 500)) {
+        throw error;
+      }
+      await new Promise(resolve => setTimeout(resolve, 500 * 2 ** attempt));
+    }
+  }
+}
+
+// uploads a file in parallel chunks, chunks that failed are sent again until the server has all of them
+async function uploadFile(file, formAction, onProgress) {
+  let status = await retry(() => uploadRequest('POST', {
+    action: 'upload-create', form_action: formAction, filename: file.name, size: file.size, type: file.type
+  }));
+  const id = status.id;
+  const chunkSize = status.chunkSize;
+  while (status.missingChunks.length > 0) {
+    const queue = [...status.missingChunks];
+    const worker = async () => {
+      for (let index = queue.shift(); index !== undefined; index = queue.shift()) {
+        const offset = index * chunkSize;
+        const chunk = file.slice(offset, offset + chunkSize);
+        await retry(() => uploadRequest('PATCH', { action: 'upload-chunk', upload_id: id, offset }, chunk));
+        onProgress(chunk.size);
+      }
+    };
+    await Promise.all(Array.from({ length: UPLOAD_CONCURRENCY }, worker));
+    status = await retry(() => uploadRequest('GET', { action: 'upload-status', upload_id: id }));
+  }
+  await retry(() => uploadRequest('POST', { action: 'upload-finalize', upload_id: id }));
+  return id;
+}
+
+async function uploadFiles(form) {
+  const fileInputs = [...form.querySelectorAll('input[type="file"]')].filter(input => input.files.length > 0);
+  const files = fileInputs.flatMap(input => [...input.files]);
+  const progress = form.querySelector('progress.upload-progress');
+  if (progress) {
+    progress.max = files.reduce((total, file) => total + file.size, 0);
+    progress.value = 0;
+  }
+  const onProgress = bytes => {
+    if (progress) {
+      progress.value += bytes;
+    }
+  };
+  // uploads are created for the action of the form, which is passed in the form action URL or as form field
+  const formAction = new URL(form.action, window.location.href).searchParams.get('action')
+    || form.elements.namedItem('action')?.value;
+  for (const file of files) {
+    const input = document.createElement('input');
+    input.type = 'hidden';
+    input.name = 'upload_id';
+    input.value = await uploadFile(file, formAction, onProgress);
+    form.appendChild(input);
+  }
+  fileInputs.forEach(input => input.disabled = true);
+}
+
 window.addEventListener('load', function () {
   // apply url parameters to form
   const urlParams = new URLSearchParams(window.location.search);
-  for (const [key, value] of urlParams) {
-    const input = document.querySelector(`[name="${key}"]`);
-    if (input) {
-      input.value = value;
+  applyFormValues(urlParams);
+
+  // restore the fields of a rejected submission stored on the server
+  const formStateToken = urlParams.get('form');
+  if (formStateToken) {
+    fetch(window.webApplicationBaseURL + '/servlets/MIRMailerWithFile?action=form-state&token='
+      + encodeURIComponent(formStateToken), { credentials: 'same-origin' })
+      .then(response => response.ok ? response.json() : {})
+      .then(fields => applyFormValues(Object.entries(fields)))
+      .catch(error => console.warn('Could not restore form state', error));
+  }
+
+  // add a submission id, so that repeated submissions of the same form are only processed once
+  for (const form of document.querySelectorAll('form[action*="MIRMailerWithFile"]')) {
+    if (!form.querySelector('[name="submission_id"]')) {
+      const input = document.createElement('input');
+      input.type = 'hidden';
+      input.name = 'submission_id';
+      input.value = window.crypto.randomUUID();
+      form.appendChild(input);
     }
   }
 
+  // upload files of forms with a data-chunked-upload attribute in resumable chunks before submitting the form
+  for (const form of document.querySelectorAll('form[data-chunked-upload]')) {
+    form.addEventListener('submit', function (event) {
+      event.preventDefault();
+      if (form.checkValidity() === false) {
+        return;
+      }
+      const submitButtons = form.querySelectorAll('[type="submit"]');
+      submitButtons.forEach(button => button.disabled = true);
+      uploadFiles(form)
+        .then(() => form.submit())
+        .catch(error => {
+          console.error('Could not upload files', error);
+          submitButtons.forEach(button => button.disabled = false);
+          form.classList.add('upload-failed');
+        });
+    }, false);
+  }
+
   // Fetch all the forms we want to apply custom Bootstrap validation styles to
   let forms = document.getElementsByClassName('needs-validation');
   // Loop over them and prevent submission